@@ -0,0 +1,11 @@
+#!/bin/bash
+# 批量分词：bin/segment.sh [-threads N] [-mode search|index] [-offsets] [-chunk MB] [-userDict path]... <input> <output>
+# 先运行 bin/build.sh 生成jar；JVM参数可通过 JAVA_OPTS 传入，例如 JAVA_OPTS="-Xmx8g"
+
+ROOT=`dirname $0`/..
+JAR=`ls $ROOT/target/jieba-analysis-*.jar 2>/dev/null | grep -v sources | grep -v javadoc | head -1`
+if [ -z "$JAR" ]; then
+    echo "jieba-analysis jar not found, run bin/build.sh first" >&2
+    exit 1
+fi
+exec java $JAVA_OPTS -cp "$JAR" com.huaban.analysis.jieba.BulkSegmenter "$@"
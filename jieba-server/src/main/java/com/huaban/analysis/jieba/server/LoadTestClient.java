@@ -0,0 +1,191 @@
+package com.huaban.analysis.jieba.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分词服务压测客户端
+ * 功能：
+ * 1. 多线程循环POST文本到/segment，统计吞吐（请求数/秒、字符数/秒）和延迟分位数（p50/p90/p99/max）
+ * 2. 文本文件的每个非空行作为一个请求，各线程错开起始行轮流发送
+ * 3. 503（队列满）单独计数，不计入延迟
+ *
+ * 使用示例：
+ *    java -cp jieba-server.jar com.huaban.analysis.jieba.server.LoadTestClient \
+ *        -url http://localhost:8080/segment -threads 32 -seconds 30 -format binary -text corpus.txt
+ */
+public final class LoadTestClient {
+
+    private LoadTestClient() {
+    }
+
+    /**
+     * 单个压测线程的统计
+     */
+    private static final class Worker extends Thread {
+        private final URL url;
+        private final List<byte[]> requests;
+        private final int[] chars;
+        private final long deadline;
+        private int index;
+        private long[] latencies = new long[1024];
+        private int count;
+        private long sentChars;
+        private long rejected;
+        private long failed;
+
+        Worker(URL url, List<byte[]> requests, int[] chars, long deadline, int index) {
+            this.url = url;
+            this.requests = requests;
+            this.chars = chars;
+            this.deadline = deadline;
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            while (System.nanoTime() < deadline) {
+                int i = index++ % requests.size();
+                long start = System.nanoTime();
+                try {
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+                    OutputStream out = connection.getOutputStream();
+                    out.write(requests.get(i));
+                    out.close();
+                    int status = connection.getResponseCode();
+                    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+                    if (in != null) {
+                        while (in.read(buffer) > 0) {
+                            // 读完响应体，保证连接可复用
+                        }
+                        in.close();
+                    }
+                    if (status == 503) {
+                        rejected++;
+                        continue;
+                    }
+                    if (status != 200) {
+                        failed++;
+                        continue;
+                    }
+                }
+                catch (IOException e) {
+                    failed++;
+                    continue;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+                sentChars += chars[i];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080/segment";
+        int threads = 16;
+        int seconds = 10;
+        String format = "json";
+        String textFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-url":
+                url = value;
+                break;
+            case "-threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "-seconds":
+                seconds = Integer.parseInt(value);
+                break;
+            case "-format":
+                format = value;
+                break;
+            case "-text":
+                textFile = value;
+                break;
+            default:
+                System.err.println("usage: LoadTestClient [-url url] [-threads n] [-seconds n]"
+                    + " [-format json|binary] [-text file]");
+                System.exit(1);
+            }
+        }
+
+        List<String> lines = new ArrayList<String>();
+        if (textFile != null) {
+            for (String line : Files.readAllLines(Paths.get(textFile), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        if (lines.isEmpty()) {
+            lines.add("这是一个伸手不见五指的黑夜。我叫孙悟空，我爱北京，我爱Python和C++。");
+            lines.add("工信处女干事每月经过下属科室都要亲口交代24口交换机等技术性器件的安装工作");
+            lines.add("结果婚的和尚未结过婚的");
+        }
+        List<byte[]> requests = new ArrayList<byte[]>(lines.size());
+        int[] chars = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            requests.add(lines.get(i).getBytes(StandardCharsets.UTF_8));
+            chars[i] = lines.get(i).length();
+        }
+
+        URL target = new URL(url + (url.indexOf('?') < 0 ? "?" : "&") + "format=" + format);
+        long begin = System.nanoTime();
+        long deadline = begin + TimeUnit.SECONDS.toNanos(seconds);
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(target, requests, chars, deadline, i * lines.size() / threads);
+            workers[i].start();
+        }
+        int total = 0;
+        long totalChars = 0, rejected = 0, failed = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            total += worker.count;
+            totalChars += worker.sentChars;
+            rejected += worker.rejected;
+            failed += worker.failed;
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        long[] all = new long[total];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, all, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(all);
+        System.out.println(String.format(Locale.ROOT,
+            "requests %d, rejected %d, failed %d, %.1f req/s, %.1f chars/s", total, rejected, failed,
+            total / elapsed, totalChars / elapsed));
+        System.out.println(String.format(Locale.ROOT, "latency ms p50 %.3f, p90 %.3f, p99 %.3f, max %.3f",
+            percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 1.0)));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
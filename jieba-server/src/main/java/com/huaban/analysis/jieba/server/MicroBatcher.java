@@ -0,0 +1,183 @@
+package com.huaban.analysis.jieba.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+import com.huaban.analysis.jieba.Log;
+import com.huaban.analysis.jieba.SegToken;
+
+/**
+ * 分词微批处理器
+ * 功能：
+ * 1. 请求线程把分词任务放入有界队列，队列满时立即拒绝（背压，由调用方返回503）
+ * 2. 固定数量的平台线程从队列中成批取出任务，在同一线程内依次分词后逐个完成
+ * 3. 合批不额外等待：取到第一个任务后只取走队列中已有的任务；
+ *    可选的linger时间用于在低并发时等待更多任务凑批
+ *
+ * 实现思路：
+ *    请求线程（虚拟线程或线程池线程）只做IO和等待，CPU密集的分词集中在少量工作线程上，
+ *    避免线程数远超核数时的上下文切换，同时批内任务连续执行，词典、模型常驻缓存
+ */
+final class MicroBatcher {
+    private final JiebaSegmenter segmenter;
+    private final BlockingQueue<Task> queue;
+    private final int maxBatchSize;
+    private final int maxBatchChars;
+    private final long lingerNanos;
+    private final Thread[] workers;
+    private volatile boolean running = true;
+
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 分词任务
+     */
+    static final class Task {
+        final String text;
+        final SegMode mode;
+        final CompletableFuture<List<SegToken>> result = new CompletableFuture<List<SegToken>>();
+
+        Task(String text, SegMode mode) {
+            this.text = text;
+            this.mode = mode;
+        }
+    }
+
+    MicroBatcher(JiebaSegmenter segmenter, int workerCount, int queueCapacity, int maxBatchSize, int maxBatchChars,
+            long lingerMicros) {
+        this.segmenter = segmenter;
+        this.queue = new ArrayBlockingQueue<Task>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchChars = maxBatchChars;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::run, "jieba-batcher-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 提交任务
+     * @return 任务；队列已满时返回null；与shutdown并发时可能返回已取消的任务
+     */
+    Task submit(String text, SegMode mode) {
+        Task task = new Task(text, mode);
+        if (!running || !queue.offer(task)) {
+            rejected.increment();
+            return null;
+        }
+        // 检查running之后、offer之前shutdown可能已经排空队列，之后不会再有线程处理该任务
+        if (!running && queue.remove(task)) {
+            task.result.cancel(false);
+        }
+        return task;
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<Task>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, first.text.length());
+                for (Task task : batch) {
+                    // 已超时或已取消的任务不再分词
+                    if (task.result.isDone()) {
+                        continue;
+                    }
+                    try {
+                        task.result.complete(segmenter.process(task.text, task.mode));
+                    }
+                    catch (RuntimeException e) {
+                        task.result.completeExceptionally(e);
+                    }
+                }
+                tasks.add(batch.size());
+                batches.increment();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch (RuntimeException e) {
+                Log.error(String.format(Locale.getDefault(), "batcher failure: %s", e));
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在批大小和字符数上限内继续取任务：先取走队列中已有的任务，再在linger时间内等待
+     */
+    private void fill(List<Task> batch, int chars) throws InterruptedException {
+        long deadline = lingerNanos > 0 ? System.nanoTime() + lingerNanos : 0L;
+        while (batch.size() < maxBatchSize && chars < maxBatchChars) {
+            Task task = queue.poll();
+            if (task == null && lingerNanos > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    task = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                }
+            }
+            if (task == null) {
+                return;
+            }
+            batch.add(task);
+            chars += task.text.length();
+        }
+    }
+
+    /**
+     * 停止接收任务，等待工作线程处理完队列中的剩余任务
+     */
+    void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1L, deadline - System.currentTimeMillis()));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Task task;
+        while ((task = queue.poll()) != null) {
+            task.result.cancel(false);
+        }
+    }
+
+    int queueSize() {
+        return queue.size();
+    }
+
+    long taskCount() {
+        return tasks.sum();
+    }
+
+    long batchCount() {
+        return batches.sum();
+    }
+
+    long rejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,99 @@
+package com.huaban.analysis.jieba.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.huaban.analysis.jieba.SegToken;
+
+/**
+ * 分词结果编码
+ * 支持两种格式：
+ * 1. JSON（application/json）：{"tokens":[{"word":"北京","start":0,"end":2},...]}
+ * 2. 二进制（application/octet-stream），全部为无符号变长整数（varint，每字节低7位有效，最高位为续位）：
+ *    词数，然后每个词依次为 起始偏移、词长（字符数）
+ *    偏移指向请求原文，客户端直接截取原文即可得到词语，响应体通常只有JSON的十分之一
+ */
+final class ResponseCodec {
+    static final String JSON = "application/json; charset=utf-8";
+    static final String BINARY = "application/octet-stream";
+
+    private ResponseCodec() {
+    }
+
+    static byte[] json(List<SegToken> tokens) {
+        StringBuilder sb = new StringBuilder(tokens.size() * 32 + 16);
+        sb.append("{\"tokens\":[");
+        for (int i = 0; i < tokens.size(); i++) {
+            SegToken token = tokens.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"word\":");
+            quote(sb, token.word);
+            sb.append(",\"start\":").append(token.startOffset);
+            sb.append(",\"end\":").append(token.endOffset).append('}');
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] binary(List<SegToken> tokens) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(tokens.size() * 3 + 5);
+        writeVarint(out, tokens.size());
+        for (SegToken token : tokens) {
+            writeVarint(out, token.startOffset);
+            writeVarint(out, token.endOffset - token.startOffset);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 简单的JSON错误响应
+     */
+    static byte[] error(String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        quote(sb, message);
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
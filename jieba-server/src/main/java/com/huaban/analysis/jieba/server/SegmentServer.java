@@ -0,0 +1,418 @@
+package com.huaban.analysis.jieba.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+import com.huaban.analysis.jieba.Log;
+import com.huaban.analysis.jieba.SegToken;
+import com.huaban.analysis.jieba.WordDictionary;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 分词HTTP服务（基于JDK内置com.sun.net.httpserver，无第三方依赖）
+ * 功能：
+ * 1. POST /segment（请求体为UTF-8文本）或 GET /segment?text=...
+ *    参数 mode=search|index（默认search），format=json|binary（默认json，见ResponseCodec）
+ * 2. GET /stats 返回队列长度、任务数、批次数、拒绝数；GET /health 返回ok
+ * 3. 队列满或等待分词超时时返回503和Retry-After，请求体超过上限返回413
+ *
+ * 实现思路：
+ * - Java 21+上每个请求在虚拟线程上处理（通过反射创建执行器，低版本回退到线程池）
+ * - 请求线程只负责读请求、写响应，分词交给MicroBatcher的少量工作线程成批执行
+ * - 应在启动参数中加 -Dsun.net.httpserver.nodelay=true 关闭Nagle算法，否则小响应与客户端的延迟确认叠加，
+ *   每个请求多出约40ms（该属性对整个JVM生效，因此只由main在未指定时设置，嵌入使用时由调用方决定）
+ *
+ * 使用示例：
+ *    SegmentServer server = SegmentServer.builder().port(8080).workers(4).build().start();
+ *    java -jar jieba-server.jar -port 8080 -workers 4 -userDict conf/
+ */
+public final class SegmentServer {
+
+    private final int port;
+    private final int workers;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final int maxBatchChars;
+    private final long lingerMicros;
+    private final int maxBodyBytes;
+    private final long requestTimeoutMillis;
+    private final JiebaSegmenter segmenter;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private MicroBatcher batcher;
+
+    private SegmentServer(Builder builder) {
+        this.port = builder.port;
+        this.workers = builder.workers;
+        this.queueCapacity = builder.queueCapacity;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchChars = builder.maxBatchChars;
+        this.lingerMicros = builder.lingerMicros;
+        this.maxBodyBytes = builder.maxBodyBytes;
+        this.requestTimeoutMillis = builder.requestTimeoutMillis;
+        this.segmenter = builder.segmenter != null ? builder.segmenter : new JiebaSegmenter();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 启动服务
+     * @return this
+     */
+    public synchronized SegmentServer start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("server already started");
+        }
+        batcher = new MicroBatcher(segmenter, workers, queueCapacity, maxBatchSize, maxBatchChars, lingerMicros);
+        executor = newRequestExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/segment", this::handleSegment);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/health", exchange -> send(exchange, 200, "text/plain; charset=utf-8",
+            "ok".getBytes(StandardCharsets.UTF_8)));
+        server.setExecutor(executor);
+        server.start();
+        Log.debug(String.format(Locale.getDefault(), "segment server listening on %d, workers %d, queue %d",
+            getPort(), workers, queueCapacity));
+        return this;
+    }
+
+    /**
+     * 停止服务：不再接收新连接，等待已入队的任务处理完
+     * @param delaySeconds 等待进行中请求的最长秒数
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server == null) {
+            return;
+        }
+        server.stop(delaySeconds);
+        batcher.shutdown(delaySeconds * 1000L);
+        executor.shutdown();
+        server = null;
+    }
+
+    /**
+     * @return 实际监听端口（port为0时由系统分配）
+     */
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    private void handleSegment(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String query = exchange.getRequestURI().getRawQuery();
+            String text;
+            if ("POST".equals(method)) {
+                byte[] body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    sendError(exchange, 413, "request body exceeds " + maxBodyBytes + " bytes");
+                    return;
+                }
+                text = new String(body, StandardCharsets.UTF_8);
+            }
+            else if ("GET".equals(method)) {
+                text = param(query, "text");
+                if (text == null) {
+                    sendError(exchange, 400, "missing parameter: text");
+                    return;
+                }
+            }
+            else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendError(exchange, 405, "method not allowed: " + method);
+                return;
+            }
+
+            String modeName = param(query, "mode");
+            SegMode mode;
+            if (modeName == null || "search".equals(modeName)) {
+                mode = SegMode.SEARCH;
+            }
+            else if ("index".equals(modeName)) {
+                mode = SegMode.INDEX;
+            }
+            else {
+                sendError(exchange, 400, "unknown mode: " + modeName);
+                return;
+            }
+            String format = param(query, "format");
+            boolean binary = "binary".equals(format);
+            if (format != null && !binary && !"json".equals(format)) {
+                sendError(exchange, 400, "unknown format: " + format);
+                return;
+            }
+
+            MicroBatcher.Task task = batcher.submit(text, mode);
+            if (task == null) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "segment queue is full");
+                return;
+            }
+            List<SegToken> tokens = task.result.get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (binary) {
+                send(exchange, 200, ResponseCodec.BINARY, ResponseCodec.binary(tokens));
+            }
+            else {
+                send(exchange, 200, ResponseCodec.JSON, ResponseCodec.json(tokens));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "interrupted");
+        }
+        catch (CancellationException e) {
+            sendError(exchange, 503, "server is shutting down");
+        }
+        catch (TimeoutException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "segment timed out after " + requestTimeoutMillis + " ms");
+        }
+        catch (ExecutionException e) {
+            Log.error(String.format(Locale.getDefault(), "segment failure: %s", e.getCause()));
+            sendError(exchange, 500, String.valueOf(e.getCause()));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        String body = String.format(Locale.ROOT, "{\"queue\":%d,\"tasks\":%d,\"batches\":%d,\"rejected\":%d}",
+            batcher.queueSize(), batcher.taskCount(), batcher.batchCount(), batcher.rejectedCount());
+        send(exchange, 200, ResponseCodec.JSON, body.getBytes(StandardCharsets.UTF_8));
+        exchange.close();
+    }
+
+    /**
+     * 读取请求体，超过maxBodyBytes时返回null
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            if (out.size() + read > maxBodyBytes) {
+                return null;
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String param(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (key.equals(name)) {
+                try {
+                    return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                }
+                catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, ResponseCodec.JSON, ResponseCodec.error(message));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Java 21+使用虚拟线程执行器，否则回退到缓存线程池
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            Log.debug("segment server uses virtual threads");
+            return (ExecutorService) executor;
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * 构建器
+     */
+    public static final class Builder {
+        private int port = 8080;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = 4096;
+        private int maxBatchSize = 64;
+        private int maxBatchChars = 64 * 1024;
+        private long lingerMicros = 0L;
+        private int maxBodyBytes = 1 << 20;
+        private long requestTimeoutMillis = 30000L;
+        private JiebaSegmenter segmenter;
+
+        private Builder() {
+        }
+
+        /**
+         * @param port 监听端口，0表示由系统分配
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param workers 分词工作线程数（默认为CPU核数）
+         */
+        public Builder workers(int workers) {
+            this.workers = positive("workers", workers);
+            return this;
+        }
+
+        /**
+         * @param queueCapacity 任务队列容量，队列满时返回503
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = positive("queueCapacity", queueCapacity);
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize 每批最多任务数
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = positive("maxBatchSize", maxBatchSize);
+            return this;
+        }
+
+        /**
+         * @param maxBatchChars 每批最多字符数（第一个任务不受限）
+         */
+        public Builder maxBatchChars(int maxBatchChars) {
+            this.maxBatchChars = positive("maxBatchChars", maxBatchChars);
+            return this;
+        }
+
+        /**
+         * @param lingerMicros 凑批等待时间（微秒），默认0即不等待
+         */
+        public Builder lingerMicros(long lingerMicros) {
+            if (lingerMicros < 0) {
+                throw new IllegalArgumentException("lingerMicros must not be negative: " + lingerMicros);
+            }
+            this.lingerMicros = lingerMicros;
+            return this;
+        }
+
+        /**
+         * @param maxBodyBytes 请求体上限（字节）
+         */
+        public Builder maxBodyBytes(int maxBodyBytes) {
+            this.maxBodyBytes = positive("maxBodyBytes", maxBodyBytes);
+            return this;
+        }
+
+        /**
+         * @param requestTimeoutMillis 等待分词结果的最长毫秒数（默认30000），超时返回503
+         */
+        public Builder requestTimeoutMillis(long requestTimeoutMillis) {
+            if (requestTimeoutMillis < 1) {
+                throw new IllegalArgumentException("requestTimeoutMillis must be positive: " + requestTimeoutMillis);
+            }
+            this.requestTimeoutMillis = requestTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param segmenter 分词器（默认new JiebaSegmenter()）
+         */
+        public Builder segmenter(JiebaSegmenter segmenter) {
+            this.segmenter = segmenter;
+            return this;
+        }
+
+        public SegmentServer build() {
+            return new SegmentServer(this);
+        }
+
+        private static int positive(String name, int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be positive: " + value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 命令行启动：[-port 8080] [-workers n] [-queue n] [-batch n] [-linger micros] [-timeout millis] [-userDict dir]
+     */
+    public static void main(String[] args) throws IOException {
+        // 必须在创建HttpServer之前设置，JDK只在首次使用时读取
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        Builder builder = builder();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "-port":
+                builder.port(Integer.parseInt(value));
+                break;
+            case "-workers":
+                builder.workers(Integer.parseInt(value));
+                break;
+            case "-queue":
+                builder.queueCapacity(Integer.parseInt(value));
+                break;
+            case "-batch":
+                builder.maxBatchSize(Integer.parseInt(value));
+                break;
+            case "-linger":
+                builder.lingerMicros(Long.parseLong(value));
+                break;
+            case "-timeout":
+                builder.requestTimeoutMillis(Long.parseLong(value));
+                break;
+            case "-userDict":
+                WordDictionary.getInstance().init(Paths.get(value));
+                break;
+            default:
+                System.err.println("usage: SegmentServer [-port 8080] [-workers n] [-queue n] [-batch n]"
+                    + " [-linger micros] [-timeout millis] [-userDict dir]");
+                System.exit(1);
+            }
+        }
+        final SegmentServer server = builder.build().start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+    }
+}
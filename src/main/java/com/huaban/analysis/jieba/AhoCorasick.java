@@ -0,0 +1,354 @@
+package com.huaban.analysis.jieba;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Aho-Corasick多模式匹配自动机
+ * 功能：
+ * 1. 由词典或任意词表编译，一次线性扫描报告文本中所有词的出现位置
+ * 2. 每个匹配以 (start, end, wordId) 回调，不创建任何对象
+ *
+ * 存储结构（全部为扁平原生数组，状态按BFS顺序编号，0为根）：
+ * - rootNext：根节点的稠密转移表（65536项），首字符无需查找
+ * - edgeStart/edgeChars/edgeTargets：其余状态的CSR转移表，同一状态的边按字符有序
+ * - fail：失败链接
+ * - termIds：在该状态结束的词id，没有则为-1
+ * - outLinks：沿失败链接最近的、有词结束的状态，没有则为0
+ *
+ * 线程安全：
+ *    编译后不可变，可在多线程间共享
+ */
+public final class AhoCorasick {
+    // 转移数小于该值时线性查找，否则二分查找
+    private static final int LINEAR_SCAN_LIMIT = 8;
+
+    private final int[] rootNext;
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[] termIds;
+    private final int[] outLinks;
+    // 词id -> 词语 / 词长
+    private final String[] terms;
+    private final int[] termLengths;
+    // 是否对词表和扫描文本做字符规范化（全角转半角、大写转小写）
+    private final boolean regularize;
+
+    /**
+     * 匹配结果回调
+     */
+    public interface MatchConsumer {
+        /**
+         * @param start 起始位置（包含）
+         * @param end 结束位置（不包含）
+         * @param wordId 词id
+         */
+        void onMatch(int start, int end, int wordId);
+    }
+
+    private AhoCorasick(Builder b, String[] terms, int[] termLengths, boolean regularize) {
+        this.terms = terms;
+        this.termLengths = termLengths;
+        this.regularize = regularize;
+
+        // BFS重新编号，生成CSR转移表
+        int n = b.size;
+        int[] order = new int[n];
+        int[] newId = new int[n];
+        int[] start = new int[n + 1];
+        char[] chars = new char[n - 1];
+        int[] targets = new int[n - 1];
+        int head = 0;
+        int tail = 1;
+        int edges = 0;
+        order[0] = 0;
+        char[] childChars = new char[16];
+        int[] childNodes = new int[16];
+        while (head < tail) {
+            int node = order[head];
+            start[head] = edges;
+            int count = 0;
+            for (int c = b.firstChild[node]; c != 0; c = b.nextSibling[c]) {
+                if (count == childChars.length) {
+                    childChars = Arrays.copyOf(childChars, count * 2);
+                    childNodes = Arrays.copyOf(childNodes, count * 2);
+                }
+                childChars[count] = b.labels[c];
+                childNodes[count++] = c;
+            }
+            sortByChar(childChars, childNodes, count);
+            for (int i = 0; i < count; i++) {
+                newId[childNodes[i]] = tail;
+                order[tail++] = childNodes[i];
+                chars[edges] = childChars[i];
+                targets[edges++] = newId[childNodes[i]];
+            }
+            head++;
+        }
+        start[n] = edges;
+        this.edgeStart = start;
+        this.edgeChars = chars;
+        this.edgeTargets = targets;
+
+        this.termIds = new int[n];
+        for (int s = 0; s < n; s++) {
+            termIds[s] = b.termIds[order[s]];
+        }
+        this.rootNext = new int[Character.MAX_VALUE + 1];
+        for (int e = start[0]; e < start[1]; e++) {
+            rootNext[chars[e]] = targets[e];
+        }
+
+        // BFS顺序计算失败链接和输出链接（父状态总是先于子状态处理）
+        this.fail = new int[n];
+        this.outLinks = new int[n];
+        for (int s = 0; s < n; s++) {
+            for (int e = start[s]; e < start[s + 1]; e++) {
+                int child = targets[e];
+                int f = s == 0 ? 0 : next(fail[s], chars[e]);
+                fail[child] = f;
+                outLinks[child] = termIds[f] >= 0 ? f : outLinks[f];
+            }
+        }
+    }
+
+    private static void sortByChar(char[] chars, int[] nodes, int count) {
+        for (int i = 1; i < count; i++) {
+            char c = chars[i];
+            int node = nodes[i];
+            int j = i - 1;
+            while (j >= 0 && chars[j] > c) {
+                chars[j + 1] = chars[j];
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            chars[j + 1] = c;
+            nodes[j + 1] = node;
+        }
+    }
+
+    /**
+     * 由词表编译自动机，词id为词在集合中的迭代序号（重复词保留第一次出现的id）
+     * @param words 词表
+     * @param regularize 是否对词表和扫描文本做字符规范化（全角转半角、大写转小写）
+     * @return 自动机
+     */
+    public static AhoCorasick compile(Collection<String> words, boolean regularize) {
+        Builder builder = new Builder();
+        String[] terms = new String[words.size()];
+        int[] lengths = new int[words.size()];
+        int id = 0;
+        for (String word : words) {
+            terms[id] = word;
+            lengths[id] = word == null ? 0 : word.length();
+            if (word != null && !word.isEmpty()) {
+                builder.add(word, id, regularize);
+            }
+            id++;
+        }
+        return new AhoCorasick(builder, terms, lengths, regularize);
+    }
+
+    /**
+     * 由词典中当前已加载的全部词语编译自动机（与分词一致，做字符规范化）
+     * 词id即WordDictionary的词语id（与getWordId、getFlags、TFIDFAnalyzer.getIdf(int)相同）；
+     * 新词发现提升的词没有词语id，不在自动机中
+     * @param dictionary 词典
+     * @return 自动机
+     */
+    public static AhoCorasick compile(WordDictionary dictionary) {
+        // 用户词典中的空行不会分配词语id，无需跳过
+        String[] words = new String[dictionary.getWordIdCount()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = dictionary.getWord(id);
+        }
+        return compile(Arrays.asList(words), true);
+    }
+
+    /**
+     * 从根状态开始转移
+     */
+    int root() {
+        return 0;
+    }
+
+    /**
+     * 状态转移（失败时沿失败链接回退）
+     * @param state 当前状态
+     * @param c 输入字符（调用方负责规范化）
+     * @return 下一状态
+     */
+    int next(int state, char c) {
+        while (state != 0) {
+            int target = edge(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            state = fail[state];
+        }
+        return rootNext[c];
+    }
+
+    private int edge(int state, char c) {
+        int from = edgeStart[state];
+        int to = edgeStart[state + 1];
+        if (to - from < LINEAR_SCAN_LIMIT) {
+            for (int e = from; e < to; e++) {
+                if (edgeChars[e] == c) {
+                    return edgeTargets[e];
+                }
+            }
+            return -1;
+        }
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            char m = edgeChars[mid];
+            if (m < c) {
+                from = mid + 1;
+            }
+            else if (m > c) {
+                to = mid;
+            }
+            else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在给定状态结束的第一个词id（没有则为-1）
+     */
+    int termAt(int state) {
+        return termIds[state];
+    }
+
+    /**
+     * 沿失败链接的下一个输出状态（没有则为0）
+     */
+    int nextOutput(int state) {
+        return outLinks[state];
+    }
+
+    /**
+     * 扫描文本，报告所有词的所有出现位置（同一结束位置按词长从长到短报告）
+     * @param text 文本
+     * @param consumer 匹配回调
+     */
+    public void scan(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            state = next(state, regularize ? CharacterUtil.regularize(c) : c);
+            int s = termIds[state] >= 0 ? state : outLinks[state];
+            while (s != 0) {
+                int id = termIds[s];
+                consumer.onMatch(i + 1 - termLengths[id], i + 1, id);
+                s = outLinks[s];
+            }
+        }
+    }
+
+    /**
+     * 获取词id对应的词语
+     */
+    public String getTerm(int wordId) {
+        return terms[wordId];
+    }
+
+    /**
+     * 获取词id对应的词长
+     */
+    public int getTermLength(int wordId) {
+        return termLengths[wordId];
+    }
+
+    /**
+     * @return 是否对扫描文本做字符规范化
+     */
+    public boolean isRegularize() {
+        return regularize;
+    }
+
+    /**
+     * @return 词表大小（词id的上界）
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @return 自动机状态数
+     */
+    public int stateCount() {
+        return termIds.length;
+    }
+
+    /**
+     * 编译期字典树（首子节点/兄弟节点链表）
+     */
+    private static final class Builder {
+        private int[] firstChild = new int[1024];
+        private int[] nextSibling = new int[1024];
+        private char[] labels = new char[1024];
+        private int[] termIds = new int[1024];
+        // 根节点的稠密子节点表，避免在数千个首字符中顺序查找
+        private final int[] rootChildren = new int[Character.MAX_VALUE + 1];
+        private int size = 1;
+
+        Builder() {
+            termIds[0] = -1;
+        }
+
+        void add(String word, int id, boolean regularize) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (regularize) {
+                    c = CharacterUtil.regularize(c);
+                }
+                node = child(node, c);
+            }
+            if (termIds[node] < 0) {
+                termIds[node] = id;
+            }
+        }
+
+        private int child(int node, char c) {
+            if (node == 0) {
+                int child = rootChildren[c];
+                if (child == 0) {
+                    child = newNode(0, c);
+                    rootChildren[c] = child;
+                }
+                return child;
+            }
+            for (int child = firstChild[node]; child != 0; child = nextSibling[child]) {
+                if (labels[child] == c) {
+                    return child;
+                }
+            }
+            return newNode(node, c);
+        }
+
+        private int newNode(int parent, char c) {
+            if (size == labels.length) {
+                int capacity = size * 2;
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+                termIds = Arrays.copyOf(termIds, capacity);
+            }
+            int node = size++;
+            labels[node] = c;
+            termIds[node] = -1;
+            firstChild[node] = 0;
+            nextSibling[node] = firstChild[parent];
+            firstChild[parent] = node;
+            return node;
+        }
+    }
+}
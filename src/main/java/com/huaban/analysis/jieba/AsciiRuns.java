@@ -0,0 +1,113 @@
+package com.huaban.analysis.jieba;
+
+/**
+ * ASCII片段快速路径的判定表（与词典绑定，词典变化后重建）
+ * 功能：
+ * 1. 找出句子中可以不经字典树探测、HMM而直接按reSkip规则切分的ASCII片段（英文、数字、型号等）
+ * 2. 提供ASCII单字的对数词频，动态规划在这些位置按原算术累加分数，结果与完整路径逐位一致
+ *
+ * 可直接切分的条件（片段为最长的连续ASCII字符 [p, q)）：
+ * - 两侧为中文字符或句子边界：HMM切分时片段恰好独立成为一个非中文块
+ * - 片段内没有长度不小于2的词开始（相邻ASCII字符对不是词典前缀；片段末字与其后中文字不构成词）
+ * - 左侧没有跨入片段的词
+ * 满足条件时最优路径在片段内只能逐字前进，这些单字与相邻的单字合并后必然交给HMM，
+ * 其中片段部分的输出即CharacterUtil.splitSkip(片段)；不满足时（如用户词典中有"c++"）该片段走完整路径
+ */
+final class AsciiRuns {
+    private static final int ASCII = 128;
+
+    // 词典版本（WordDictionary以外的词典为0）
+    final long version;
+    private final DictionaryLookup dictionary;
+    // ASCII单字的对数词频
+    private final double[] singleFreqs = new double[ASCII];
+    // ASCII字符对是否为词典前缀（128 x 128位）
+    private final long[] pairPrefixes = new long[ASCII * ASCII / 64];
+
+    AsciiRuns(DictionaryLookup dictionary, long version) {
+        this.dictionary = dictionary;
+        this.version = version;
+        char[] pair = new char[2];
+        for (int a = 0; a < ASCII; a++) {
+            singleFreqs[a] = dictionary.getLogFreq(String.valueOf((char) a));
+            pair[0] = (char) a;
+            if (!dictionary.isPrefix(pair, 0, 1))
+                continue;
+            for (int b = 0; b < ASCII; b++) {
+                pair[1] = (char) b;
+                if (dictionary.isPrefix(pair, 0, 2)) {
+                    int bit = a * ASCII + b;
+                    pairPrefixes[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param ch ASCII字符
+     * @return 单字的对数词频
+     */
+    double singleFreq(char ch) {
+        return singleFreqs[ch];
+    }
+
+    private boolean pairIsPrefix(char a, char b) {
+        int bit = a * ASCII + b;
+        return (pairPrefixes[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * 标记句子中可直接切分的ASCII片段
+     * @param chars 句子
+     * @param ends 输出：可直接切分的片段内每个位置记录片段终点（不包含），其余位置不修改；长度不小于chars.length
+     * @return 是否存在可直接切分的片段
+     */
+    boolean mark(char[] chars, int[] ends) {
+        int N = chars.length;
+        int maxLength = Math.max(1, dictionary.getMaxWordLength());
+        int[] found = null;
+        boolean marked = false;
+        int p = 0;
+        while (p < N) {
+            if (chars[p] >= ASCII) {
+                p++;
+                continue;
+            }
+            int q = p + 1;
+            while (q < N && chars[q] < ASCII)
+                q++;
+            if (found == null)
+                found = new int[maxLength];
+            if (safe(chars, p, q, maxLength, found)) {
+                for (int i = p; i < q; i++)
+                    ends[i] = q;
+                marked = true;
+            }
+            p = q;
+        }
+        return marked;
+    }
+
+    private boolean safe(char[] chars, int p, int q, int maxLength, int[] found) {
+        int N = chars.length;
+        if ((p > 0 && !CharacterUtil.isChineseLetter(chars[p - 1])) || (q < N && !CharacterUtil.isChineseLetter(chars[q])))
+            return false;
+        for (int i = p; i + 1 < q; i++) {
+            if (pairIsPrefix(chars[i], chars[i + 1]))
+                return false;
+        }
+        // 片段末字与其后的中文字开始的词
+        if (q < N) {
+            int count = dictionary.matchEnds(chars, q - 1, Math.min(N, q - 1 + maxLength), found);
+            if (count > 0 && found[count - 1] >= q)
+                return false;
+        }
+        // 左侧开始、跨入片段的词
+        for (int s = Math.max(0, p - maxLength + 1); s < p; s++) {
+            int count = dictionary.matchEnds(chars, s, Math.min(N, s + maxLength), found);
+            if (count > 0 && found[count - 1] >= p)
+                return false;
+        }
+        return true;
+    }
+}
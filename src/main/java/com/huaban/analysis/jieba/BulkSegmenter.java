@@ -0,0 +1,427 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+
+/**
+ * 批量分词工具（命令行入口见main）
+ * 功能：
+ * 1. 对单个文件或整个目录树分词，目录输入时在输出目录下保持相同的相对路径
+ * 2. 每个输入行对应一个输出行：词语以空格连接，或附带偏移（词/起始,结束，偏移为行内字符位置）
+ * 3. 结束时报告字符数/秒、词数/秒
+ *
+ * 实现思路：
+ * - 文件按行边界切成若干块（默认8MB），每块以只读内存映射方式交给工作线程解码、分词并直接编码为UTF-8字节
+ * - 调用线程按提交顺序取回结果写入大缓冲输出流，同时在途的块数有上限，内存占用与文件大小无关
+ * - 单个大文件也能用满所有工作线程；大量小文件时块跨文件连续提交，不会逐文件等待
+ *
+ * 说明：
+ *    输出词语取自原文（不做全角、大小写转换）；纯空白的切分片段不输出
+ */
+public class BulkSegmenter {
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private SegMode mode = SegMode.SEARCH;
+    private boolean offsets = false;
+    private int chunkBytes = 8 << 20;
+    private JiebaSegmenter segmenter = new JiebaSegmenter();
+
+    /**
+     * 分词线程数（默认CPU核数）
+     */
+    public BulkSegmenter threads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * 分词模式（默认SEARCH）
+     */
+    public BulkSegmenter mode(SegMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * 是否输出偏移（默认false，即只输出以空格连接的词语）
+     */
+    public BulkSegmenter offsets(boolean offsets) {
+        this.offsets = offsets;
+        return this;
+    }
+
+    /**
+     * 每块字节数（在其后的第一个换行处切分，默认8MB）
+     */
+    public BulkSegmenter chunkBytes(int chunkBytes) {
+        this.chunkBytes = Math.max(4096, chunkBytes);
+        return this;
+    }
+
+    /**
+     * 指定分词器（默认新建JiebaSegmenter）
+     */
+    public BulkSegmenter segmenter(JiebaSegmenter segmenter) {
+        this.segmenter = segmenter;
+        return this;
+    }
+
+    /**
+     * 分词统计
+     */
+    public static final class Report {
+        public final int files;
+        public final long chars;
+        public final long tokens;
+        public final long elapsedMillis;
+
+        Report(int files, long chars, long tokens, long elapsedMillis) {
+            this.files = files;
+            this.chars = chars;
+            this.tokens = tokens;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(1L, elapsedMillis) / 1000.0;
+            return String.format(Locale.ROOT, "files:%d, chars:%d, tokens:%d, time elapsed:%dms, %.0f chars/s, %.0f tokens/s",
+                files, chars, tokens, elapsedMillis, chars / seconds, tokens / seconds);
+        }
+    }
+
+    /**
+     * 一块的分词结果
+     */
+    private static final class Chunk {
+        final Path output;
+        final Future<Utf8Buffer> bytes;
+        final long[] counts;    // 字符数、词数（由工作线程写入，bytes完成后可见）
+
+        Chunk(Path output, Future<Utf8Buffer> bytes, long[] counts) {
+            this.output = output;
+            this.bytes = bytes;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * 对文件或目录分词
+     * @param input 输入文件或目录（目录会递归遍历）
+     * @param output 输出文件；输入为目录时为输出目录
+     * @return 统计信息
+     */
+    public Report segment(Path input, Path output) throws IOException {
+        long s = System.currentTimeMillis();
+        List<Path> files;
+        List<Path> outputs = new ArrayList<Path>();
+        if (Files.isDirectory(input)) {
+            Path outputDir = output.toAbsolutePath().normalize();
+            try (Stream<Path> walk = Files.walk(input)) {
+                files = walk.filter(Files::isRegularFile)
+                    .filter(file -> !file.toAbsolutePath().normalize().startsWith(outputDir))
+                    .sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                outputs.add(output.resolve(input.relativize(file).toString()));
+            }
+        }
+        else {
+            files = new ArrayList<Path>();
+            files.add(input);
+            outputs.add(Files.isDirectory(output) ? output.resolve(input.getFileName().toString()) : output);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Chunk> pending = new ArrayDeque<Chunk>();
+        int window = threads * 4;
+        long chars = 0, tokens = 0;
+        Path current = null;
+        OutputStream out = null;
+        try {
+            for (int f = 0; f < files.size(); f++) {
+                Path file = files.get(f);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    if (size == 0) {
+                        pending.add(new Chunk(outputs.get(f), null, new long[2]));
+                    }
+                    for (long start = 0; start < size;) {
+                        long end = chunkEnd(channel, start, size);
+                        final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        final long[] counts = new long[2];
+                        pending.add(new Chunk(outputs.get(f), pool.submit(() -> segmentChunk(buffer, counts)), counts));
+                        start = end;
+                        while (pending.size() >= window) {
+                            Chunk done = pending.poll();
+                            out = write(done, current, out);
+                            current = done.output;
+                            chars += done.counts[0];
+                            tokens += done.counts[1];
+                        }
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                Chunk done = pending.poll();
+                out = write(done, current, out);
+                current = done.output;
+                chars += done.counts[0];
+                tokens += done.counts[1];
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("bulk segment interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("bulk segment failure", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+            if (out != null) {
+                out.close();
+            }
+        }
+        Report report = new Report(files.size(), chars, tokens, System.currentTimeMillis() - s);
+        Log.debug("bulk segment finished, " + report);
+        return report;
+    }
+
+    /**
+     * 写出一块结果，输出文件变化时关闭上一个输出流并打开新的
+     */
+    private static OutputStream write(Chunk chunk, Path current, OutputStream out)
+            throws IOException, InterruptedException, ExecutionException {
+        Utf8Buffer bytes = chunk.bytes == null ? null : chunk.bytes.get();
+        if (!chunk.output.equals(current)) {
+            if (out != null) {
+                out.close();
+            }
+            Path parent = chunk.output.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = new BufferedOutputStream(Files.newOutputStream(chunk.output), 1 << 20);
+        }
+        if (bytes != null) {
+            bytes.writeTo(out);
+        }
+        return out;
+    }
+
+    /**
+     * 计算从start开始的块的结束位置：start + chunkBytes之后的第一个换行符之后，或文件末尾
+     */
+    private long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + chunkBytes;
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * 工作线程：解码一块文本，逐行分词并直接编码为UTF-8输出
+     * 映射的字节只解码一次（分词接口需要String，每行另建一个），输出不经过StringBuilder和String
+     * @param counts 输出：字符数、词数
+     */
+    private Utf8Buffer segmentChunk(ByteBuffer buffer, long[] counts) {
+        Utf8Buffer out = new Utf8Buffer(buffer.remaining() * 2);
+        CharBuffer text = StandardCharsets.UTF_8.decode(buffer);
+        char[] chars = text.array();
+        int base = text.arrayOffset();
+        int length = text.remaining();
+        long tokens = 0;
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && chars[base + lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && chars[base + lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            String line = new String(chars, base + lineStart, contentEnd - lineStart);
+            boolean first = true;
+            for (SegToken token : segmenter.process(line, mode)) {
+                if (isBlank(line, token.startOffset, token.endOffset)) {
+                    continue;
+                }
+                if (!first) {
+                    out.append(' ');
+                }
+                first = false;
+                out.append(line, token.startOffset, token.endOffset);
+                if (offsets) {
+                    out.append('/');
+                    out.append(token.startOffset);
+                    out.append(',');
+                    out.append(token.endOffset);
+                }
+                tokens++;
+            }
+            out.append('\n');
+            lineStart = lineEnd + 1;
+        }
+        counts[0] = length;
+        counts[1] = tokens;
+        return out;
+    }
+
+    /**
+     * 可增长的UTF-8字节缓冲（与String.getBytes(UTF_8)编码结果一致，不成对的代理字符写为'?'）
+     */
+    private static final class Utf8Buffer {
+        private byte[] bytes;
+        private int size;
+
+        Utf8Buffer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        // 仅用于ASCII字符
+        void append(char c) {
+            ensure(1);
+            bytes[size++] = (byte) c;
+        }
+
+        void append(int value) {
+            if (value < 10) {
+                append((char) ('0' + value));
+                return;
+            }
+            append(value / 10);
+            append((char) ('0' + value % 10));
+        }
+
+        void append(String s, int start, int end) {
+            ensure((end - start) * 3);
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    bytes[size++] = (byte) c;
+                }
+                else if (c < 0x800) {
+                    bytes[size++] = (byte) (0xC0 | c >> 6);
+                    bytes[size++] = (byte) (0x80 | c & 0x3F);
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    bytes[size++] = (byte) (0xF0 | cp >> 18);
+                    bytes[size++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | cp & 0x3F);
+                }
+                else if (Character.isSurrogate(c)) {
+                    bytes[size++] = '?';
+                }
+                else {
+                    bytes[size++] = (byte) (0xE0 | c >> 12);
+                    bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+
+    private static boolean isBlank(String line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 命令行入口
+     * 用法：BulkSegmenter [-threads N] [-mode search|index] [-offsets] [-chunk MB] [-userDict 路径]... &lt;输入&gt; &lt;输出&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        BulkSegmenter bulk = new BulkSegmenter();
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-threads":
+                bulk.threads(Integer.parseInt(args[++i]));
+                break;
+            case "-mode":
+                bulk.mode(SegMode.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+                break;
+            case "-offsets":
+                bulk.offsets(true);
+                break;
+            case "-chunk":
+                long megabytes = Long.parseLong(args[++i]);
+                if (megabytes < 1 || megabytes > Integer.MAX_VALUE >> 20) {
+                    throw new IllegalArgumentException(String.format(Locale.ROOT,
+                        "-chunk must be between 1 and %d MB: %d", Integer.MAX_VALUE >> 20, megabytes));
+                }
+                bulk.chunkBytes((int) (megabytes << 20));
+                break;
+            case "-userDict":
+                Path dict = Paths.get(args[++i]);
+                if (Files.isDirectory(dict)) {
+                    WordDictionary.getInstance().init(dict);
+                }
+                else {
+                    WordDictionary.getInstance().loadUserDict(dict, StandardCharsets.UTF_8);
+                }
+                break;
+            default:
+                paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            System.err.println("usage: BulkSegmenter [-threads N] [-mode search|index] [-offsets] [-chunk MB]"
+                + " [-userDict path]... <input file or dir> <output file or dir>");
+            return;
+        }
+        Report report = bulk.segment(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+        System.out.println(report);
+    }
+}
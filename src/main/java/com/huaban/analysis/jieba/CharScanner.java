@@ -0,0 +1,79 @@
+package com.huaban.analysis.jieba;
+
+import java.util.Locale;
+
+/**
+ * 字符片段扫描器
+ * 功能：
+ * 1. 规范化并查找可切分片段（中文/英文/数字/连接符）的结束位置，供process使用
+ * 2. 查找中文/非中文片段的结束位置，供FinalSeg.cut使用
+ *
+ * 实现思路：
+ * - 本类为逐字符的标量实现，适用于所有Java版本
+ * - Java 17+ 的多版本jar中另有VectorCharScanner（jdk.incubator.vector），一次比较16～32个字符；
+ *   运行时需要 --add-modules jdk.incubator.vector，不可用时自动退回标量实现
+ * - 系统属性 jieba.vector.enable=false 可强制使用标量实现
+ */
+class CharScanner {
+    private static final String VECTOR_SCANNER = "com.huaban.analysis.jieba.VectorCharScanner";
+
+    static final CharScanner INSTANCE = create();
+
+    private static CharScanner create() {
+        if (Boolean.parseBoolean(System.getProperty("jieba.vector.enable", "true"))) {
+            try {
+                CharScanner scanner = (CharScanner) Class.forName(VECTOR_SCANNER).getDeclaredConstructor().newInstance();
+                Log.debug(String.format(Locale.getDefault(), "char scanner: %s", scanner.name()));
+                return scanner;
+            }
+            catch (ReflectiveOperationException | LinkageError e) {
+                // Java 8～16，或未加载jdk.incubator.vector模块
+            }
+        }
+        return new CharScanner();
+    }
+
+    /**
+     * @return 实现名称
+     */
+    String name() {
+        return "scalar";
+    }
+
+    /**
+     * 从from开始规范化字符（CharacterUtil.regularize，可选再查折叠表）写入dst的相同下标，
+     * 直到遇到规范化后不可切分（CharacterUtil.ccFind为false）的字符
+     * @param src 原文
+     * @param from 起始位置
+     * @param to 结束位置（不包含）
+     * @param dst 输出：规范化后的字符，长度不小于to
+     * @param foldTable 字符折叠表，为null时不折叠
+     * @return 第一个不可切分字符的下标（其规范化结果也已写入dst），全部可切分时返回to
+     */
+    int regularizeRun(char[] src, int from, int to, char[] dst, char[] foldTable) {
+        for (int i = from; i < to; i++) {
+            char ch = CharacterUtil.regularize(src[i]);
+            if (foldTable != null)
+                ch = foldTable[ch];
+            dst[i] = ch;
+            if (!CharacterUtil.ccFind(ch))
+                return i;
+        }
+        return to;
+    }
+
+    /**
+     * 从from开始查找第一个“是否中文字符”与chinese不同的字符
+     * @param chars 字符数组
+     * @param from 起始位置
+     * @param to 结束位置（不包含）
+     * @param chinese 当前片段是否为中文
+     * @return 片段结束位置
+     */
+    int chineseRunEnd(char[] chars, int from, int to, boolean chinese) {
+        int i = from;
+        while (i < to && CharacterUtil.isChineseLetter(chars[i]) == chinese)
+            i++;
+        return i;
+    }
+}
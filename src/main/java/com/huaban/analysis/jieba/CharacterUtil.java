@@ -1,5 +1,14 @@
 package com.huaban.analysis.jieba;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 /**
@@ -8,10 +17,14 @@ import java.util.regex.Pattern;
  * 1. 字符类型判断（中文、英文、数字、连接符）
  * 2. 字符规范化处理（全角转半角、大写转小写）
  * 3. 提供通用字符匹配规则
+ * 4. 字符折叠（规范化 + 繁体转简体），基于查表
  */
 public class CharacterUtil {
     // 匹配需要跳过的字符模式（数字、字母等组合）
     public static Pattern reSkip = Pattern.compile("(\\d+\\.\\d+|[a-zA-Z0-9]+)");
+
+    // 繁体转简体映射资源：每行由若干"繁体字+简体字"字符对连续组成
+    public static final String T2S_TABLE = "/t2s.txt";
     
     // 常见连接符号集合
     private static final char[] connectors = new char[] { '+', '#', '&', '.', '_', '-' };
@@ -73,6 +86,63 @@ public class CharacterUtil {
                isConnector(ch);
     }
 
+    /**
+     * 查找中文/非中文片段的结束位置（Java 17+且加载了jdk.incubator.vector模块时按向量批量比较）
+     * @param chars 字符数组
+     * @param from 起始位置
+     * @param to 结束位置（不包含）
+     * @param chinese 当前片段是否为中文
+     * @return 第一个isChineseLetter与chinese不同的字符下标，没有时返回to
+     */
+    public static int chineseRunEnd(char[] chars, int from, int to, boolean chinese) {
+        return CharScanner.INSTANCE.chineseRunEnd(chars, from, to, chinese);
+    }
+
+    /**
+     * 按reSkip规则切分非中文文本：数字串（含小数）、字母数字串各成一词，相邻两次匹配之间的其余字符合并为一词
+     * 结果与 reSkip.matcher(text) 逐次find的切分完全相同，但不经过正则引擎
+     * @param text 非中文文本
+     * @param tokens 输出
+     */
+    public static void splitSkip(String text, List<String> tokens) {
+        int n = text.length();
+        int offset = 0;
+        int j = 0;
+        while (j < n) {
+            char ch = text.charAt(j);
+            if (!isEnglishLetter(ch) && !isDigit(ch)) {
+                j++;
+                continue;
+            }
+            int k = j + 1;
+            if (isDigit(ch)) {
+                while (k < n && isDigit(text.charAt(k)))
+                    k++;
+                // 先尝试 \d+\.\d+，不成立时退回 [a-zA-Z0-9]+
+                if (k + 1 < n && text.charAt(k) == '.' && isDigit(text.charAt(k + 1))) {
+                    k += 2;
+                    while (k < n && isDigit(text.charAt(k)))
+                        k++;
+                }
+                else {
+                    while (k < n && (isEnglishLetter(text.charAt(k)) || isDigit(text.charAt(k))))
+                        k++;
+                }
+            }
+            else {
+                while (k < n && (isEnglishLetter(text.charAt(k)) || isDigit(text.charAt(k))))
+                    k++;
+            }
+            if (j > offset)
+                tokens.add(text.substring(offset, j));
+            tokens.add(text.substring(j, k));
+            offset = k;
+            j = k;
+        }
+        if (offset < n)
+            tokens.add(text.substring(offset));
+    }
+
     /**
      * 字符规范化处理：
      * 1. 全角空格转半角
@@ -96,4 +166,80 @@ public class CharacterUtil {
         }
         return input;
     }
+
+    /**
+     * 繁体转简体（不在映射表中的字符原样返回）
+     * @param input 原始字符
+     * @return 简体字符
+     */
+    public static char toSimplified(char input) {
+        return FoldTable.T2S[input];
+    }
+
+    /**
+     * 字符折叠：regularize规范化后再转小写、繁体转简体，一次查表完成
+     * 例如全角大写'Ａ'折叠为'a'，'電'折叠为'电'
+     * @param input 原始字符
+     * @return 折叠后的字符
+     */
+    public static char fold(char input) {
+        return FoldTable.FOLD[input];
+    }
+
+    /**
+     * @return 内置繁体转简体映射数组（共享，调用方不得修改）
+     */
+    static char[] simplifiedTable() {
+        return FoldTable.T2S;
+    }
+
+    /**
+     * 读取字符折叠映射表，读取失败时记录日志并返回已读取的部分
+     * 格式同T2S_TABLE：UTF-8，每行由若干"原字符+目标字符"字符对连续组成
+     * @param path 映射表文件，为null时使用内置繁体转简体映射
+     * @return 以字符为下标的映射数组（未映射的字符映射到自身）
+     */
+    public static char[] readFoldTable(Path path) {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = (char) c;
+        }
+        String name = path == null ? T2S_TABLE : path.toString();
+        try (InputStream is = path == null ? CharacterUtil.class.getResourceAsStream(T2S_TABLE)
+                : Files.newInputStream(path)) {
+            if (null == is) {
+                Log.error(String.format(Locale.getDefault(), "%s: not found!", name));
+                return table;
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                for (int i = 0; i + 1 < line.length(); i += 2) {
+                    table[line.charAt(i)] = line.charAt(i + 1);
+                }
+            }
+        }
+        catch (IOException e) {
+            Log.error(String.format(Locale.getDefault(), "%s: load failure!", name));
+        }
+        return table;
+    }
+
+    /**
+     * 折叠表（首次使用时加载映射资源）
+     */
+    private static final class FoldTable {
+        static final char[] T2S = readFoldTable(null);
+        static final char[] FOLD = buildFold();
+
+        private static char[] buildFold() {
+            char[] table = new char[Character.MAX_VALUE + 1];
+            for (int c = 0; c < table.length; c++) {
+                // 全角大写字母规范化后才是半角大写，需要再规范化一次转为小写
+                char ch = regularize(regularize((char) c));
+                table[c] = T2S[ch];
+            }
+            return table;
+        }
+    }
 }
@@ -0,0 +1,592 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 最小无环确定自动机（DAWG）词典
+ * 功能：
+ * 1. 前缀和后缀都共享（如大量以“公司”“大学”结尾的词共用尾部状态），状态数和转移数远少于字典树，适合内存受限的部署
+ * 2. 完美哈希词语id：词语id即其在词表（按字符序）中的序号，由转移上预先累计的计数在查询路径上求和得到，
+ *    词频按id存放在压缩的词频数组中（去重后的词频值表 + 每词一个下标）
+ * 3. 实现DictionaryLookup，通过JiebaSegmenter.builder().dictionary(...)使用，分词结果与WordDictionary一致
+ *
+ * 存储结构（全部为基本类型数组，状态0为初始状态）：
+ * - stateStart：int[状态数+1]，状态s的转移为 stateStart[s] .. stateStart[s+1]-1，按字符升序
+ * - finals：状态是否为终止状态的位图
+ * - labels / targets：char[转移数] / int[转移数]，转移上的字符及目标状态
+ * - skips：int[转移数]，经过该转移时词语id的增量（本状态是否终止 + 之前各转移目标状态接受的词数）
+ * - freqValues / freqIndex：去重排序后的对数词频，及词语id -> 词频下标（不超过65536种词频时为char[]，否则为int[]）
+ *
+ * 使用示例：
+ *    DawgDictionary dawg = DawgDictionary.build(WordDictionary.getInstance());
+ *    dawg.write(Paths.get("dict.dawg"));
+ *    JiebaSegmenter segmenter = JiebaSegmenter.builder().dictionary(DawgDictionary.read(Paths.get("dict.dawg"))).build();
+ * 从文件读取时不需要加载WordDictionary
+ */
+public final class DawgDictionary implements DictionaryLookup {
+    // 词典文件标识（"JBDW"）及版本
+    private static final int MAGIC = 0x4A424457;
+    private static final int VERSION = 1;
+
+    private final int[] stateStart;
+    private final long[] finals;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] skips;
+    private final double[] freqValues;
+    private final char[] freqIndex;
+    private final int[] wideFreqIndex;
+    private final int wordCount;
+    private final int maxWordLength;
+    private final double minFreq;
+
+    private DawgDictionary(int[] stateStart, long[] finals, char[] labels, int[] targets, int[] skips,
+            double[] freqValues, char[] freqIndex, int[] wideFreqIndex, int wordCount, int maxWordLength,
+            double minFreq) {
+        this.stateStart = stateStart;
+        this.finals = finals;
+        this.labels = labels;
+        this.targets = targets;
+        this.skips = skips;
+        this.freqValues = freqValues;
+        this.freqIndex = freqIndex;
+        this.wideFreqIndex = wideFreqIndex;
+        this.wordCount = wordCount;
+        this.maxWordLength = maxWordLength;
+        this.minFreq = minFreq;
+    }
+
+    /**
+     * 构建过程中的状态（构建完成后压平为数组）
+     */
+    private static final class State {
+        char[] labels = new char[0];
+        State[] targets = new State[0];
+        int size;
+        boolean terminal;
+        int id = -1;
+        int words;
+
+        State lastChild() {
+            return targets[size - 1];
+        }
+
+        State addChild(char c) {
+            if (size == labels.length) {
+                int grown = Math.max(2, size * 2);
+                labels = Arrays.copyOf(labels, grown);
+                targets = Arrays.copyOf(targets, grown);
+            }
+            State child = new State();
+            labels[size] = c;
+            targets[size++] = child;
+            return child;
+        }
+
+        // 子状态均已最小化，等价判断只需比较终止标志、转移字符和目标状态（按引用）
+        @Override
+        public boolean equals(Object o) {
+            State other = (State) o;
+            if (terminal != other.terminal || size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = terminal ? 1 : 0;
+            for (int i = 0; i < size; i++) {
+                h = h * 31 + labels[i];
+                h = h * 31 + System.identityHashCode(targets[i]);
+            }
+            return h;
+        }
+    }
+
+    /**
+     * 由已加载的词典（主词典及用户词典）构建
+     * @param dictionary 词典
+     * @return DAWG词典
+     */
+    public static DawgDictionary build(WordDictionary dictionary) {
+        Map<String, Double> freqs = dictionary.freqs;
+        String[] words = new String[freqs.size()];
+        int n = 0;
+        for (String word : freqs.keySet()) {
+            if (word != null && !word.isEmpty()) {
+                words[n++] = word;
+            }
+        }
+        Arrays.sort(words, 0, n);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = freqs.get(words[i]);
+        }
+        return build(Arrays.copyOf(words, n), values, dictionary.getMinFreq());
+    }
+
+    /**
+     * 按有序词表逐词插入，插入下一个词前把上一个词不再变化的尾部状态并入等价状态（Daciuk增量算法）
+     * @param words 按字符序升序、不重复的词表
+     * @param values 与words同下标的对数词频
+     */
+    private static DawgDictionary build(String[] words, double[] values, double minFreq) {
+        State root = new State();
+        Map<State, State> register = new HashMap<State, State>();
+        String previous = "";
+        int maxWordLength = 0;
+        for (String word : words) {
+            int common = 0;
+            int limit = Math.min(word.length(), previous.length());
+            while (common < limit && word.charAt(common) == previous.charAt(common)) {
+                common++;
+            }
+            State state = root;
+            for (int i = 0; i < common; i++) {
+                state = state.lastChild();
+            }
+            if (state.size > 0) {
+                replaceOrRegister(state, register);
+            }
+            for (int i = common; i < word.length(); i++) {
+                state = state.addChild(word.charAt(i));
+            }
+            state.terminal = true;
+            maxWordLength = Math.max(maxWordLength, word.length());
+            previous = word;
+        }
+        if (root.size > 0) {
+            replaceOrRegister(root, register);
+        }
+
+        // 状态编号（初始状态为0，其余按深度优先顺序）并统计转移数
+        List<State> states = new ArrayList<State>(register.size() + 1);
+        int transitions = number(root, states);
+        int stateCount = states.size();
+        int[] stateStart = new int[stateCount + 1];
+        long[] finals = new long[(stateCount + 63) >>> 6];
+        char[] labels = new char[transitions];
+        int[] targets = new int[transitions];
+        int[] skips = new int[transitions];
+        int t = 0;
+        for (int s = 0; s < stateCount; s++) {
+            State state = states.get(s);
+            stateStart[s] = t;
+            int skip = 0;
+            if (state.terminal) {
+                finals[s >>> 6] |= 1L << s;
+                skip = 1;
+            }
+            for (int i = 0; i < state.size; i++, t++) {
+                labels[t] = state.labels[i];
+                targets[t] = state.targets[i].id;
+                skips[t] = skip;
+                skip += state.targets[i].words;
+            }
+        }
+        stateStart[stateCount] = t;
+
+        // 词频去重：词语id即words中的下标
+        double[] distinct = values.clone();
+        Arrays.sort(distinct);
+        int d = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (d == 0 || Double.compare(distinct[d - 1], distinct[i]) != 0) {
+                distinct[d++] = distinct[i];
+            }
+        }
+        double[] freqValues = Arrays.copyOf(distinct, d);
+        char[] freqIndex = null;
+        int[] wideFreqIndex = null;
+        if (d <= Character.MAX_VALUE + 1) {
+            freqIndex = new char[words.length];
+            for (int i = 0; i < words.length; i++) {
+                freqIndex[i] = (char) Arrays.binarySearch(freqValues, values[i]);
+            }
+        }
+        else {
+            wideFreqIndex = new int[words.length];
+            for (int i = 0; i < words.length; i++) {
+                wideFreqIndex[i] = Arrays.binarySearch(freqValues, values[i]);
+            }
+        }
+        Log.debug(String.format(Locale.getDefault(), "dawg dict built, words:%d, states:%d, transitions:%d, freqs:%d",
+                words.length, stateCount, transitions, d));
+        return new DawgDictionary(stateStart, finals, labels, targets, skips, freqValues, freqIndex, wideFreqIndex,
+                words.length, maxWordLength, minFreq);
+    }
+
+    /**
+     * 最小化state的最后一个子状态所在的分支（该分支之后不会再有新词插入）
+     */
+    private static void replaceOrRegister(State state, Map<State, State> register) {
+        State child = state.lastChild();
+        if (child.size > 0) {
+            replaceOrRegister(child, register);
+        }
+        State existing = register.get(child);
+        if (existing != null) {
+            state.targets[state.size - 1] = existing;
+        }
+        else {
+            register.put(child, child);
+        }
+    }
+
+    /**
+     * 深度优先为状态编号，同时计算每个状态接受的词数
+     * @return 已编号状态的转移总数
+     */
+    private static int number(State root, List<State> states) {
+        int transitions = 0;
+        // 显式栈：先序编号，后序统计词数
+        List<State> stack = new ArrayList<State>();
+        List<Integer> next = new ArrayList<Integer>();
+        root.id = states.size();
+        states.add(root);
+        stack.add(root);
+        next.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            State state = stack.get(top);
+            int i = next.get(top);
+            if (i < state.size) {
+                next.set(top, i + 1);
+                State child = state.targets[i];
+                if (child.id < 0) {
+                    child.id = states.size();
+                    states.add(child);
+                    stack.add(child);
+                    next.add(0);
+                }
+                continue;
+            }
+            int words = state.terminal ? 1 : 0;
+            for (int k = 0; k < state.size; k++) {
+                words += state.targets[k].words;
+            }
+            state.words = words;
+            transitions += state.size;
+            stack.remove(top);
+            next.remove(top);
+        }
+        return transitions;
+    }
+
+    /**
+     * 查找转移（在状态的转移区间内按字符二分查找）
+     * @return 转移下标，不存在时返回-1
+     */
+    private int transition(int state, char c) {
+        int low = stateStart[state];
+        int high = stateStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if (label < c) {
+                low = mid + 1;
+            }
+            else if (label > c) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isFinal(int state) {
+        return (finals[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * 词语id查询（完美哈希：词表中按字符序的序号）
+     * @param word 词语（小写）
+     * @return 词语id（0 .. size()-1），不在词典中时返回-1
+     */
+    public int getWordId(String word) {
+        int state = 0;
+        int id = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int t = transition(state, word.charAt(i));
+            if (t < 0) {
+                return -1;
+            }
+            id += skips[t];
+            state = targets[t];
+        }
+        return word.isEmpty() || !isFinal(state) ? -1 : id;
+    }
+
+    /**
+     * @param id 词语id
+     * @return id对应的词语
+     */
+    public String getWord(int id) {
+        if (id < 0 || id >= wordCount) {
+            throw new IndexOutOfBoundsException("word id: " + id);
+        }
+        StringBuilder sb = new StringBuilder();
+        int state = 0;
+        int rest = id;
+        // 初始状态不是终止状态（不含空词）
+        while (!isFinal(state) || rest > 0) {
+            // 增量不超过rest的最后一个转移
+            int low = stateStart[state];
+            int high = stateStart[state + 1] - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (skips[mid] <= rest) {
+                    low = mid;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            rest -= skips[low];
+            sb.append(labels[low]);
+            state = targets[low];
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param id 词语id
+     * @return 词语的对数词频
+     */
+    public double getLogFreq(int id) {
+        return freqValues[freqIndex != null ? freqIndex[id] : wideFreqIndex[id]];
+    }
+
+    @Override
+    public int matchEnds(char[] chars, int begin, int end, int[] ends) {
+        int count = 0;
+        int state = 0;
+        for (int j = begin; j < end; j++) {
+            int t = transition(state, chars[j]);
+            if (t < 0) {
+                break;
+            }
+            state = targets[t];
+            if (isFinal(state)) {
+                ends[count++] = j;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isPrefix(char[] chars, int begin, int end) {
+        // 最小自动机中每个状态都能到达终止状态，能走完即为前缀
+        int state = 0;
+        for (int j = begin; j < end; j++) {
+            int t = transition(state, chars[j]);
+            if (t < 0) {
+                return false;
+            }
+            state = targets[t];
+        }
+        return true;
+    }
+
+    @Override
+    public double getLogFreq(String word) {
+        int id = getWordId(word);
+        return id < 0 ? minFreq : getLogFreq(id);
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return getWordId(word) >= 0;
+    }
+
+    @Override
+    public int getMaxWordLength() {
+        return maxWordLength;
+    }
+
+    /**
+     * @return 词语数
+     */
+    public int size() {
+        return wordCount;
+    }
+
+    /**
+     * @return 状态数
+     */
+    public int stateCount() {
+        return stateStart.length - 1;
+    }
+
+    /**
+     * @return 转移数
+     */
+    public int transitionCount() {
+        return labels.length;
+    }
+
+    /**
+     * @return 词典数据占用的字节数（数组内容，不含对象头）
+     */
+    public long sizeInBytes() {
+        long bytes = stateStart.length * 4L + finals.length * 8L + labels.length * 2L + targets.length * 4L
+                + skips.length * 4L + freqValues.length * 8L;
+        return bytes + (freqIndex != null ? freqIndex.length * 2L : wideFreqIndex.length * 4L);
+    }
+
+    /**
+     * 写出为词典文件（先写临时文件再原子替换）
+     * @param path 输出文件
+     */
+    public void write(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(stateCount());
+                out.writeInt(transitionCount());
+                out.writeInt(wordCount);
+                out.writeInt(maxWordLength);
+                out.writeInt(freqValues.length);
+                out.writeDouble(minFreq);
+                for (int value : stateStart) {
+                    out.writeInt(value);
+                }
+                for (long value : finals) {
+                    out.writeLong(value);
+                }
+                for (char value : labels) {
+                    out.writeChar(value);
+                }
+                for (int value : targets) {
+                    out.writeInt(value);
+                }
+                for (int value : skips) {
+                    out.writeInt(value);
+                }
+                for (double value : freqValues) {
+                    out.writeDouble(value);
+                }
+                for (int i = 0; i < wordCount; i++) {
+                    if (freqIndex != null) {
+                        out.writeChar(freqIndex[i]);
+                    }
+                    else {
+                        out.writeInt(wideFreqIndex[i]);
+                    }
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        Log.debug(String.format(Locale.getDefault(), "dawg dict %s written, words:%d, states:%d", path, wordCount,
+                stateCount()));
+    }
+
+    /**
+     * 读取由write生成的词典文件
+     * @param path 词典文件
+     * @return 词典
+     */
+    public static DawgDictionary read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + ": not a jieba dawg dict");
+            }
+            int stateCount = in.readInt();
+            int transitions = in.readInt();
+            int wordCount = in.readInt();
+            int maxWordLength = in.readInt();
+            int distinct = in.readInt();
+            double minFreq = in.readDouble();
+            if (stateCount < 1 || transitions < 0 || wordCount < 0 || distinct < 0) {
+                throw new IOException(path + ": corrupted jieba dawg dict");
+            }
+            int[] stateStart = new int[stateCount + 1];
+            for (int i = 0; i <= stateCount; i++) {
+                stateStart[i] = in.readInt();
+            }
+            long[] finals = new long[(stateCount + 63) >>> 6];
+            for (int i = 0; i < finals.length; i++) {
+                finals[i] = in.readLong();
+            }
+            char[] labels = new char[transitions];
+            for (int i = 0; i < transitions; i++) {
+                labels[i] = in.readChar();
+            }
+            int[] targets = new int[transitions];
+            for (int i = 0; i < transitions; i++) {
+                targets[i] = in.readInt();
+            }
+            int[] skips = new int[transitions];
+            for (int i = 0; i < transitions; i++) {
+                skips[i] = in.readInt();
+            }
+            double[] freqValues = new double[distinct];
+            for (int i = 0; i < distinct; i++) {
+                freqValues[i] = in.readDouble();
+            }
+            char[] freqIndex = null;
+            int[] wideFreqIndex = null;
+            if (distinct <= Character.MAX_VALUE + 1) {
+                freqIndex = new char[wordCount];
+                for (int i = 0; i < wordCount; i++) {
+                    freqIndex[i] = in.readChar();
+                }
+            }
+            else {
+                wideFreqIndex = new int[wordCount];
+                for (int i = 0; i < wordCount; i++) {
+                    wideFreqIndex[i] = in.readInt();
+                }
+            }
+            return new DawgDictionary(stateStart, finals, labels, targets, skips, freqValues, freqIndex, wideFreqIndex,
+                    wordCount, maxWordLength, minFreq);
+        }
+    }
+
+    /**
+     * 命令行入口：把内置主词典及用户词典写出为DAWG词典文件
+     * 用法：DawgDictionary &lt;输出文件&gt; [用户词典目录]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: DawgDictionary <output> [userDictDir]");
+            return;
+        }
+        WordDictionary dictionary = WordDictionary.getInstance();
+        if (args.length > 1) {
+            dictionary.init(Paths.get(args[1]));
+        }
+        DawgDictionary dawg = build(dictionary);
+        dawg.write(Paths.get(args[0]));
+        System.out.println(String.format(Locale.ROOT, "words:%d, states:%d, transitions:%d, bytes:%d", dawg.size(),
+                dawg.stateCount(), dawg.transitionCount(), dawg.sizeInBytes()));
+    }
+}
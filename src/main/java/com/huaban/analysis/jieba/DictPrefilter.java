@@ -0,0 +1,99 @@
+package com.huaban.analysis.jieba;
+
+import java.util.Arrays;
+
+/**
+ * 字典树探测前的位图预过滤（随词典加载构建，只增不减）
+ * 功能：
+ * 1. 首字位图：哪些字符是某个词的第一个字（8KB）
+ * 2. 单字词位图：哪些字符本身是词（8KB）
+ * 3. 首二字位图：哪些相邻字符对是某个长度不小于2的词的开头（哈希到2^20位，128KB，只有误判为“可能”，没有漏判）
+ * 4. 每个首字开始的最长词长（byte[65536]，超过126按不限长处理）
+ *
+ * 实现思路：
+ * - 大多数位置的字典树探测在第一、二个字就结束，先查位图可以跳过或缩短这些探测，不再逐层查找子节点
+ * - 过滤只排除一定不成词的探测，结果与直接探测字典树完全相同
+ */
+final class DictPrefilter {
+    private static final int CHARS = Character.MAX_VALUE + 1;
+    private static final int BIGRAM_BITS = 20;
+    // 最长词长的饱和值（不限长）
+    private static final int UNBOUNDED = Byte.MAX_VALUE;
+
+    private final long[] starts = new long[CHARS >>> 6];
+    private final long[] singles = new long[CHARS >>> 6];
+    private final long[] bigrams = new long[(1 << BIGRAM_BITS) >>> 6];
+    private final byte[] maxLengths = new byte[CHARS];
+
+    /**
+     * 登记一个词（小写，非空）
+     */
+    void add(String word) {
+        char first = word.charAt(0);
+        starts[first >>> 6] |= 1L << first;
+        int length = word.length();
+        if (length == 1) {
+            singles[first >>> 6] |= 1L << first;
+        }
+        else {
+            int bit = bigram(first, word.charAt(1));
+            bigrams[bit >>> 6] |= 1L << bit;
+        }
+        int saturated = Math.min(length, UNBOUNDED);
+        if (saturated > maxLengths[first]) {
+            maxLengths[first] = (byte) saturated;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(starts, 0L);
+        Arrays.fill(singles, 0L);
+        Arrays.fill(bigrams, 0L);
+        Arrays.fill(maxLengths, (byte) 0);
+    }
+
+    private static int bigram(char a, char b) {
+        return ((a << 16 | b) * 0x9E3779B1) >>> (32 - BIGRAM_BITS);
+    }
+
+    /**
+     * @return 是否有词以ch开头
+     */
+    boolean startsWord(char ch) {
+        return (starts[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * @return ch本身是否为词
+     */
+    boolean isSingle(char ch) {
+        return (singles[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * @return 是否可能有长度不小于2的词以ab开头（false时一定没有）
+     */
+    boolean mayStartLonger(char a, char b) {
+        int bit = bigram(a, b);
+        return (bigrams[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * 从begin开始的探测上限
+     * @param chars 字符数组
+     * @param begin 起始位置
+     * @param end 结束位置（不包含），大于begin
+     * @return 探测的结束位置（不包含）：begin表示没有词从begin开始，begin+1表示最多只有单字词
+     */
+    int probeEnd(char[] chars, int begin, int end) {
+        char first = chars[begin];
+        if (!startsWord(first)) {
+            return begin;
+        }
+        if (end - begin < 2 || !mayStartLonger(first, chars[begin + 1])) {
+            return begin + 1;
+        }
+        int limit = maxLengths[first];
+        return limit == UNBOUNDED ? end : Math.min(end, begin + limit);
+    }
+}
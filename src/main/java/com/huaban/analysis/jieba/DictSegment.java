@@ -1,8 +1,12 @@
 package com.huaban.analysis.jieba;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * 字典树节点实现（双数组Trie树优化版）
@@ -15,6 +19,7 @@ import java.util.Map;
  * - 小规模子节点使用数组存储（<=3个）
  * - 大规模子节点转为Map存储
  * - 支持动态添加和屏蔽词语
+ * - 每个节点记录子树内的最大词频，支持按词频的前缀补全
  */
 class DictSegment implements Comparable<DictSegment> {
     // 全局字符缓存，减少重复对象创建
@@ -31,6 +36,12 @@ class DictSegment implements Comparable<DictSegment> {
     private final Character nodeChar;    // 当前节点代表的字符
     private int storeSize = 0;           // 子节点数量
     private int nodeState = 0;           // 节点状态 0-普通 1-词语结束
+    // 词语权重（对数概率，非词节点为负无穷）
+    private double weight = Double.NEGATIVE_INFINITY;
+    // 子树（含本节点）内的最大词语权重；只增不减，词语被屏蔽或调低词频后仍是有效上界
+    private double maxWeight = Double.NEGATIVE_INFINITY;
+    // 词语id（WordDictionary分配，非词节点为-1）
+    private int wordId = -1;
 
     /**
      * 节点构造函数
@@ -109,6 +120,195 @@ class DictSegment implements Comparable<DictSegment> {
         return searchHit;
     }
 
+    /**
+     * 查找字符对应的子节点（不创建对象）
+     * @param c 字符
+     * @return 子节点，不存在时返回null
+     */
+    DictSegment child(char c) {
+        DictSegment[] array = childrenArray;
+        if (array != null) {
+            for (DictSegment ds : array) {
+                if (ds != null && ds.nodeChar.charValue() == c) {
+                    return ds;
+                }
+            }
+            return null;
+        }
+        Map<Character, DictSegment> map = childrenMap;
+        return map == null ? null : map.get(c);
+    }
+
+    /**
+     * 从begin开始沿字典树逐字前进，依次记录所有成词位置
+     * 结果与对每个长度调用match一致，但每个起点只遍历一次字典树
+     * @param charArray 字符数组
+     * @param begin 起始位置
+     * @param end 结束位置（不包含）
+     * @param ends 输出：成词的词尾下标（包含），升序；容量不小于end-begin
+     * @return 成词个数
+     */
+    int matchEnds(char[] charArray, int begin, int end, int[] ends) {
+        int count = 0;
+        DictSegment ds = this;
+        for (int j = begin; j < end; j++) {
+            ds = ds.child(charArray[j]);
+            if (ds == null) {
+                break;
+            }
+            if (ds.nodeState == 1) {
+                ends[count++] = j;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 同matchEnds，同时输出各词的词语id和权重（对数概率），调用方不必再按词语字符串查询
+     * @param ids 输出：词语id，与ends同下标
+     * @param weights 输出：词语权重，与ends同下标
+     * @return 成词个数
+     */
+    int matchEnds(char[] charArray, int begin, int end, int[] ends, int[] ids, double[] weights) {
+        int count = 0;
+        DictSegment ds = this;
+        for (int j = begin; j < end; j++) {
+            ds = ds.child(charArray[j]);
+            if (ds == null) {
+                break;
+            }
+            // 尚未分配id的词（正在加载）按不成词处理
+            if (ds.nodeState == 1 && ds.wordId >= 0) {
+                ends[count] = j;
+                ids[count] = ds.wordId;
+                weights[count++] = ds.weight;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 设置词语id（词语需已加载到字典树）
+     * @param charArray 词语字符数组
+     * @param id 词语id
+     */
+    void setWordId(char[] charArray, int id) {
+        DictSegment ds = this;
+        for (char c : charArray) {
+            ds = ds.child(c);
+            if (ds == null) {
+                return;
+            }
+        }
+        ds.wordId = id;
+    }
+
+    /**
+     * 设置词语权重，并沿路径更新子树最大权重（词语需已加载到字典树）
+     * @param charArray 词语字符数组
+     * @param weight 对数概率
+     */
+    void updateWeight(char[] charArray, double weight) {
+        DictSegment ds = this;
+        for (char c : charArray) {
+            if (weight > ds.maxWeight) {
+                ds.maxWeight = weight;
+            }
+            ds = ds.child(c);
+            if (ds == null) {
+                return;
+            }
+        }
+        ds.weight = weight;
+        if (weight > ds.maxWeight) {
+            ds.maxWeight = weight;
+        }
+    }
+
+    /**
+     * 前缀补全：返回以prefix开头、权重最高的k个词（同权重按字典序）
+     * 实现思路：
+     *    先沿前缀走到子树根，再做最优优先搜索：优先队列中既有待展开的节点（键为子树最大权重），
+     *    也有已确定的词语（键为自身权重）；节点的键不小于其子树内任何词语的键，
+     *    因此词语出队的顺序就是最终顺序，出队k个词即可停止，不遍历整棵子树
+     * @param prefix 前缀（已规范化）
+     * @param k 返回的词数上限
+     * @return 词语及其对数概率，按权重降序
+     */
+    List<Pair<String>> complete(String prefix, int k) {
+        DictSegment ds = this;
+        for (int i = 0; i < prefix.length() && ds != null; i++) {
+            ds = ds.child(prefix.charAt(i));
+        }
+        if (ds == null || k <= 0 || ds.maxWeight == Double.NEGATIVE_INFINITY) {
+            return Collections.emptyList();
+        }
+        List<Pair<String>> result = new ArrayList<Pair<String>>(Math.min(k, 64));
+        PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+        queue.add(new Candidate(prefix, ds.maxWeight, ds));
+        while (!queue.isEmpty() && result.size() < k) {
+            Candidate top = queue.poll();
+            DictSegment node = top.node;
+            if (node == null) {
+                result.add(new Pair<String>(top.text, top.score));
+                continue;
+            }
+            if (node.nodeState == 1 && node.weight > Double.NEGATIVE_INFINITY) {
+                queue.add(new Candidate(top.text, node.weight, null));
+            }
+            DictSegment[] array = node.childrenArray;
+            if (array != null) {
+                for (DictSegment child : array) {
+                    if (child != null) {
+                        offer(queue, top.text, child);
+                    }
+                }
+            }
+            else if (node.childrenMap != null) {
+                for (DictSegment child : node.childrenMap.values()) {
+                    offer(queue, top.text, child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void offer(PriorityQueue<Candidate> queue, String text, DictSegment child) {
+        if (child.maxWeight > Double.NEGATIVE_INFINITY) {
+            queue.add(new Candidate(text + child.nodeChar, child.maxWeight, child));
+        }
+    }
+
+    /**
+     * 补全搜索的队列元素：node为null时表示已确定的词语
+     * 按权重降序、文本升序排列（前缀不大于其扩展，保证节点先于其子树中的同分词语出队）
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final String text;
+        final double score;
+        final DictSegment node;
+
+        Candidate(String text, double score, DictSegment node) {
+            this.text = text;
+            this.score = score;
+            this.node = node;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Double.compare(o.score, score);
+            if (c != 0) {
+                return c;
+            }
+            c = text.compareTo(o.text);
+            if (c != 0) {
+                return c;
+            }
+            // 同一前缀：节点先于自身的词语出队
+            return (node == null ? 1 : 0) - (o.node == null ? 1 : 0);
+        }
+    }
+
     /**
      * 加载词语到字典树
      * @param charArray 词语字符数组
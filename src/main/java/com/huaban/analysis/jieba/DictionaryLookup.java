@@ -0,0 +1,51 @@
+package com.huaban.analysis.jieba;
+
+/**
+ * 分词所需的词典查询接口
+ * 功能：
+ * 1. 从某个位置开始的所有成词位置（构建DAG）
+ * 2. 词语的对数词频（动态规划打分）
+ * 3. 词语是否在词典中（INDEX模式子词、HMM前的整体判断）
+ *
+ * 实现：
+ * - WordDictionary：堆内字典树 + 词频表（默认）
+ * - MappedDictionary：内存映射文件中的只读词典，多个进程共享页缓存，GC不扫描词典数据
+ */
+public interface DictionaryLookup {
+
+    /**
+     * 从begin开始沿词典逐字前进，依次记录所有成词位置
+     * @param chars 字符数组
+     * @param begin 起始位置
+     * @param end 结束位置（不包含）
+     * @param ends 输出：成词的词尾下标（包含），升序；容量不小于end-begin
+     * @return 成词个数
+     */
+    int matchEnds(char[] chars, int begin, int end, int[] ends);
+
+    /**
+     * @param chars 字符数组
+     * @param begin 起始位置
+     * @param end 结束位置（不包含），大于begin
+     * @return chars[begin, end)是否为某个词的前缀（含词语本身）
+     */
+    boolean isPrefix(char[] chars, int begin, int end);
+
+    /**
+     * 词频查询
+     * @param word 词语
+     * @return 对数概率值；未登录词返回词典中的最小值
+     */
+    double getLogFreq(String word);
+
+    /**
+     * @param word 词语
+     * @return 词语是否在词典中
+     */
+    boolean containsWord(String word);
+
+    /**
+     * @return 最长词的长度（用于限定逐位置探测的深度）
+     */
+    int getMaxWordLength();
+}
@@ -4,8 +4,18 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.huaban.analysis.jieba.metrics.MetricsRegistry;
+import com.huaban.analysis.jieba.metrics.SegmenterMetrics;
+import com.huaban.analysis.jieba.metrics.Stage;
 import com.huaban.analysis.jieba.viterbi.FinalSeg;
 
 /**
@@ -15,11 +25,39 @@ import com.huaban.analysis.jieba.viterbi.FinalSeg;
  * 1. 基于词典构建DAG（有向无环图）
  * 2. 动态规划计算最大概率路径
  * 3. 结合HMM模型处理未登录词
+ *
+ * 词典与HMM模型在首次分词时加载（构造分词器不触发加载），也可用preload提前异步加载，
+ * isReady/awaitReady供健康检查使用；开启降级模式的分词器在词典加载完成前只用HMM切分
  */
 public class JiebaSegmenter {
-    // 单例词典实例（保持原有代码不变）
-    private static WordDictionary wordDict = WordDictionary.getInstance();
-    private static FinalSeg finalSeg = FinalSeg.getInstance();
+    // 异步预加载任务（未调用preload时为null）
+    private static volatile CompletableFuture<Void> preloading;
+    // 其中的词典加载任务（主词典及用户词典）
+    private static volatile CompletableFuture<Void> dictLoading;
+    // 指标收集（为null时关闭，分词路径上只多一次判空）
+    private static volatile MetricsRegistry metrics;
+
+    // 超过该长度的片段改用紧凑的逐位置动态规划（不构建装箱的DAG和路径表）
+    private static final int LONG_SENTENCE_LENGTH = 1024;
+
+    // 字符折叠表（如繁体转简体），在process的规范化步骤中逐字符查表，为null时不折叠
+    private final char[] foldTable;
+    // 分词使用的词典（为null时使用WordDictionary单例，首次使用时加载）
+    private final DictionaryLookup dictionary;
+    // 降级模式：WordDictionary单例加载完成前只用HMM切分，不等待词典
+    private final boolean degraded;
+    // 在线新词发现（为null时关闭），只能与默认词典一起使用
+    private final NewWordLearner learner;
+    // 输出过滤链（为空时不查询标志位）
+    private final TokenFilter[] filters;
+    // ASCII片段快速路径的判定表（首次遇到ASCII字符时创建，词典版本变化后重建）
+    private volatile AsciiRuns asciiRuns;
+
+    static {
+        if (Boolean.parseBoolean(System.getProperty("jieba.metrics.enable", "false"))) {
+            SegmenterMetrics.enable();
+        }
+    }
 
     /**
      * 分词模式枚举：
@@ -31,15 +69,130 @@ public class JiebaSegmenter {
         SEARCH  // 示例："北京大学" → ["北京","大学"]
     }
 
+    public JiebaSegmenter() {
+        this(null, null, new TokenFilter[0], false, null);
+    }
+
+    private JiebaSegmenter(char[] foldTable, DictionaryLookup dictionary, TokenFilter[] filters, boolean degraded,
+            NewWordLearner learner) {
+        this.foldTable = foldTable;
+        this.dictionary = dictionary;
+        this.filters = filters;
+        this.degraded = degraded;
+        this.learner = learner;
+    }
+
+    /**
+     * @return 分词器构建器
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 设置指标收集器
+     * @param registry 指标收集器，传入null关闭采集
+     */
+    public static void setMetricsRegistry(MetricsRegistry registry) {
+        metrics = registry;
+    }
+
+    /**
+     * @return 当前指标收集器，未开启时为null
+     */
+    public static MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    /**
+     * 异步加载主词典、用户词典和HMM模型（使用ForkJoinPool.commonPool()）
+     * @see #preload(Executor, Path...)
+     */
+    public static CompletableFuture<Void> preload(Path... userDictDirs) {
+        return preload(ForkJoinPool.commonPool(), userDictDirs);
+    }
+
+    /**
+     * 异步加载主词典、用户词典和HMM模型
+     * 主词典与HMM模型并行加载；用户词典的词频按主词典总词频归一化，在主词典之后依次加载
+     * 重复调用返回第一次调用的任务（之后传入的用户词典目录被忽略，可用initUserDict追加）
+     * @param executor 执行加载任务的线程池
+     * @param userDictDirs 用户词典目录（目录下的*.dict文件）
+     * @return 全部加载完成时完成的任务
+     */
+    public static synchronized CompletableFuture<Void> preload(Executor executor, final Path... userDictDirs) {
+        if (preloading == null) {
+            // 用户词典加载完成后才发布词典单例，降级模式的分词器不会在此之前切换到不含用户词的词典
+            CompletableFuture<Void> dict = CompletableFuture.runAsync(() -> WordDictionary.loadInstance(userDictDirs),
+                executor);
+            CompletableFuture<Void> hmm = CompletableFuture.runAsync(FinalSeg::getInstance, executor);
+            dictLoading = dict;
+            preloading = CompletableFuture.allOf(dict, hmm);
+        }
+        return preloading;
+    }
+
+    /**
+     * @return 词典（含preload指定的用户词典）和HMM模型是否已加载完成
+     */
+    public static boolean isReady() {
+        CompletableFuture<Void> future = preloading;
+        if (future != null)
+            return future.isDone() && !future.isCompletedExceptionally();
+        return WordDictionary.isLoaded() && FinalSeg.isLoaded();
+    }
+
+    /**
+     * 等待加载完成（尚未调用preload时先以默认参数开始预加载）
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return 是否已加载完成；超时或加载失败时返回false
+     */
+    public static boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            preload().get(timeout, unit);
+            return true;
+        }
+        catch (TimeoutException e) {
+            return false;
+        }
+        catch (ExecutionException e) {
+            Log.error("dictionary preload failure: " + e.getCause());
+            return false;
+        }
+    }
+
     /**
      * 初始化用户词典（保持原有代码不变）
      */
     public void initUserDict(Path path){
-        wordDict.init(path);
+        WordDictionary.getInstance().init(path);
     }
 
     public void initUserDict(String[] paths){
-        wordDict.init(paths);
+        WordDictionary.getInstance().init(paths);
+    }
+
+    /**
+     * @return 分词使用的词典（默认词典尚未加载时在此加载）
+     */
+    private DictionaryLookup dictionary() {
+        return dictionary != null ? dictionary : WordDictionary.getInstance();
+    }
+
+    /**
+     * @return 当前是否处于降级状态（开启降级模式且默认词典尚未加载完成）
+     */
+    private boolean degradedNow() {
+        return degraded && dictionary == null && !dictionaryLoaded();
+    }
+
+    /**
+     * @return 默认词典是否已加载完成：调用过preload时为其词典任务（含用户词典）是否已结束，否则为单例是否已创建
+     */
+    private static boolean dictionaryLoaded() {
+        CompletableFuture<Void> future = dictLoading;
+        return future != null ? future.isDone() : WordDictionary.isLoaded();
     }
 
     /**
@@ -48,14 +201,25 @@ public class JiebaSegmenter {
      * 1. 使用Trie树进行前缀匹配
      * 2. 记录所有可能的词路径
      * 3. 保证每个位置至少有一个节点（单字）
+     * 每个起点先查词典的位图预过滤（DictPrefilter），跳过不成词的起点、缩短探测长度
      */
     private Map<Integer, List<Integer>> createDAG(String sentence) {
         Map<Integer, List<Integer>> dag = new HashMap<Integer, List<Integer>>();
+        WordDictionary wordDict = WordDictionary.getInstance();
         DictSegment trie = wordDict.getTrie();
         char[] chars = sentence.toCharArray();
         int N = chars.length;
         int i = 0, j = 0;
+        // 从i开始的探测上限（不包含）
+        int probeEnd = 0;
         while (i < N) {
+            if (j == i)
+                probeEnd = wordDict.probeEnd(chars, i, N);
+            if (j >= probeEnd) {
+                i += 1;
+                j = i;
+                continue;
+            }
             Hit hit = trie.match(chars, i, j - i + 1);
             if (hit.isPrefix() || hit.isMatch()) {
                 if (hit.isMatch()) {
@@ -95,6 +259,7 @@ public class JiebaSegmenter {
      * - 概率累加：当前词概率 + 后续路径概率
      */
     private Map<Integer, Pair<Integer>> calc(String sentence, Map<Integer, List<Integer>> dag) {
+        WordDictionary wordDict = WordDictionary.getInstance();
         int N = sentence.length();
         HashMap<Integer, Pair<Integer>> route = new HashMap<Integer, Pair<Integer>>();
         route.put(N, new Pair<Integer>(0, 0.0));
@@ -118,146 +283,707 @@ public class JiebaSegmenter {
     /**
      * 处理整段文本的分词（保持原有代码结构）
      * 处理流程：
-     * 1. 分离中文字符和非中文字符
+     * 1. 分离中文字符和非中文字符（同时做规范化及可选的字符折叠）
      * 2. 中文部分使用DAG+DP处理
      * 3. 非中文部分按规则切分
+     * 开启字符折叠时，词语为折叠后的文本，偏移仍指向原文
      */
     public List<SegToken> process(String paragraph, SegMode mode) {
         List<SegToken> tokens = new ArrayList<SegToken>();
-        StringBuilder sb = new StringBuilder();
-        int offset = 0;
-        for (int i = 0; i < paragraph.length(); ++i) {
-            char ch = CharacterUtil.regularize(paragraph.charAt(i));
-            if (CharacterUtil.ccFind(ch))
-                sb.append(ch);
-            else {
-                if (sb.length() > 0) {
-                    // process
-                    if (mode == SegMode.SEARCH) {
-                        for (String word : sentenceProcess(sb.toString())) {
-                            tokens.add(new SegToken(word, offset, offset += word.length()));
-                        }
-                    }
-                    else {
-                        for (String token : sentenceProcess(sb.toString())) {
-                            if (token.length() > 2) {
-                                String gram2;
-                                int j = 0;
-                                for (; j < token.length() - 1; ++j) {
-                                    gram2 = token.substring(j, j + 2);
-                                    if (wordDict.containsWord(gram2))
-                                        tokens.add(new SegToken(gram2, offset + j, offset + j + 2));
-                                }
-                            }
-                            if (token.length() > 3) {
-                                String gram3;
-                                int j = 0;
-                                for (; j < token.length() - 2; ++j) {
-                                    gram3 = token.substring(j, j + 3);
-                                    if (wordDict.containsWord(gram3))
-                                        tokens.add(new SegToken(gram3, offset + j, offset + j + 3));
-                                }
-                            }
-                            tokens.add(new SegToken(token, offset, offset += token.length()));
-                        }
-                    }
-                    sb = new StringBuilder();
-                    offset = i;
-                }
-                if (wordDict.containsWord(paragraph.substring(i, i + 1)))
-                    tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
-                else
-                    tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
+        process(paragraph, 0, paragraph.length(), mode, new TokenList(tokens));
+        return tokens;
+    }
+
+    /**
+     * 对paragraph[from, to)分词，偏移相对于paragraph，结果追加到tokens
+     * from、to须为文本边界或与不可切分字符相邻（process不会让词跨越不可切分的字符）
+     */
+    private void process(String paragraph, int from, int to, SegMode mode, TokenSink tokens) {
+        MetricsRegistry metrics = JiebaSegmenter.metrics;
+        char[] foldTable = this.foldTable;
+        long start = metrics == null ? 0L : System.nanoTime();
+        long nested = 0L;
+        int count = tokens.size();
+        SentenceWords words = new SentenceWords();
+        // 规范化与片段边界查找由CharScanner成批完成（Java 17+可使用Vector API实现）
+        CharScanner scanner = CharScanner.INSTANCE;
+        int length = to - from;
+        char[] chars = new char[length];
+        paragraph.getChars(from, to, chars, 0);
+        char[] regular = new char[length];
+        int i = 0;
+        while (i < length) {
+            int end = scanner.regularizeRun(chars, i, length, regular, foldTable);
+            if (end > i) {
+                // process
+                long t = metrics == null ? 0L : System.nanoTime();
+                addSentenceTokens(tokens, words, new String(regular, i, end - i), from + i, mode, metrics);
+                if (metrics != null)
+                    nested += System.nanoTime() - t;
             }
+            // 不可切分的字符单独成词（保留原文）
+            if (end < length) {
+                int offset = from + end;
+                tokens.add(paragraph, offset, offset + 1, 0, null, SentenceWords.UNRESOLVED);
+            }
+            i = end + 1;
         }
-        if (sb.length() > 0)
-            if (mode == SegMode.SEARCH) {
-                for (String token : sentenceProcess(sb.toString())) {
-                    tokens.add(new SegToken(token, offset, offset += token.length()));
-                }
+
+        if (metrics != null) {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordStage(Stage.CHAR_CLASS_SPLIT, elapsed - nested);
+            metrics.recordRequest(length, tokens.size() - count, elapsed);
+        }
+    }
+
+    /**
+     * 编辑后的增量分词（用于编辑器、实时审核等逐次修改的场景）
+     * 功能：只对编辑所在的窗口重新分词，窗口前的词原样保留，窗口后的词平移偏移，结果与对编辑后全文调用process完全一致
+     *
+     * 窗口：从编辑位置向两侧扩展到最近的不可切分字符（标点、空白等）。process中词语、HMM单字缓冲区都不会跨越这些字符，
+     * 而可切分片段内部的最优路径是整体求解的（后缀分数的浮点累加顺序、单字缓冲区都可能跨越任意词边界），
+     * 因此窗口取整个片段；有标点的文本重新分词的工作量与编辑所在的句子成正比，与全文长度无关
+     *
+     * 返回的列表是不可变的平衡树（见TokenRope）：保留、平移窗口两侧的词只需O(log N)次拆分拼接，不复制整个列表；
+     * 只有previous为本分词器以同一模式返回的reprocess结果、且词典版本未变（例如没有加载用户词典、
+     * 没有新词提升）时才增量分词，否则（如previous为process的结果）对编辑后全文重新分词
+     * @param previous 编辑前的文本用同一分词器、同一模式调用本方法（或process）的结果
+     * @param text 编辑后的文本
+     * @param offset 编辑位置
+     * @param removedLength 删除的字符数（编辑前文本中offset开始）
+     * @param insertedLength 插入的字符数（编辑后文本中offset开始）
+     * @param mode 分词模式
+     * @return 编辑后文本的分词结果（不可变列表，previous不修改）
+     */
+    public List<SegToken> reprocess(List<SegToken> previous, String text, int offset, int removedLength,
+            int insertedLength, SegMode mode) {
+        int length = text.length();
+        if (offset < 0 || removedLength < 0 || insertedLength < 0 || offset + insertedLength > length) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                "invalid edit: offset %d, removed %d, inserted %d, text length %d", offset, removedLength,
+                insertedLength, length));
+        }
+        int delta = insertedLength - removedLength;
+        // 分词前读取版本：分词期间词典发生变化时，下一次编辑会重新分词
+        long version = dictionaryVersion();
+        if (!(previous instanceof TokenRope) || !reusable((TokenRope) previous, mode, version, length - delta)) {
+            List<SegToken> tokens = new ArrayList<SegToken>();
+            process(text, 0, length, mode, new TokenList(tokens));
+            return TokenRope.of(tokens, this, mode, version, length);
+        }
+        TokenRope rope = (TokenRope) previous;
+        int from = offset;
+        while (from > 0 && cuttable(text.charAt(from - 1)))
+            from--;
+        int to = offset + insertedLength;
+        while (to < length && cuttable(text.charAt(to)))
+            to++;
+        int head = rope.firstStartingAt(from);
+        int tail = rope.firstStartingAt(to - delta);
+        List<SegToken> tokens = new ArrayList<SegToken>();
+        process(text, from, to, mode, new TokenList(tokens));
+        return rope.edit(head, tail, tokens, delta, version, length);
+    }
+
+    /**
+     * @return previous能否作为增量分词的基础：同一分词器、同一模式、同一词典版本，且对应编辑前的文本
+     */
+    private boolean reusable(TokenRope previous, SegMode mode, long version, int previousLength) {
+        return previous.owner == this && previous.mode == mode && previous.version == version
+            && previous.textLength == previousLength;
+    }
+
+    /**
+     * @return 分词所用词典的版本（降级状态下为-1，词典加载完成后版本必然不同；指定的词典不可变，为0）
+     */
+    private long dictionaryVersion() {
+        if (dictionary != null)
+            return 0L;
+        return degradedNow() ? -1L : WordDictionary.getInstance().getVersion();
+    }
+
+    /**
+     * @return 字符（规范化、折叠后）是否可切分，与process的片段划分一致
+     */
+    private boolean cuttable(char ch) {
+        ch = CharacterUtil.regularize(ch);
+        if (foldTable != null)
+            ch = foldTable[ch];
+        return CharacterUtil.ccFind(ch);
+    }
+
+    /**
+     * 词语标志位（降级状态下不等待词典：单字只有标点标志，多字词为0）
+     * @param id 词语id（见SentenceWords.ids），词典词直接按id取标志位，不再按字符串查询
+     */
+    private int flagsOf(String text, int start, int end, int id) {
+        if (degradedNow())
+            return end - start == 1 ? WordDictionary.punctuationFlags(text.charAt(start)) : 0;
+        return WordDictionary.getInstance().getFlags(text, start, end, id);
+    }
+
+    /**
+     * process的输出目标：词语为text[start, end)（word为null时按需截取），偏移为 base+start .. base+end
+     */
+    private interface TokenSink {
+        /**
+         * @param id 词语id（见SentenceWords.ids）
+         */
+        void add(String text, int start, int end, int base, String word, int id);
+
+        /**
+         * @return 已输出的词数
+         */
+        int size();
+
+        /**
+         * @return 是否需要词语id（需要时动态规划直接记录词语id）
+         */
+        boolean needsIds();
+    }
+
+    /**
+     * 输出为SegToken列表（经过滤链）
+     * 过滤器看到的是文本区间的视图，词语字符串只为通过过滤链的词生成
+     */
+    private final class TokenList implements TokenSink {
+        private final List<SegToken> tokens;
+        private final TextView view = new TextView();
+
+        TokenList(List<SegToken> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void add(String text, int start, int end, int base, String word, int id) {
+            if (filters.length == 0) {
+                tokens.add(new SegToken(word != null ? word : text.substring(start, end), base + start, base + end));
+                return;
             }
-            else {
-                for (String token : sentenceProcess(sb.toString())) {
-                    if (token.length() > 2) {
-                        String gram2;
-                        int j = 0;
-                        for (; j < token.length() - 1; ++j) {
-                            gram2 = token.substring(j, j + 2);
-                            if (wordDict.containsWord(gram2))
-                                tokens.add(new SegToken(gram2, offset + j, offset + j + 2));
-                        }
-                    }
-                    if (token.length() > 3) {
-                        String gram3;
-                        int j = 0;
-                        for (; j < token.length() - 2; ++j) {
-                            gram3 = token.substring(j, j + 3);
-                            if (wordDict.containsWord(gram3))
-                                tokens.add(new SegToken(gram3, offset + j, offset + j + 3));
-                        }
-                    }
-                    tokens.add(new SegToken(token, offset, offset += token.length()));
-                }
+            int flags = flagsOf(text, start, end, id);
+            view.reset(text, start, end);
+            for (TokenFilter filter : filters) {
+                flags = filter.filter(view, flags);
+                if (flags < 0)
+                    return;
             }
+            tokens.add(new SegToken(word != null ? word : text.substring(start, end), base + start, base + end, flags));
+        }
 
-        return tokens;
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+
+        @Override
+        public boolean needsIds() {
+            return filters.length > 0;
+        }
+    }
+
+    /**
+     * 文本区间text[start, end)的只读视图（复用，过滤器不应保存引用）
+     */
+    private static final class TextView implements CharSequence {
+        private String text;
+        private int start;
+        private int end;
+
+        void reset(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start)
+                throw new IndexOutOfBoundsException("index: " + index);
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > end - start || from > to)
+                throw new IndexOutOfBoundsException(String.format(Locale.ROOT, "range: %d, %d", from, to));
+            return text.substring(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.substring(start, end);
+        }
+    }
+
+    /**
+     * 输出为词语id（词典词的id来自动态规划，只有未登录词和未查询的词按字符串查询）
+     */
+    private static final class IdList implements TokenSink {
+        private final WordIdTokens out;
+
+        IdList(WordIdTokens out) {
+            this.out = out;
+        }
+
+        @Override
+        public void add(String text, int start, int end, int base, String word, int id) {
+            if (id < 0 && word == null)
+                word = text.substring(start, end);
+            out.add(word, id, base + start, base + end);
+        }
+
+        @Override
+        public int size() {
+            return out.size();
+        }
+
+        @Override
+        public boolean needsIds() {
+            return true;
+        }
+    }
+
+    /**
+     * 以词语id输出的process（词语及偏移与process完全一致）
+     * 词典词输出WordDictionary的词语id，未登录词输出out分配的负数id，下游计数可直接按id累加
+     * 词典词的id在动态规划探测字典树时直接得到，不再按词语字符串查询
+     * @param paragraph 文本
+     * @param mode 分词模式
+     * @param out 输出缓冲区（先清空再写入，可在多次调用间复用）
+     * @return out
+     */
+    public WordIdTokens processIds(String paragraph, SegMode mode, WordIdTokens out) {
+        out.clear();
+        process(paragraph, 0, paragraph.length(), mode, new IdList(out));
+        return out;
+    }
+
+    /**
+     * 以词语id输出的sentenceProcess（偏移为词在sentence中的位置）
+     * @param sentence 句子
+     * @param out 输出缓冲区（先清空再写入，可在多次调用间复用）
+     * @return out
+     */
+    public WordIdTokens sentenceProcessIds(String sentence, WordIdTokens out) {
+        out.clear();
+        SentenceWords words = new SentenceWords();
+        cut(sentence, true, words);
+        for (int k = 0; k < words.size; k++) {
+            int id = words.ids[k];
+            out.add(id >= 0 ? null : words.word(sentence, k), id, words.starts[k], words.ends[k]);
+        }
+        return out;
+    }
+
+    /**
+     * 对一个连续的可切分片段分词并输出带偏移的词
+     * INDEX模式下额外输出词典中存在的2-gram/3-gram子词（默认词典按字符区间查询，不为子词截取子串）
+     */
+    private void addSentenceTokens(TokenSink tokens, SentenceWords words, String sentence, int offset,
+            SegMode mode, MetricsRegistry metrics) {
+        cut(sentence, tokens.needsIds(), words);
+        // 降级状态下不输出子词（需要查询词典）
+        if (mode == SegMode.SEARCH || degradedNow()) {
+            for (int k = 0; k < words.size; k++)
+                tokens.add(sentence, words.starts[k], words.ends[k], offset, words.words[k], words.ids[k]);
+            return;
+        }
+        long t = metrics == null ? 0L : System.nanoTime();
+        DictionaryLookup dictionary = dictionary();
+        WordDictionary wordDict = this.dictionary == null ? (WordDictionary) dictionary : null;
+        for (int k = 0; k < words.size; k++) {
+            int start = words.starts[k];
+            int end = words.ends[k];
+            if (end - start > 2) {
+                for (int j = start; j < end - 1; ++j)
+                    addGram(tokens, sentence, j, j + 2, offset, dictionary, wordDict);
+            }
+            if (end - start > 3) {
+                for (int j = start; j < end - 2; ++j)
+                    addGram(tokens, sentence, j, j + 3, offset, dictionary, wordDict);
+            }
+            tokens.add(sentence, start, end, offset, words.words[k], words.ids[k]);
+        }
+        if (metrics != null)
+            metrics.recordStage(Stage.INDEX_EXPANSION, System.nanoTime() - t);
+    }
+
+    /**
+     * 输出词典中存在的子词sentence[start, end)
+     * @param wordDict 默认词典，为null时按子串查询dictionary
+     */
+    private static void addGram(TokenSink tokens, String sentence, int start, int end, int offset,
+            DictionaryLookup dictionary, WordDictionary wordDict) {
+        if (wordDict != null) {
+            int id = wordDict.getWordId(sentence, start, end);
+            if (id >= 0 || wordDict.isLearned(sentence, start, end))
+                tokens.add(sentence, start, end, offset, null, id);
+        }
+        else {
+            String gram = sentence.substring(start, end);
+            if (dictionary.containsWord(gram))
+                tokens.add(sentence, start, end, offset, gram, SentenceWords.UNRESOLVED);
+        }
     }
 
     /**
      * 处理单个句子的分词（保持原有代码结构）
      * 核心流程：
      * 1. 构建DAG → 2. 动态规划 → 3. 处理未登录词
+     * 超过LONG_SENTENCE_LENGTH的片段（如无标点的网页、OCR文本）改用calcLong，结果相同但内存与片段长度成小比例；
+     * 使用WordDictionary以外的词典时（如MappedDictionary）总是使用calcLong，只通过DictionaryLookup查询
+     * 不会与词典词相连的ASCII片段（英文、数字、型号等，见AsciiRuns）不做字典树探测和HMM，直接按reSkip规则切分，
+     * 其两侧的单字缓冲区直接交给HMM（与合并为同一缓冲区时的结果相同）
+     * 降级状态下（见Builder.degraded）整个句子交给HMM切分
      */
     public List<String> sentenceProcess(String sentence) {
-        List<String> tokens = new ArrayList<String>();
+        SentenceWords words = new SentenceWords();
+        cut(sentence, false, words);
+        List<String> tokens = new ArrayList<String>(words.size);
+        for (int k = 0; k < words.size; k++)
+            tokens.add(words.word(sentence, k));
+        return tokens;
+    }
+
+    /**
+     * sentenceProcess的切分过程，结果写入words（先清空）
+     * @param withIds 是否记录词语id：使用默认词典时改用calcLong，在探测字典树时直接得到词典词的id
+     */
+    private void cut(String sentence, boolean withIds, SentenceWords words) {
+        MetricsRegistry metrics = JiebaSegmenter.metrics;
+        words.clear();
+        if (degradedNow()) {
+            FinalSeg.getInstance().cut(sentence, words.scratch());
+            words.addScratch(0);
+            return;
+        }
         int N = sentence.length();
-        Map<Integer, List<Integer>> dag = createDAG(sentence);
-        Map<Integer, Pair<Integer>> route = calc(sentence, dag);
+        long t = metrics == null ? 0L : System.nanoTime();
+        // asciiEnds[x]：x位于可直接切分的ASCII片段内时为片段终点，否则为0
+        int[] asciiEnds = null;
+        AsciiRuns runs = null;
+        if (containsAscii(sentence)) {
+            runs = asciiRuns();
+            asciiEnds = new int[N];
+            if (!runs.mark(sentence.toCharArray(), asciiEnds))
+                asciiEnds = null;
+        }
+        // next[x]：从x开始的最优词的词尾（不包含）；nextIds[x]：该词的词语id
+        int[] next;
+        int[] nextIds = withIds && dictionary == null ? new int[N] : null;
+        // 有新词发现提升的词时也用calcLong：createDAG只探测字典树，提升的词在WordDictionary.matchIds中合并
+        if (nextIds != null || N > LONG_SENTENCE_LENGTH || dictionary != null || asciiEnds != null
+                || WordDictionary.getInstance().hasLearnedWords()) {
+            next = calcLong(sentence, runs, asciiEnds, nextIds);
+            // 字典树探测与动态规划交织在一起，探测时间计入DP（见Stage）
+            if (metrics != null)
+                metrics.recordStage(Stage.DP, System.nanoTime() - t);
+        }
+        else {
+            Map<Integer, List<Integer>> dag = createDAG(sentence);
+            if (metrics != null) {
+                long now = System.nanoTime();
+                metrics.recordStage(Stage.DAG_BUILD, now - t);
+                t = now;
+            }
+            Map<Integer, Pair<Integer>> route = calc(sentence, dag);
+            next = new int[N];
+            for (int i = 0; i < N; ++i)
+                next[i] = route.get(i).key + 1;
+            if (metrics != null)
+                metrics.recordStage(Stage.DP, System.nanoTime() - t);
+        }
 
         int x = 0;
         int y = 0;
-        String buf;
-        StringBuilder sb = new StringBuilder();
+        // 单字缓冲区的起点（-1为空）：DP路径上连续的单字即sentence[singles, x)
+        int singles = -1;
+        // 当前单字缓冲区是否与可直接切分的ASCII片段相邻
+        boolean adjacent = false;
         while (x < N) {
-            y = route.get(x).key + 1;
-            String lWord = sentence.substring(x, y);
-            if (y - x == 1)
-                sb.append(lWord);
+            if (asciiEnds != null && asciiEnds[x] != 0) {
+                if (singles >= 0) {
+                    flushSingles(sentence, singles, x, nextIds, words, metrics, true);
+                    singles = -1;
+                }
+                y = asciiEnds[x];
+                CharacterUtil.splitSkip(sentence.substring(x, y), words.scratch());
+                words.addScratch(x);
+                adjacent = true;
+                x = y;
+                continue;
+            }
+            y = next[x];
+            if (y - x == 1) {
+                if (singles < 0)
+                    singles = x;
+            }
             else {
-                if (sb.length() > 0) {
-                    buf = sb.toString();
-                    sb = new StringBuilder();
-                    if (buf.length() == 1) {
-                        tokens.add(buf);
-                    }
-                    else {
-                        if (wordDict.containsWord(buf)) {
-                            tokens.add(buf);
-                        }
-                        else {
-                            finalSeg.cut(buf, tokens);
-                        }
-                    }
+                if (singles >= 0) {
+                    flushSingles(sentence, singles, x, nextIds, words, metrics, adjacent);
+                    singles = -1;
                 }
-                tokens.add(lWord);
+                adjacent = false;
+                words.add(x, y, null, nextIds != null ? nextIds[x] : SentenceWords.UNRESOLVED);
             }
             x = y;
         }
-        buf = sb.toString();
-        if (buf.length() > 0) {
-            if (buf.length() == 1) {
-                tokens.add(buf);
+        if (singles >= 0) {
+            flushSingles(sentence, singles, N, nextIds, words, metrics, adjacent);
+        }
+        if (metrics != null)
+            metrics.recordSentence(N, words.size);
+    }
+
+    /**
+     * 长片段的动态规划（与createDAG + calc逐位一致）
+     * 实现思路：
+     * - 不保存DAG：从右向左处理每个位置时才沿字典树探测从该位置开始的词
+     * - 路径分数只被其后最长词长个位置引用，用环形数组保存，不保留整段分数
+     * - 各位置按原顺序（词尾升序）、原算术（词频 + 后继分数）和原比较规则（严格大于才替换）选词，
+     *   因此结果与calc完全相同；没有在安全切分点处分段计算，是因为分段后各段分数的基数不同，
+     *   浮点舍入可能改变同分时的选择
+     * 内存：每个字符一个int（最优词尾）加一个长度为最长词长的环形分数数组
+     * 可直接切分的ASCII片段内只有单字路径，不探测字典树，按单字词频与后继分数相加（与探测后的算术相同）
+     * 默认词典的探测（WordDictionary.matchIds）直接给出候选词的词语id和词频，不为候选词截取子串
+     * @param runs ASCII判定表，asciiEnds为null时不使用
+     * @param asciiEnds 可直接切分的ASCII片段标记（见AsciiRuns.mark），可以为null
+     * @param nextIds 输出：每个位置最优词的词语id（不在词典中为-1），为null时不记录；只用于默认词典
+     * @return 每个位置最优词的词尾（不包含）
+     */
+    private int[] calcLong(String sentence, AsciiRuns runs, int[] asciiEnds, int[] nextIds) {
+        char[] chars = sentence.toCharArray();
+        int N = chars.length;
+        DictionaryLookup dictionary = dictionary();
+        WordDictionary wordDict = this.dictionary == null ? (WordDictionary) dictionary : null;
+        int maxLength = Math.max(1, dictionary.getMaxWordLength());
+        int mask = (Integer.highestOneBit(maxLength) << 1) - 1;
+        double[] scores = new double[mask + 1];
+        int[] ends = new int[maxLength];
+        int[] ids = wordDict != null ? new int[maxLength] : null;
+        double[] freqs = wordDict != null ? new double[maxLength] : null;
+        int[] next = new int[N];
+        scores[N & mask] = 0.0;
+        for (int i = N - 1; i > -1; i--) {
+            if (asciiEnds != null && asciiEnds[i] != 0) {
+                scores[i & mask] = runs.singleFreq(chars[i]) + scores[(i + 1) & mask];
+                next[i] = i + 1;
+                continue;
+            }
+            int limit = Math.min(N, i + maxLength);
+            int bestEnd = i + 1;
+            int bestId = -1;
+            double best;
+            if (wordDict != null) {
+                int found = wordDict.matchIds(chars, i, limit, ends, ids, freqs);
+                if (found == 0) {
+                    best = wordDict.getMinFreq() + scores[(i + 1) & mask];
+                }
+                else {
+                    bestEnd = ends[0] + 1;
+                    bestId = ids[0];
+                    best = freqs[0] + scores[bestEnd & mask];
+                    for (int e = 1; e < found; e++) {
+                        int end = ends[e] + 1;
+                        double freq = freqs[e] + scores[end & mask];
+                        if (best < freq) {
+                            best = freq;
+                            bestEnd = end;
+                            bestId = ids[e];
+                        }
+                    }
+                }
             }
             else {
-                if (wordDict.containsWord(buf)) {
-                    tokens.add(buf);
+                int found = dictionary.matchEnds(chars, i, limit, ends);
+                if (found == 0) {
+                    best = dictionary.getLogFreq(sentence.substring(i, i + 1)) + scores[(i + 1) & mask];
                 }
                 else {
-                    finalSeg.cut(buf, tokens);
+                    bestEnd = ends[0] + 1;
+                    best = dictionary.getLogFreq(sentence.substring(i, bestEnd)) + scores[bestEnd & mask];
+                    for (int e = 1; e < found; e++) {
+                        int end = ends[e] + 1;
+                        double freq = dictionary.getLogFreq(sentence.substring(i, end)) + scores[end & mask];
+                        if (best < freq) {
+                            best = freq;
+                            bestEnd = end;
+                        }
+                    }
                 }
             }
+            scores[i & mask] = best;
+            next[i] = bestEnd;
+            if (nextIds != null)
+                nextIds[i] = bestId;
+        }
+        return next;
+    }
 
+    /**
+     * 计算句子概率最高的前k种切分（K-best动态规划，一次遍历DAG）
+     * 名次0与sentenceProcess的词典最优路径一致，但不做HMM未登录词识别
+     * @param sentence 句子（已规范化）
+     * @param k 候选切分数
+     * @return 分词格，按名次按需还原各候选切分
+     */
+    public SegmentationLattice kBest(String sentence, int k) {
+        return SegmentationLattice.build(dictionary(), sentence, k);
+    }
+
+    /**
+     * @return 句子中是否有ASCII字符
+     */
+    private static boolean containsAscii(String sentence) {
+        for (int i = 0; i < sentence.length(); i++) {
+            if (sentence.charAt(i) < 128)
+                return true;
+        }
+        return false;
+    }
+
+    private AsciiRuns asciiRuns() {
+        long version = dictionary == null ? WordDictionary.getInstance().getVersion() : 0L;
+        AsciiRuns runs = asciiRuns;
+        if (runs == null || runs.version != version) {
+            runs = new AsciiRuns(dictionary(), version);
+            asciiRuns = runs;
+        }
+        return runs;
+    }
+
+    /**
+     * 输出DP路径上连续的单字sentence[from, to)：单字或词典词直接输出，否则交由HMM切分
+     * @param nextIds 单字的词语id（见calcLong），为null时不记录id
+     * @param adjacent 缓冲区与可直接切分的ASCII片段相邻：原本会与片段合并为一个缓冲区，直接交由HMM切分
+     */
+    private void flushSingles(String sentence, int from, int to, int[] nextIds, SentenceWords words,
+            MetricsRegistry metrics, boolean adjacent) {
+        if (to - from == 1 && !adjacent) {
+            words.add(from, to, null, nextIds != null ? nextIds[from] : SentenceWords.UNRESOLVED);
+            return;
+        }
+        if (!adjacent && nextIds != null) {
+            WordDictionary wordDict = (WordDictionary) dictionary();
+            int id = wordDict.getWordId(sentence, from, to);
+            if (id >= 0 || wordDict.isLearned(sentence, from, to)) {
+                words.add(from, to, null, id);
+                return;
+            }
+        }
+        String buf = sentence.substring(from, to);
+        if (!adjacent && nextIds == null && dictionary().containsWord(buf)) {
+            words.add(from, to, buf, SentenceWords.UNRESOLVED);
+            return;
+        }
+        long t = metrics == null ? 0L : System.nanoTime();
+        List<String> hmm = words.scratch();
+        FinalSeg.getInstance().cut(buf, hmm);
+        if (learner != null)
+            learner.observe(hmm, 0);
+        words.addScratch(from);
+        if (metrics != null) {
+            metrics.recordStage(Stage.HMM, System.nanoTime() - t);
+            metrics.recordHmmFallback(to - from);
+        }
+    }
+
+    /**
+     * 分词器构建器
+     * 功能：
+     * 1. 可选开启字符折叠（内置繁体转简体映射，或自定义映射表）
+     * 2. 可选指定词典（如内存映射的MappedDictionary），默认使用WordDictionary单例
+     *
+     * 分词器不持有可变状态，构建后可在多线程间共享
+     */
+    public static final class Builder {
+        private boolean foldTraditional;
+        private Path foldTablePath;
+        private DictionaryLookup dictionary;
+        private final List<TokenFilter> filters = new ArrayList<TokenFilter>();
+        private boolean degraded;
+        private NewWordLearner learner;
+
+        private Builder() {
+        }
+
+        /**
+         * 指定分词词典（默认WordDictionary.getInstance()）
+         */
+        public Builder dictionary(DictionaryLookup dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        /**
+         * 开启/关闭繁体转简体折叠（使用内置映射表CharacterUtil.T2S_TABLE）
+         */
+        public Builder foldTraditional(boolean fold) {
+            this.foldTraditional = fold;
+            this.foldTablePath = null;
+            return this;
+        }
+
+        /**
+         * 使用自定义字符折叠映射表（格式同CharacterUtil.T2S_TABLE）
+         */
+        public Builder foldTable(Path path) {
+            this.foldTablePath = path;
+            this.foldTraditional = path != null;
+            return this;
+        }
+
+        /**
+         * 在过滤链末尾添加一个输出过滤器（只作用于process及processIds，标志位来自WordDictionary）
+         * 例如 filter(TokenFilter.drop(WordDictionary.FLAG_STOP_WORD | WordDictionary.FLAG_PUNCTUATION))
+         */
+        public Builder filter(TokenFilter filter) {
+            this.filters.add(filter);
+            return this;
+        }
+
+        /**
+         * 开启/关闭降级模式：默认词典（WordDictionary单例；调用过preload时含其用户词典）加载完成前不等待，只用HMM切分（INDEX模式不输出子词），
+         * 加载完成后自动恢复完整分词；适合配合preload在服务启动阶段使用。指定了词典时不起作用
+         * 构建时词典尚未加载且未调用过preload时，以默认参数开始预加载（否则降级状态不会结束）
+         */
+        public Builder degraded(boolean degraded) {
+            this.degraded = degraded;
+            return this;
+        }
+
+        /**
+         * 开启在线新词发现：统计HMM切出的未登录词，达到阈值后提升为用户词
+         * 提升的词写入WordDictionary单例，因此不能与dictionary(...)指定的词典同时使用（build时抛出IllegalArgumentException）
+         */
+        public Builder learner(NewWordLearner learner) {
+            this.learner = learner;
+            return this;
+        }
+
+        /**
+         * 构建分词器
+         * @return 分词器
+         * @throws IllegalArgumentException 同时指定了词典和新词发现
+         */
+        public JiebaSegmenter build() {
+            if (learner != null && dictionary != null)
+                throw new IllegalArgumentException("learner requires the default WordDictionary, not a custom dictionary");
+            char[] table = null;
+            if (foldTablePath != null)
+                table = CharacterUtil.readFoldTable(foldTablePath);
+            else if (foldTraditional)
+                table = CharacterUtil.simplifiedTable();
+            // 降级模式的切分不触发词典加载，由此处开始后台加载
+            if (degraded && dictionary == null && !dictionaryLoaded())
+                preload();
+            return new JiebaSegmenter(table, dictionary, filters.toArray(new TokenFilter[filters.size()]), degraded,
+                learner);
         }
-        return tokens;
     }
 }
@@ -0,0 +1,221 @@
+package com.huaban.analysis.jieba;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 新词发现提升的词（WordDictionary的只读附加层，不可变）
+ * 功能：
+ * 1. 词语 -> 对数词频，按字符区间查询（开放寻址，哈希与String.hashCode相同，不截取子串）
+ * 2. 首字位图：绝大多数位置首字不匹配，不做查询
+ * 3. 增删词时生成新对象，由WordDictionary以volatile字段整体发布，分词线程读到的总是完整的一层，
+ *    不与主词典的字典树、词频表、词语id表共享可变状态
+ *
+ * 提升的词没有词语id（按未登录词输出id），导出为用户词典并重新加载后才分配id
+ */
+final class LearnedWords {
+    static final LearnedWords EMPTY = new LearnedWords(new String[0], new double[0]);
+
+    private final String[] words;
+    private final double[] logFreqs;
+    // 槽位存放words的下标，-1为空
+    private final int[] table;
+    // 首字位图
+    private final long[] firstChars = new long[(Character.MAX_VALUE + 1) >>> 6];
+    // 各词的全部前缀（含词本身），供isPrefix使用
+    private final Set<String> prefixes = new HashSet<String>();
+    private final int maxLength;
+
+    private LearnedWords(String[] words, double[] logFreqs) {
+        this.words = words;
+        this.logFreqs = logFreqs;
+        this.table = new int[Math.max(2, Integer.highestOneBit(words.length * 2) << 1)];
+        Arrays.fill(table, -1);
+        int longest = 0;
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            int mask = table.length - 1;
+            int slot = spread(word.hashCode()) & mask;
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+            char first = word.charAt(0);
+            firstChars[first >>> 6] |= 1L << first;
+            for (int end = 1; end <= word.length(); end++) {
+                prefixes.add(word.substring(0, end));
+            }
+            longest = Math.max(longest, word.length());
+        }
+        this.maxLength = longest;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param additions 新增的词 -> 对数词频（已有的词更新词频）
+     * @return 增加词语后的新层
+     */
+    LearnedWords with(Map<String, Double> additions) {
+        String[] newWords = Arrays.copyOf(words, words.length + additions.size());
+        double[] newFreqs = Arrays.copyOf(logFreqs, newWords.length);
+        int n = words.length;
+        for (Map.Entry<String, Double> entry : additions.entrySet()) {
+            int index = indexOf(entry.getKey());
+            if (index < 0) {
+                index = n++;
+                newWords[index] = entry.getKey();
+            }
+            newFreqs[index] = entry.getValue();
+        }
+        return new LearnedWords(Arrays.copyOf(newWords, n), Arrays.copyOf(newFreqs, n));
+    }
+
+    /**
+     * @return 删除词语后的新层
+     */
+    LearnedWords without(Collection<String> removals) {
+        String[] newWords = new String[words.length];
+        double[] newFreqs = new double[words.length];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (!removals.contains(words[i])) {
+                newWords[n] = words[i];
+                newFreqs[n] = logFreqs[i];
+                n++;
+            }
+        }
+        return n == words.length ? this : new LearnedWords(Arrays.copyOf(newWords, n), Arrays.copyOf(newFreqs, n));
+    }
+
+    int size() {
+        return words.length;
+    }
+
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return 是否有以ch开头的词
+     */
+    boolean startsWith(char ch) {
+        return (firstChars[ch >>> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * @return 词语的下标，不在本层时返回-1
+     */
+    int indexOf(String word) {
+        return indexOf(word, 0, word.length());
+    }
+
+    /**
+     * 按字符区间查询（与indexOf(text.substring(start, end))相同）
+     */
+    int indexOf(String text, int start, int end) {
+        if (words.length == 0 || start == end || !startsWith(text.charAt(start))) {
+            return -1;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        int length = end - start;
+        int mask = table.length - 1;
+        int slot = spread(h) & mask;
+        int index;
+        while ((index = table[slot]) >= 0) {
+            String word = words[index];
+            if (word.length() == length && word.regionMatches(0, text, start, length)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int indexOf(int h, char[] chars, int begin, int length) {
+        int mask = table.length - 1;
+        int slot = spread(h) & mask;
+        int index;
+        while ((index = table[slot]) >= 0) {
+            String word = words[index];
+            if (word.length() == length && matches(word, chars, begin)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(String word, char[] chars, int begin) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != chars[begin + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    double getLogFreq(int index) {
+        return logFreqs[index];
+    }
+
+    /**
+     * 把从begin开始、在end之前结束的词按词尾升序并入ends（ends中已有的词尾保持不变）
+     * @param ends 已有的词尾（包含，升序），数组长度须不小于合并后的个数
+     * @param count ends中已有的个数
+     * @param ids 与ends同下标的词语id，本层的词为-1；为null时不输出
+     * @param freqs 与ends同下标的对数词频；为null时不输出
+     * @return 合并后的个数
+     */
+    int merge(char[] chars, int begin, int end, int[] ends, int count, int[] ids, double[] freqs) {
+        if (words.length == 0 || begin >= end || !startsWith(chars[begin])) {
+            return count;
+        }
+        int limit = Math.min(end, begin + maxLength);
+        int h = 0;
+        int position = 0;
+        for (int i = begin; i < limit; i++) {
+            h = 31 * h + chars[i];
+            int index = indexOf(h, chars, begin, i - begin + 1);
+            if (index < 0) {
+                continue;
+            }
+            while (position < count && ends[position] < i) {
+                position++;
+            }
+            if (position < count && ends[position] == i) {
+                continue;
+            }
+            System.arraycopy(ends, position, ends, position + 1, count - position);
+            ends[position] = i;
+            if (ids != null) {
+                System.arraycopy(ids, position, ids, position + 1, count - position);
+                ids[position] = -1;
+            }
+            if (freqs != null) {
+                System.arraycopy(freqs, position, freqs, position + 1, count - position);
+                freqs[position] = logFreqs[index];
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return chars[begin, end)是否为某个词的前缀（含词本身）
+     */
+    boolean isPrefix(char[] chars, int begin, int end) {
+        if (words.length == 0 || begin >= end || end - begin > maxLength || !startsWith(chars[begin])) {
+            return false;
+        }
+        return prefixes.contains(new String(chars, begin, end - begin));
+    }
+}
@@ -0,0 +1,293 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 内存映射的只读词典
+ * 功能：
+ * 1. 字典树节点和词频全部存放在内存映射文件中，查询直接读取映射内存，不在堆上复制
+ * 2. 同一主机上的多个JVM映射同一文件时共享页缓存；GC不扫描词典数据，老年代不再被词典撑大
+ * 3. 实现DictionaryLookup，通过JiebaSegmenter.builder().dictionary(...)使用，分词结果与WordDictionary一致
+ *
+ * 存储结构（节点按层序编号，同一节点的子节点编号连续且按字符升序）：
+ * - freqs：double[节点数]，词语节点为对数词频，非词节点为NaN
+ * - childStart：int[节点数+1]，节点i的子节点为 childStart[i] .. childStart[i+1]-1
+ * - labels：char[节点数]，节点入边上的字符（在子节点区间内二分查找）
+ *
+ * 使用示例：
+ *    MappedDictionary.write(WordDictionary.getInstance(), Paths.get("dict.bin"));
+ *    JiebaSegmenter segmenter = JiebaSegmenter.builder().dictionary(MappedDictionary.open(Paths.get("dict.bin"))).build();
+ */
+public final class MappedDictionary implements DictionaryLookup {
+    // 二进制词典文件标识（"JBMD"）及版本
+    private static final int MAGIC = 0x4A424D44;
+    private static final int VERSION = 1;
+    // 头部长度（补齐到8字节，使词频数组按double对齐）
+    private static final int HEADER_BYTES = 32;
+
+    private final int nodeCount;
+    private final int wordCount;
+    private final int maxWordLength;
+    private final double minFreq;
+    private final DoubleBuffer freqs;
+    private final IntBuffer childStart;
+    private final CharBuffer labels;
+
+    private MappedDictionary(MappedByteBuffer buffer, Path path) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(path + ": not a mapped jieba dict");
+        }
+        this.nodeCount = buffer.getInt(8);
+        this.wordCount = buffer.getInt(12);
+        this.maxWordLength = buffer.getInt(16);
+        this.minFreq = buffer.getDouble(24);
+        long expected = HEADER_BYTES + nodeCount * 8L + (nodeCount + 1) * 4L + nodeCount * 2L;
+        if (nodeCount < 1 || buffer.capacity() != expected) {
+            throw new IOException(path + ": truncated mapped jieba dict");
+        }
+        int offset = HEADER_BYTES;
+        this.freqs = region(buffer, offset, nodeCount * 8).asDoubleBuffer();
+        offset += nodeCount * 8;
+        this.childStart = region(buffer, offset, (nodeCount + 1) * 4).asIntBuffer();
+        offset += (nodeCount + 1) * 4;
+        this.labels = region(buffer, offset, nodeCount * 2).asCharBuffer();
+    }
+
+    private static ByteBuffer region(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.limit(offset + length);
+        return dup.slice();
+    }
+
+    /**
+     * 以只读内存映射方式打开词典文件（映射在对象不可达后由JVM释放）
+     * @param path 由write生成的词典文件
+     * @return 词典
+     */
+    public static MappedDictionary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+    }
+
+    /**
+     * 把已加载的词典（主词典及用户词典）写出为可映射的词典文件
+     * 先写临时文件再原子替换，正在映射旧文件的进程不受影响
+     * @param dictionary 词典
+     * @param path 输出文件
+     */
+    public static void write(WordDictionary dictionary, Path path) throws IOException {
+        Map<String, Double> freqs = dictionary.freqs;
+        String[] words = new String[freqs.size()];
+        int n = 0;
+        for (String word : freqs.keySet()) {
+            if (word != null && !word.isEmpty()) {
+                words[n++] = word;
+            }
+        }
+        Arrays.sort(words, 0, n);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = freqs.get(words[i]);
+        }
+
+        // 按层序展开字典树：节点对应有序词表中共享同一前缀的区间[lo, hi)
+        int capacity = Math.max(16, n * 2);
+        int[] lo = new int[capacity];
+        int[] hi = new int[capacity];
+        int[] depth = new int[capacity];
+        char[] labels = new char[capacity];
+        double[] nodeFreqs = new double[capacity];
+        int[] childStart = new int[capacity + 1];
+        hi[0] = n;
+        int count = 1;
+        int maxWordLength = 0;
+        for (int id = 0; id < count; id++) {
+            int l = lo[id], h = hi[id], d = depth[id];
+            nodeFreqs[id] = Double.NaN;
+            if (l < h && words[l].length() == d) {
+                nodeFreqs[id] = values[l++];
+                maxWordLength = Math.max(maxWordLength, d);
+            }
+            childStart[id] = count;
+            while (l < h) {
+                char c = words[l].charAt(d);
+                int r = l + 1;
+                while (r < h && words[r].charAt(d) == c) {
+                    r++;
+                }
+                if (count == lo.length) {
+                    int grown = count * 2;
+                    lo = Arrays.copyOf(lo, grown);
+                    hi = Arrays.copyOf(hi, grown);
+                    depth = Arrays.copyOf(depth, grown);
+                    labels = Arrays.copyOf(labels, grown);
+                    nodeFreqs = Arrays.copyOf(nodeFreqs, grown);
+                    childStart = Arrays.copyOf(childStart, grown + 1);
+                }
+                lo[count] = l;
+                hi[count] = r;
+                depth[count] = d + 1;
+                labels[count] = c;
+                count++;
+                l = r;
+            }
+        }
+        childStart[count] = count;
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(n);
+                out.writeInt(maxWordLength);
+                out.writeInt(0);
+                out.writeDouble(dictionary.getMinFreq());
+                for (int i = 0; i < count; i++) {
+                    out.writeDouble(nodeFreqs[i]);
+                }
+                for (int i = 0; i <= count; i++) {
+                    out.writeInt(childStart[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeChar(labels[i]);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+        Log.debug(String.format(Locale.getDefault(), "mapped dict %s written, words:%d, nodes:%d", path, n, count));
+    }
+
+    /**
+     * 查找子节点（在子节点区间内按字符二分查找）
+     * @return 子节点编号，不存在时返回-1
+     */
+    private int child(int node, char c) {
+        int low = childStart.get(node);
+        int high = childStart.get(node + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels.get(mid);
+            if (label < c) {
+                low = mid + 1;
+            }
+            else if (label > c) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 词语对应的节点编号，不存在时返回-1
+     */
+    private int find(String word) {
+        int node = 0;
+        for (int i = 0; i < word.length() && node >= 0; i++) {
+            node = child(node, word.charAt(i));
+        }
+        return node;
+    }
+
+    @Override
+    public int matchEnds(char[] chars, int begin, int end, int[] ends) {
+        int count = 0;
+        int node = 0;
+        for (int j = begin; j < end; j++) {
+            node = child(node, chars[j]);
+            if (node < 0) {
+                break;
+            }
+            if (!Double.isNaN(freqs.get(node))) {
+                ends[count++] = j;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isPrefix(char[] chars, int begin, int end) {
+        int node = 0;
+        for (int j = begin; j < end && node >= 0; j++) {
+            node = child(node, chars[j]);
+        }
+        return node > 0;
+    }
+
+    @Override
+    public double getLogFreq(String word) {
+        int node = find(word);
+        if (node <= 0) {
+            return minFreq;
+        }
+        double freq = freqs.get(node);
+        return Double.isNaN(freq) ? minFreq : freq;
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        int node = find(word);
+        return node > 0 && !Double.isNaN(freqs.get(node));
+    }
+
+    @Override
+    public int getMaxWordLength() {
+        return maxWordLength;
+    }
+
+    /**
+     * @return 词语数
+     */
+    public int size() {
+        return wordCount;
+    }
+
+    /**
+     * @return 字典树节点数
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * 命令行入口：把内置主词典及用户词典写出为可映射的词典文件
+     * 用法：MappedDictionary &lt;输出文件&gt; [用户词典目录]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: MappedDictionary <output> [userDictDir]");
+            return;
+        }
+        WordDictionary dictionary = WordDictionary.getInstance();
+        if (args.length > 1) {
+            dictionary.init(Paths.get(args[1]));
+        }
+        write(dictionary, Paths.get(args[0]));
+    }
+}
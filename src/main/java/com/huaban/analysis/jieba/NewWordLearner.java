@@ -0,0 +1,372 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线新词发现
+ * 功能：
+ * 1. 统计HMM（FinalSeg.cut）切出的、不在词典中的多字中文词的出现次数（LongAdder分段计数，多线程分词时无竞争）
+ * 2. 出现次数达到阈值的词进入待提升队列，由后台任务成批提升为用户词（WordDictionary.addLearnedWords），
+ *    之后由词典直接切出，不再走HMM；分词线程只计数、入队，不修改词典
+ * 3. 已提升的词可导出为.dict用户词典文件，重启后用initUserDict加载
+ *
+ * 提升时的词频取“恰好使该词优于其现有最优切分”的值（与jieba的suggest_freq相同），不低于用户词典的默认词频3；
+ * 每批提升只使词典版本号递增一次。
+ * 候选词数达到上限时由后台任务按出现次数从低到高淘汰到上限的3/4；后台任务来不及执行时，
+ * 候选词数达到上限的2倍后不再接收新候选词，内存有界
+ *
+ * 使用示例：
+ *    NewWordLearner learner = NewWordLearner.builder().minCount(20).build();
+ *    JiebaSegmenter segmenter = JiebaSegmenter.builder().learner(learner).build();
+ *    ...
+ *    learner.flush();
+ *    learner.export(Paths.get("conf/learned.dict"));
+ */
+public final class NewWordLearner {
+    // 用户词典的默认词频
+    private static final double DEFAULT_FREQ = 3.0;
+
+    private final long minCount;
+    private final int minLength;
+    private final int maxLength;
+    private final int maxCandidates;
+    private final boolean autoPromote;
+    private final int batchSize;
+    private final Executor executor;
+    // 候选词 -> 出现次数
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<String, LongAdder>();
+    // 已提升的词 -> 提升时的词频
+    private final ConcurrentHashMap<String, Double> promoted = new ConcurrentHashMap<String, Double>();
+    // 达到阈值、等待下一批提升的词
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // 后台任务是否已提交
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private NewWordLearner(Builder builder) {
+        this.minCount = builder.minCount;
+        this.minLength = builder.minLength;
+        this.maxLength = builder.maxLength;
+        this.maxCandidates = builder.maxCandidates;
+        this.autoPromote = builder.autoPromote;
+        this.batchSize = builder.batchSize;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * @return 构建器
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 统计HMM切出的词
+     * @param words 分词结果
+     * @param from 本次HMM输出在words中的起始下标
+     */
+    void observe(List<String> words, int from) {
+        for (int i = from; i < words.size(); i++) {
+            String word = words.get(i);
+            if (candidate(word)) {
+                observe(word);
+            }
+        }
+    }
+
+    private boolean candidate(String word) {
+        int length = word.length();
+        if (length < minLength || length > maxLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!CharacterUtil.isChineseLetter(word.charAt(i))) {
+                return false;
+            }
+        }
+        return !WordDictionary.getInstance().containsWord(word);
+    }
+
+    /**
+     * 记录一次出现，达到阈值时加入待提升队列（由后台任务成批提升，见flush）
+     * @param word 词语
+     */
+    public void observe(String word) {
+        LongAdder count = counts.get(word);
+        if (count == null) {
+            int size = counts.size();
+            if (size >= maxCandidates) {
+                schedule();
+                if (size / 2 >= maxCandidates) {
+                    return;
+                }
+            }
+            count = counts.computeIfAbsent(word, k -> new LongAdder());
+        }
+        count.increment();
+        if (autoPromote && count.sum() >= minCount && !promoted.containsKey(word) && pending.add(word)
+                && pending.size() >= batchSize) {
+            schedule();
+        }
+    }
+
+    /**
+     * 提交后台任务（已提交且未执行完时不重复提交）
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::maintain);
+            }
+            catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                Log.error("new word learner task rejected: " + e);
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            flush();
+        }
+        finally {
+            scheduled.set(false);
+        }
+        // 执行期间新到达阈值的词
+        if (pending.size() >= batchSize) {
+            schedule();
+        }
+    }
+
+    /**
+     * 立即提升待提升队列中的词（一批，词典版本号只递增一次），并在候选词数达到上限时淘汰候选词
+     */
+    public synchronized void flush() {
+        evict();
+        if (pending.isEmpty()) {
+            return;
+        }
+        WordDictionary dictionary = WordDictionary.getInstance();
+        Map<String, Double> batch = new TreeMap<String, Double>();
+        Iterator<String> it = pending.iterator();
+        while (it.hasNext()) {
+            String word = it.next();
+            it.remove();
+            if (!promoted.containsKey(word) && !dictionary.containsWord(word)) {
+                batch.put(word, suggestFreq(dictionary, word));
+            }
+        }
+        apply(dictionary, batch);
+    }
+
+    /**
+     * 按出现次数从低到高淘汰候选词，直到候选词数不超过上限的3/4（已提升的词不受影响）
+     */
+    private void evict() {
+        int size = counts.size();
+        if (size < maxCandidates) {
+            return;
+        }
+        int keep = maxCandidates / 4 * 3;
+        long[] sums = new long[size];
+        int n = 0;
+        for (LongAdder count : counts.values()) {
+            if (n == sums.length) {
+                break;
+            }
+            sums[n++] = count.sum();
+        }
+        if (n <= keep) {
+            return;
+        }
+        Arrays.sort(sums, 0, n);
+        // 出现次数低于threshold的全部淘汰，等于threshold的淘汰到keep为止
+        long threshold = sums[n - keep - 1];
+        int excess = counts.size() - keep;
+        for (long limit : new long[] {threshold - 1, threshold}) {
+            Iterator<LongAdder> it = counts.values().iterator();
+            while (excess > 0 && it.hasNext()) {
+                if (it.next().sum() <= limit) {
+                    it.remove();
+                    excess--;
+                }
+            }
+        }
+        Log.debug(String.format(Locale.getDefault(), "new word candidates evicted, remaining:%d", counts.size()));
+    }
+
+    /**
+     * 使该词的对数词频高于其现有最优切分的对数概率
+     */
+    private static double suggestFreq(WordDictionary dictionary, String word) {
+        double best = SegmentationLattice.build(dictionary, word, 1).getLogProb(0);
+        return Math.max(DEFAULT_FREQ, Math.ceil(Math.exp(best) * dictionary.getTotalFreq()) + 1);
+    }
+
+    private void apply(WordDictionary dictionary, Map<String, Double> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        dictionary.addLearnedWords(batch);
+        promoted.putAll(batch);
+        counts.keySet().removeAll(batch.keySet());
+        Log.debug(String.format(Locale.getDefault(), "new words promoted: %s", batch.keySet()));
+    }
+
+    /**
+     * 把词立即提升为用户词（不经过待提升队列）
+     * @param word 词语
+     * @return 是否为本次提升（已提升过或已在词典中时返回false）
+     */
+    public synchronized boolean promote(String word) {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        if (promoted.containsKey(word) || dictionary.containsWord(word)) {
+            return false;
+        }
+        pending.remove(word);
+        apply(dictionary, Collections.singletonMap(word, suggestFreq(dictionary, word)));
+        return true;
+    }
+
+    /**
+     * 撤销全部已提升的词（从词典中移除），并清空候选词和待提升队列
+     */
+    public synchronized void reset() {
+        WordDictionary.getInstance().removeLearnedWords(promoted.keySet());
+        promoted.clear();
+        pending.clear();
+        counts.clear();
+    }
+
+    /**
+     * @param word 词语
+     * @return 候选词的出现次数（被淘汰或未出现时为0）
+     */
+    public long count(String word) {
+        LongAdder count = counts.get(word);
+        return count == null ? 0L : count.sum();
+    }
+
+    /**
+     * @return 候选词数
+     */
+    public int candidateCount() {
+        return counts.size();
+    }
+
+    /**
+     * @return 已提升的词及其词频（按词语排序的快照）
+     */
+    public Map<String, Double> promoted() {
+        return new TreeMap<String, Double>(promoted);
+    }
+
+    /**
+     * 把已提升的词导出为用户词典文件（每行“词语 词频”，UTF-8）
+     * @param path 输出文件
+     */
+    public void export(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Double> entry : promoted().entrySet()) {
+                writer.write(String.format(Locale.ROOT, "%s %d", entry.getKey(), entry.getValue().longValue()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 新词发现构建器
+     */
+    public static final class Builder {
+        private long minCount = 10L;
+        private int minLength = 2;
+        private int maxLength = 6;
+        private int maxCandidates = 100000;
+        private boolean autoPromote = true;
+        private int batchSize = 1;
+        private Executor executor = ForkJoinPool.commonPool();
+
+        private Builder() {
+        }
+
+        /**
+         * 提升为用户词所需的出现次数（默认10）
+         */
+        public Builder minCount(long minCount) {
+            this.minCount = minCount;
+            return this;
+        }
+
+        /**
+         * 候选词的长度范围（默认2～6）
+         */
+        public Builder length(int minLength, int maxLength) {
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            return this;
+        }
+
+        /**
+         * 候选词数上限（默认100000），达到时按出现次数从低到高淘汰到上限的3/4
+         */
+        public Builder maxCandidates(int maxCandidates) {
+            this.maxCandidates = maxCandidates;
+            return this;
+        }
+
+        /**
+         * 达到阈值时是否自动提升（默认开启；关闭时只计数，由调用方决定是否调用promote）
+         */
+        public Builder autoPromote(boolean autoPromote) {
+            this.autoPromote = autoPromote;
+            return this;
+        }
+
+        /**
+         * 待提升的词累积到batchSize个时才提交后台任务（默认1；执行期间到达阈值的词总是并入下一批），
+         * 不足一批的词由flush()提升
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 执行提升和淘汰的线程池（默认ForkJoinPool.commonPool()）
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @return 新词发现
+         */
+        public NewWordLearner build() {
+            if (minCount < 1 || minLength < 1 || maxLength < minLength || maxCandidates < 1 || batchSize < 1
+                    || executor == null) {
+                throw new IllegalArgumentException(String.format(Locale.ROOT,
+                    "invalid learner settings: minCount %d, length %d-%d, maxCandidates %d, batchSize %d", minCount,
+                    minLength, maxLength, maxCandidates, batchSize));
+            }
+            return new NewWordLearner(this);
+        }
+    }
+}
@@ -17,6 +17,7 @@ public class SegToken {
     public final String word;          // 词语内容（不可变）
     public final int startOffset;      // 起始位置（包含）
     public final int endOffset;        // 结束位置（不包含）
+    public final int flags;            // 标志位（WordDictionary.FLAG_*，经TokenFilter过滤链输出；未配置过滤器时为0）
 
     /**
      * 构造函数
@@ -25,9 +26,21 @@ public class SegToken {
      * @param end 结束位置（exclusive）
      */
     public SegToken(String word, int start, int end) {
+        this(word, start, end, 0);
+    }
+
+    /**
+     * 构造函数
+     * @param word 词语内容
+     * @param start 起始位置（从0开始）
+     * @param end 结束位置（exclusive）
+     * @param flags 标志位
+     */
+    public SegToken(String word, int start, int end, int flags) {
         this.word = word;
         this.startOffset = start;
         this.endOffset = end;
+        this.flags = flags;
     }
 
     /**
@@ -0,0 +1,197 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * K-best分词格（用于查询改写等需要多种候选切分的场景）
+ * 功能：
+ * 1. 在与sentenceProcess相同的词典DAG上做K-best动态规划，得到概率最高的前k种切分
+ * 2. 每种切分附带对数概率（各词对数词频之和，与calc的打分一致）
+ * 3. 候选切分按需还原，未访问的名次不产生任何词语对象
+ *
+ * 实现思路：
+ * - DAG以CSR形式保存：dagStart[i]..dagStart[i+1]为从i开始的所有词尾
+ * - 每个位置保存至多k个候选（按分数降序）：分数、词尾、后继位置上的候选名次，全部为扁平数组
+ * - 从右向左，对位置i的各条出边做k路归并（每条出边的后继候选已有序），每个位置O(k*出度)
+ * - 同分时取词尾较小的出边，因此名次0与calc选出的最优路径完全一致
+ *
+ * 说明：
+ *    只在词典DAG上打分，不做HMM未登录词识别；传入的句子需已规范化（同sentenceProcess）
+ */
+public final class SegmentationLattice implements Iterable<List<String>> {
+    private final String sentence;
+    private final int k;
+    // 各位置的候选数（位置N为1个空候选）
+    private final int[] counts;
+    // 候选（下标 position * k + rank）：分数、词尾（不包含）、后继位置上的名次
+    private final double[] scores;
+    private final int[] ends;
+    private final int[] successors;
+
+    private SegmentationLattice(String sentence, int k) {
+        this.sentence = sentence;
+        this.k = k;
+        int n = sentence.length();
+        this.counts = new int[n + 1];
+        this.scores = new double[(n + 1) * k];
+        this.ends = new int[(n + 1) * k];
+        this.successors = new int[(n + 1) * k];
+    }
+
+    /**
+     * 构建分词格
+     * @param dictionary 词典
+     * @param sentence 句子（已规范化）
+     * @param k 保留的候选切分数
+     * @return 分词格
+     */
+    static SegmentationLattice build(DictionaryLookup dictionary, String sentence, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        SegmentationLattice lattice = new SegmentationLattice(sentence, k);
+        int n = sentence.length();
+        if (n == 0) {
+            return lattice;
+        }
+
+        // CSR形式的DAG：没有词典词的位置保留单字
+        char[] chars = sentence.toCharArray();
+        int[] probe = new int[n];
+        int[] dagStart = new int[n + 1];
+        int[] dagEnds = new int[n * 2];
+        int edges = 0;
+        int maxDegree = 1;
+        for (int i = 0; i < n; i++) {
+            dagStart[i] = edges;
+            int found = dictionary.matchEnds(chars, i, n, probe);
+            if (found == 0) {
+                probe[found++] = i;
+            }
+            if (edges + found > dagEnds.length) {
+                dagEnds = Arrays.copyOf(dagEnds, Math.max(dagEnds.length * 2, edges + found));
+            }
+            System.arraycopy(probe, 0, dagEnds, edges, found);
+            edges += found;
+            maxDegree = Math.max(maxDegree, found);
+        }
+        dagStart[n] = edges;
+
+        // 从右向左K-best动态规划
+        int[] counts = lattice.counts;
+        double[] scores = lattice.scores;
+        int[] ends = lattice.ends;
+        int[] successors = lattice.successors;
+        double[] base = new double[maxDegree];
+        int[] cursor = new int[maxDegree];
+        counts[n] = 1;
+        scores[n * k] = 0.0;
+        for (int i = n - 1; i >= 0; i--) {
+            int from = dagStart[i];
+            int degree = dagStart[i + 1] - from;
+            for (int e = 0; e < degree; e++) {
+                base[e] = dictionary.getLogFreq(sentence.substring(i, dagEnds[from + e] + 1));
+                cursor[e] = 0;
+            }
+            int rank = 0;
+            for (; rank < k; rank++) {
+                int best = -1;
+                double bestScore = 0.0;
+                for (int e = 0; e < degree; e++) {
+                    int next = dagEnds[from + e] + 1;
+                    if (cursor[e] < counts[next]) {
+                        double score = base[e] + scores[next * k + cursor[e]];
+                        if (best < 0 || bestScore < score) {
+                            best = e;
+                            bestScore = score;
+                        }
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                int slot = i * k + rank;
+                scores[slot] = bestScore;
+                ends[slot] = dagEnds[from + best] + 1;
+                successors[slot] = cursor[best]++;
+            }
+            counts[i] = rank;
+        }
+        return lattice;
+    }
+
+    /**
+     * @return 候选切分数（不超过k；空句子为0）
+     */
+    public int size() {
+        return sentence.isEmpty() ? 0 : counts[0];
+    }
+
+    /**
+     * @return 句子
+     */
+    public String getSentence() {
+        return sentence;
+    }
+
+    /**
+     * 获取第rank名切分的对数概率
+     * @param rank 名次（从0开始）
+     */
+    public double getLogProb(int rank) {
+        checkRank(rank);
+        return scores[rank];
+    }
+
+    /**
+     * 还原第rank名切分
+     * @param rank 名次（从0开始）
+     * @return 词语列表
+     */
+    public List<String> getWords(int rank) {
+        checkRank(rank);
+        List<String> words = new ArrayList<String>();
+        int position = 0;
+        int n = sentence.length();
+        while (position < n) {
+            int slot = position * k + rank;
+            words.add(sentence.substring(position, ends[slot]));
+            rank = successors[slot];
+            position = ends[slot];
+        }
+        return words;
+    }
+
+    private void checkRank(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("rank: " + rank + ", size: " + size());
+        }
+    }
+
+    /**
+     * 按名次依次还原各候选切分
+     */
+    @Override
+    public Iterator<List<String>> iterator() {
+        return new Iterator<List<String>>() {
+            private int rank = 0;
+
+            @Override
+            public boolean hasNext() {
+                return rank < size();
+            }
+
+            @Override
+            public List<String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getWords(rank++);
+            }
+        };
+    }
+}
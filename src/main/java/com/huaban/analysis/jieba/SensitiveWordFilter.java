@@ -0,0 +1,234 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 敏感词检测与屏蔽
+ * 功能：
+ * 1. 基于Aho-Corasick自动机，一次线性扫描找出文本中的所有敏感词
+ * 2. 跳过噪声字符（非字母、数字、汉字），"代*刷"、"代 刷"均可命中"代刷"
+ * 3. 扫描前做字符折叠（CharacterUtil.fold：全角转半角、大写转小写、繁体转简体）
+ * 4. 命中以原文偏移回调，或直接在调用方缓冲区中原地屏蔽
+ * 5. 词表可热替换，替换期间正在进行的扫描不受影响
+ *
+ * 实现思路：
+ * - 词表编译时同样做折叠并去掉噪声字符，自动机只接收非噪声字符
+ * - 用环形数组记录最近送入自动机的字符在原文中的位置，命中时按词长回查起始偏移
+ * - 连续噪声字符超过maxNoise个时回到根状态，避免跨越大段文本拼出敏感词
+ * - 扫描过程只使用原生数组，不为命中创建对象
+ *
+ * 线程安全：
+ *    扫描方法可并发调用；setWords编译新自动机后以volatile引用整体替换
+ */
+public final class SensitiveWordFilter {
+    // 默认允许的连续噪声字符数
+    public static final int DEFAULT_MAX_NOISE = 3;
+    // 默认屏蔽字符
+    public static final char DEFAULT_MASK = '*';
+
+    // 原始字符 -> 折叠后是否为噪声字符
+    private static final boolean[] NOISE = buildNoiseTable();
+
+    private final int maxNoise;
+    private volatile Compiled compiled;
+
+    /**
+     * 命中回调
+     */
+    public interface HitConsumer {
+        /**
+         * @param start 原文起始位置（包含）
+         * @param end 原文结束位置（不包含）
+         * @param wordId 敏感词在词表中的下标
+         * @param word 敏感词
+         */
+        void onHit(int start, int end, int wordId, String word);
+    }
+
+    public SensitiveWordFilter(Collection<String> words) {
+        this(words, DEFAULT_MAX_NOISE);
+    }
+
+    /**
+     * @param words 敏感词表
+     * @param maxNoise 两个有效字符之间允许的连续噪声字符数
+     */
+    public SensitiveWordFilter(Collection<String> words, int maxNoise) {
+        if (maxNoise < 0) {
+            throw new IllegalArgumentException("maxNoise must not be negative: " + maxNoise);
+        }
+        this.maxNoise = maxNoise;
+        this.compiled = new Compiled(words);
+    }
+
+    private static boolean[] buildNoiseTable() {
+        boolean[] table = new boolean[Character.MAX_VALUE + 1];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = !Character.isLetterOrDigit(CharacterUtil.fold((char) c));
+        }
+        return table;
+    }
+
+    /**
+     * 读取词表文件（UTF-8，每行一个词，忽略空行）
+     * @param path 词表路径
+     * @return 词表
+     * @throws IOException 读取失败
+     */
+    public static List<String> readWords(Path path) throws IOException {
+        List<String> words = new ArrayList<String>();
+        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    words.add(line);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * 热替换词表：在调用线程中编译新自动机，完成后整体替换
+     * @param words 新词表
+     */
+    public void setWords(Collection<String> words) {
+        this.compiled = new Compiled(words);
+    }
+
+    /**
+     * @return 当前词表大小
+     */
+    public int size() {
+        return compiled.words.length;
+    }
+
+    /**
+     * 扫描文本，报告所有命中（同一结束位置按词长从长到短报告）
+     * @param text 文本
+     * @param consumer 命中回调
+     * @return 命中数
+     */
+    public int scan(CharSequence text, HitConsumer consumer) {
+        return run(compiled, text, null, 0, text.length(), consumer, Integer.MAX_VALUE, false, DEFAULT_MASK);
+    }
+
+    /**
+     * @param text 文本
+     * @return 是否包含任意敏感词（命中第一个即返回）
+     */
+    public boolean contains(CharSequence text) {
+        return run(compiled, text, null, 0, text.length(), null, 1, false, DEFAULT_MASK) > 0;
+    }
+
+    /**
+     * 在调用方缓冲区中原地屏蔽敏感词，命中区间（含其中的噪声字符）替换为maskChar
+     * @param buffer 文本缓冲区
+     * @param offset 起始位置
+     * @param length 长度
+     * @param maskChar 屏蔽字符
+     * @return 命中数
+     */
+    public int mask(char[] buffer, int offset, int length, char maskChar) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+        }
+        return run(compiled, null, buffer, offset, length, null, Integer.MAX_VALUE, true, maskChar);
+    }
+
+    /**
+     * 屏蔽敏感词，没有命中时返回原字符串
+     * @param text 文本
+     * @return 屏蔽后的文本
+     */
+    public String mask(String text) {
+        char[] buffer = text.toCharArray();
+        return mask(buffer, 0, buffer.length, DEFAULT_MASK) == 0 ? text : new String(buffer);
+    }
+
+    /**
+     * 扫描主循环（文本来自CharSequence或char数组二者之一）
+     */
+    private int run(Compiled c, CharSequence text, char[] buffer, int offset, int length, HitConsumer consumer,
+            int limit, boolean mask, char maskChar) {
+        AhoCorasick automaton = c.automaton;
+        // positions[k & ringMask] 为第k个送入自动机的字符在原文中的位置
+        int[] positions = new int[c.ringMask + 1];
+        int ringMask = c.ringMask;
+        int state = automaton.root();
+        int fed = 0;
+        int noise = 0;
+        int hits = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = buffer != null ? buffer[offset + i] : text.charAt(i);
+            if (NOISE[ch]) {
+                if (state != 0 && ++noise > maxNoise) {
+                    state = automaton.root();
+                }
+                continue;
+            }
+            noise = 0;
+            state = automaton.next(state, CharacterUtil.fold(ch));
+            positions[fed++ & ringMask] = i;
+            int s = automaton.termAt(state) >= 0 ? state : automaton.nextOutput(state);
+            while (s != 0) {
+                int id = automaton.termAt(s);
+                int start = positions[(fed - automaton.getTermLength(id)) & ringMask];
+                if (consumer != null) {
+                    consumer.onHit(start, i + 1, id, c.words[id]);
+                }
+                if (mask) {
+                    for (int j = offset + start; j <= offset + i; j++) {
+                        buffer[j] = maskChar;
+                    }
+                }
+                if (++hits >= limit) {
+                    return hits;
+                }
+                s = automaton.nextOutput(s);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 编译后的词表（不可变，整体替换）
+     */
+    private static final class Compiled {
+        final String[] words;
+        final AhoCorasick automaton;
+        // 环形位置数组长度-1（长度为不小于最长折叠词长的2的幂）
+        final int ringMask;
+
+        Compiled(Collection<String> words) {
+            this.words = words.toArray(new String[0]);
+            List<String> folded = new ArrayList<String>(this.words.length);
+            int maxLength = 1;
+            StringBuilder sb = new StringBuilder();
+            for (String word : this.words) {
+                sb.setLength(0);
+                if (word != null) {
+                    for (int i = 0; i < word.length(); i++) {
+                        char ch = word.charAt(i);
+                        if (!NOISE[ch]) {
+                            sb.append(CharacterUtil.fold(ch));
+                        }
+                    }
+                }
+                maxLength = Math.max(maxLength, sb.length());
+                folded.add(sb.toString());
+            }
+            this.automaton = AhoCorasick.compile(folded, false);
+            int ring = Integer.highestOneBit(maxLength);
+            this.ringMask = (ring < maxLength ? ring << 1 : ring) - 1;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个句子的切分结果（分词器内部使用，可在同一次调用的多个句子间复用，非线程安全）
+ * 功能：
+ * 1. 每个词保存为句子中的区间 sentence[start, end) 及词语id，动态规划切出的词不生成字符串，由输出方按需截取
+ * 2. 词语id来自动态规划的字典树探测（只在需要id的调用中记录），HMM、ASCII规则切出的词为UNRESOLVED，
+ *    由需要id的输出方按字符串查询
+ */
+final class SentenceWords {
+    // 词语id尚未查询
+    static final int UNRESOLVED = -2;
+
+    int size;
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    // 词语id：非负为WordDictionary的词语id，-1为不在词典中，UNRESOLVED为未查询
+    int[] ids = new int[16];
+    // 已生成的词语字符串，为null时即句子中的区间
+    String[] words = new String[16];
+    // HMM、ASCII规则切分的输出缓冲区
+    private final List<String> scratch = new ArrayList<String>();
+
+    void clear() {
+        Arrays.fill(words, 0, size, null);
+        size = 0;
+    }
+
+    void add(int start, int end, String word, int id) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            words = Arrays.copyOf(words, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        ids[size] = id;
+        words[size] = word;
+        size++;
+    }
+
+    /**
+     * @return 清空后的切分缓冲区，写入后用addScratch追加
+     */
+    List<String> scratch() {
+        scratch.clear();
+        return scratch;
+    }
+
+    /**
+     * 追加缓冲区中依次相连的词（从句子的offset开始）
+     */
+    void addScratch(int offset) {
+        for (String word : scratch) {
+            add(offset, offset += word.length(), word, UNRESOLVED);
+        }
+    }
+
+    /**
+     * @return 第k个词
+     */
+    String word(String sentence, int k) {
+        String word = words[k];
+        return word != null ? word : sentence.substring(starts[k], ends[k]);
+    }
+}
@@ -0,0 +1,38 @@
+package com.huaban.analysis.jieba;
+
+/**
+ * 分词输出过滤器
+ * 功能：
+ * 1. 在process输出每个词时按词语标志位（WordDictionary.FLAG_*）丢弃该词，或改写其标志位（即标记）
+ * 2. 多个过滤器按JiebaSegmenter.Builder.filter的添加顺序组成过滤链，任一过滤器丢弃后不再调用后续过滤器
+ *
+ * 标志位在分词时直接取得（词典词按动态规划给出的词语id、单字按字符），过滤后输出的标志位记入SegToken.flags；
+ * 过滤器看到的是原文区间的视图，只有通过过滤链的词才生成词语字符串
+ */
+public interface TokenFilter {
+    /** 丢弃该词 */
+    int DROP = -1;
+
+    /**
+     * @param word 词语（复用的只读视图，只在本次调用内有效，需要保存时调用toString()）
+     * @param flags 当前标志位（前一个过滤器的输出）
+     * @return 输出的标志位，返回DROP（或任意负数）丢弃该词
+     */
+    int filter(CharSequence word, int flags);
+
+    /**
+     * @param mask 标志位掩码
+     * @return 丢弃带有mask中任一标志位的词，例如 drop(WordDictionary.FLAG_STOP_WORD | WordDictionary.FLAG_PUNCTUATION)
+     */
+    static TokenFilter drop(final int mask) {
+        return (word, flags) -> (flags & mask) != 0 ? DROP : flags;
+    }
+
+    /**
+     * @param mask 标志位掩码
+     * @return 只保留带有mask中任一标志位的词
+     */
+    static TokenFilter keep(final int mask) {
+        return (word, flags) -> (flags & mask) != 0 ? flags : DROP;
+    }
+}
@@ -0,0 +1,321 @@
+package com.huaban.analysis.jieba;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+
+/**
+ * 增量分词结果（JiebaSegmenter.reprocess的返回值，不可变，可在线程间共享）
+ * 功能：
+ * 1. 以平衡树（AVL）保存词序列，叶子为最多CHUNK个词的数组；节点可带偏移增量，作用于整棵子树
+ * 2. 按下标拆分、拼接、整体平移偏移都是O(log N)，且不修改原树（新旧结果共享未改动的子树），
+ *    因此一次编辑的代价与编辑所在片段的词数成正比，不再复制、平移编辑点之后的全部词
+ * 3. 记录生成时的分词器、分词模式、词典版本和文本长度，reprocess据此判断能否在其上增量分词
+ *
+ * 取词时才把祖先节点的偏移增量加到词上（有增量时创建新的SegToken），顺序遍历为O(N)
+ */
+final class TokenRope extends AbstractList<SegToken> {
+    // 叶子的最大词数
+    private static final int CHUNK = 64;
+
+    private final Node root;
+    // 生成本结果的分词器、分词模式、词典版本和文本长度
+    final JiebaSegmenter owner;
+    final SegMode mode;
+    final long version;
+    final int textLength;
+
+    private TokenRope(Node root, JiebaSegmenter owner, SegMode mode, long version, int textLength) {
+        this.root = root;
+        this.owner = owner;
+        this.mode = mode;
+        this.version = version;
+        this.textLength = textLength;
+    }
+
+    /**
+     * @param tokens 全文的分词结果
+     */
+    static TokenRope of(List<SegToken> tokens, JiebaSegmenter owner, SegMode mode, long version, int textLength) {
+        return new TokenRope(build(tokens), owner, mode, version, textLength);
+    }
+
+    /**
+     * 编辑后的结果：保留 [0, head) 的词，以middle替换 [head, tail) 的词，[tail, size) 的词平移delta
+     * @param middle 重新分词的结果
+     * @param delta 编辑点之后的偏移变化量
+     * @param version 重新分词时的词典版本
+     * @param textLength 编辑后的文本长度
+     */
+    TokenRope edit(int head, int tail, List<SegToken> middle, int delta, long version, int textLength) {
+        Node prefix = split(root, head)[0];
+        Node suffix = shifted(split(root, tail)[1], delta);
+        Node node = concat(concat(prefix, build(middle)), suffix);
+        return new TokenRope(node, owner, mode, version, textLength);
+    }
+
+    /**
+     * 第一个起始偏移不小于offset的词的下标（offset为片段边界，之前的词都在之后的词前面）
+     */
+    int firstStartingAt(int offset) {
+        int index = 0;
+        int shift = 0;
+        Node node = root;
+        while (node != null) {
+            shift += node.shift;
+            if (node.tokens != null) {
+                SegToken[] tokens = node.tokens;
+                int low = 0, high = tokens.length;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (tokens[mid].startOffset + shift < offset)
+                        low = mid + 1;
+                    else
+                        high = mid;
+                }
+                return index + low;
+            }
+            // 右子树的第一个词已不小于offset时结果在左子树（或就是该词）
+            if (node.right.first + shift >= offset) {
+                node = node.left;
+            }
+            else {
+                index += node.left.size;
+                node = node.right;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public SegToken get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("index: " + index);
+        int shift = 0;
+        Node node = root;
+        while (node.tokens == null) {
+            shift += node.shift;
+            if (index < node.left.size) {
+                node = node.left;
+            }
+            else {
+                index -= node.left.size;
+                node = node.right;
+            }
+        }
+        return shift(node.tokens[index], shift + node.shift);
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    @Override
+    public Iterator<SegToken> iterator() {
+        return new Iterator<SegToken>() {
+            // 待访问的子树及其祖先的偏移增量之和
+            private final Deque<Node> nodes = new ArrayDeque<Node>();
+            private final Deque<Integer> shifts = new ArrayDeque<Integer>();
+            private SegToken[] leaf;
+            private int leafShift;
+            private int position;
+
+            {
+                if (root != null) {
+                    nodes.push(root);
+                    shifts.push(0);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (leaf == null || position == leaf.length) {
+                    if (nodes.isEmpty())
+                        return false;
+                    Node node = nodes.pop();
+                    int shift = shifts.pop() + node.shift;
+                    if (node.tokens != null) {
+                        leaf = node.tokens;
+                        leafShift = shift;
+                        position = 0;
+                    }
+                    else {
+                        nodes.push(node.right);
+                        shifts.push(shift);
+                        nodes.push(node.left);
+                        shifts.push(shift);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public SegToken next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return shift(leaf[position++], leafShift);
+            }
+        };
+    }
+
+    private static SegToken shift(SegToken token, int shift) {
+        return shift == 0 ? token
+            : new SegToken(token.word, token.startOffset + shift, token.endOffset + shift, token.flags);
+    }
+
+    /**
+     * 树节点：叶子保存词数组（tokens非null），内部节点有左右子树
+     */
+    private static final class Node {
+        final Node left;
+        final Node right;
+        final SegToken[] tokens;
+        final int size;
+        final int height;
+        // 作用于整棵子树的偏移增量
+        final int shift;
+        // 子树第一个词的起始偏移（含本节点的增量，不含祖先的增量）
+        final int first;
+
+        Node(SegToken[] tokens, int shift) {
+            this.left = null;
+            this.right = null;
+            this.tokens = tokens;
+            this.size = tokens.length;
+            this.height = 1;
+            this.shift = shift;
+            this.first = tokens[0].startOffset + shift;
+        }
+
+        Node(Node left, Node right, int shift) {
+            this.left = left;
+            this.right = right;
+            this.tokens = null;
+            this.size = left.size + right.size;
+            this.height = Math.max(left.height, right.height) + 1;
+            this.shift = shift;
+            this.first = left.first + shift;
+        }
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * @return 整体平移delta的子树（只复制根节点）
+     */
+    private static Node shifted(Node node, int delta) {
+        if (node == null || delta == 0)
+            return node;
+        return node.tokens != null ? new Node(node.tokens, node.shift + delta)
+            : new Node(node.left, node.right, node.shift + delta);
+    }
+
+    private static Node build(List<SegToken> tokens) {
+        return build(tokens.toArray(new SegToken[tokens.size()]), 0, tokens.size());
+    }
+
+    private static Node build(SegToken[] tokens, int from, int to) {
+        if (from == to)
+            return null;
+        if (to - from <= CHUNK)
+            return new Node(Arrays.copyOfRange(tokens, from, to), 0);
+        // 按叶子数对半分，保证平衡
+        int leaves = (to - from + CHUNK - 1) / CHUNK;
+        int mid = from + leaves / 2 * CHUNK;
+        return new Node(build(tokens, from, mid), build(tokens, mid, to), 0);
+    }
+
+    /**
+     * @return {前index个词, 其余的词}，任一部分为空时为null
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null)
+            return new Node[2];
+        if (index <= 0)
+            return new Node[] {null, node};
+        if (index >= node.size)
+            return new Node[] {node, null};
+        if (node.tokens != null) {
+            return new Node[] {new Node(Arrays.copyOfRange(node.tokens, 0, index), node.shift),
+                new Node(Arrays.copyOfRange(node.tokens, index, node.size), node.shift)};
+        }
+        Node left = shifted(node.left, node.shift);
+        Node right = shifted(node.right, node.shift);
+        if (index < left.size) {
+            Node[] parts = split(left, index);
+            return new Node[] {parts[0], concat(parts[1], right)};
+        }
+        if (index == left.size)
+            return new Node[] {left, right};
+        Node[] parts = split(right, index - left.size);
+        return new Node[] {concat(left, parts[0]), parts[1]};
+    }
+
+    /**
+     * 拼接两棵树（a的词在前），结果保持平衡；相邻的小叶子合并
+     */
+    private static Node concat(Node a, Node b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.tokens != null && b.tokens != null && a.size + b.size <= CHUNK)
+            return merge(a, b);
+        int ha = a.height, hb = b.height;
+        if (ha > hb + 1) {
+            Node left = shifted(a.left, a.shift);
+            Node right = shifted(a.right, a.shift);
+            return balance(left, concat(right, b));
+        }
+        if (hb > ha + 1) {
+            Node left = shifted(b.left, b.shift);
+            Node right = shifted(b.right, b.shift);
+            return balance(concat(a, left), right);
+        }
+        return new Node(a, b, 0);
+    }
+
+    private static Node merge(Node a, Node b) {
+        SegToken[] tokens = new SegToken[a.size + b.size];
+        for (int i = 0; i < a.size; i++)
+            tokens[i] = shift(a.tokens[i], a.shift);
+        for (int i = 0; i < b.size; i++)
+            tokens[a.size + i] = shift(b.tokens[i], b.shift);
+        return new Node(tokens, 0);
+    }
+
+    /**
+     * 以left、right为子树建立节点，高度差超过1时旋转（left、right本身平衡，高度差不超过2）
+     */
+    private static Node balance(Node left, Node right) {
+        int hl = height(left), hr = height(right);
+        if (hl > hr + 1) {
+            Node ll = shifted(left.left, left.shift);
+            Node lr = shifted(left.right, left.shift);
+            if (height(ll) >= height(lr))
+                return new Node(ll, new Node(lr, right, 0), 0);
+            Node lrl = shifted(lr.left, lr.shift);
+            Node lrr = shifted(lr.right, lr.shift);
+            return new Node(new Node(ll, lrl, 0), new Node(lrr, right, 0), 0);
+        }
+        if (hr > hl + 1) {
+            Node rl = shifted(right.left, right.shift);
+            Node rr = shifted(right.right, right.shift);
+            if (height(rr) >= height(rl))
+                return new Node(new Node(left, rl, 0), rr, 0);
+            Node rll = shifted(rl.left, rl.shift);
+            Node rlr = shifted(rl.right, rl.shift);
+            return new Node(new Node(left, rll, 0), new Node(rlr, rr, 0), 0);
+        }
+        return new Node(left, right, 0);
+    }
+}
@@ -9,8 +9,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -22,22 +25,48 @@ import java.util.Set;
  * 1. 词典管理：加载主词典（dict.txt）和用户自定义词典
  * 2. 字典树构建：使用Trie树结构存储词典
  * 3. 词频管理：提供词语频率查询和归一化处理
+ * 4. 词语id：每个词典词有一个从0开始的整数id，按加载顺序分配（主词典按文件行序，用户词典追加），
+ *    相同词典文件、相同加载顺序得到相同的id；重置词典后重新分配
+ * 5. 词语标志位：停用词、标点、用户词及自定义类别（FLAG_*），供分词器的TokenFilter在输出时过滤或标记；
+ *    多字词的标志位与词语id同下标存放，单字按字符存放（含不在词典中的标点、空白）
+ * 6. 新词发现提升的词（NewWordLearner）不写入字典树和词频表，放在不可变的附加层（LearnedWords）中，
+ *    每批整体替换后以volatile字段发布，分词线程无需加锁；查询时主词典优先，附加层的词没有词语id
  * 
  * 核心设计：
  * - 单例模式：保证全局唯一字典实例
  * - 延迟加载：首次使用时加载主词典
  * - 扩展性：支持动态加载用户词典
  */
-public class WordDictionary {
-    // 单例实例（双重校验锁实现）
-    private static WordDictionary singleton;
+public class WordDictionary implements DictionaryLookup {
+    // 单例实例（双重校验锁实现，volatile保证其他线程看到的是加载完成的实例）
+    private static volatile WordDictionary singleton;
     // 主词典路径（内置于JAR包中）
     private static final String MAIN_DICT = "/dict.txt";
     // 用户词典后缀
     private static String USER_DICT_SUFFIX = ".dict";
+    // 默认停用词表（与TFIDFAnalyzer共用）
+    private static final String STOP_WORDS = "/stop_words.txt";
+
+    /** 停用词（加载主词典时按stop_words.txt标记） */
+    public static final int FLAG_STOP_WORD = 1;
+    /** 标点、空白及其他符号（非字母数字的字符；多字词全部由这类字符组成时也带此标志） */
+    public static final int FLAG_PUNCTUATION = 1 << 1;
+    /** 用户词典中的词 */
+    public static final int FLAG_USER = 1 << 2;
+    /** 第一个自定义类别，自定义类别依次使用 FLAG_CUSTOM &lt;&lt; 0 .. FLAG_CUSTOM &lt;&lt; 22 */
+    public static final int FLAG_CUSTOM = 1 << 8;
 
     // 词频表（词语 -> 对数概率值）
     public final Map<String, Double> freqs = new HashMap<String, Double>();
+    // 词语id -> 词语
+    private String[] idWords = new String[1024];
+    private int wordIdCount = 0;
+    // 词语 -> 词语id（开放寻址，槽位存放id，-1为空；键即idWords中的词语，不另存字符串）
+    private int[] idTable = newIdTable(2048);
+    // 词语id -> 标志位（多字词）
+    private int[] wordFlags = new int[1024];
+    // 字符 -> 标志位（单字词及单个字符）
+    private final int[] charFlags = new int[Character.MAX_VALUE + 1];
     // 已加载词典路径记录（避免重复加载）
     public final Set<String> loadedPath = new HashSet<String>();
     // 最小词频值（用于未登录词）
@@ -46,21 +75,59 @@ public class WordDictionary {
     private Double total = 0.0;
     // 字典树根节点
     private DictSegment _dict;
+    // 字典树探测前的位图预过滤
+    private final DictPrefilter prefilter = new DictPrefilter();
+    // 词典版本号（每次加载、重置词典时递增，用于指标和缓存失效判断）
+    private volatile long version = 0L;
+    // 字典树中最长词的长度（用于限定逐位置探测的深度）
+    private volatile int maxWordLength = 0;
+    // 新词发现提升的词（整体替换发布）
+    private volatile LearnedWords learned = LearnedWords.EMPTY;
 
     private WordDictionary() {
+        resetCharFlags();
         this.loadDict();
     }
 
     public static WordDictionary getInstance() {
-        if (singleton == null) {
+        WordDictionary instance = singleton;
+        if (instance == null) {
             synchronized (WordDictionary.class) {
-                if (singleton == null) {
-                    singleton = new WordDictionary();
-                    return singleton;
+                instance = singleton;
+                if (instance == null) {
+                    instance = new WordDictionary();
+                    singleton = instance;
                 }
             }
         }
-        return singleton;
+        return instance;
+    }
+
+    /**
+     * 获取单例，首次创建时先加载userDictDirs下的用户词典再发布单例（供JiebaSegmenter.preload使用）
+     * 因此isLoaded()为true时这些用户词典已经加载完成；单例已存在时直接在其上加载用户词典
+     * @param userDictDirs 用户词典目录（目录下的*.dict文件）
+     * @return 单例
+     */
+    static WordDictionary loadInstance(Path... userDictDirs) {
+        synchronized (WordDictionary.class) {
+            WordDictionary instance = singleton;
+            if (instance == null) {
+                instance = new WordDictionary();
+            }
+            for (Path dir : userDictDirs) {
+                instance.init(dir);
+            }
+            singleton = instance;
+            return instance;
+        }
+    }
+
+    /**
+     * @return 单例是否已创建（主词典及preload指定的用户词典已加载完成），不触发加载
+     */
+    public static boolean isLoaded() {
+        return singleton != null;
     }
 
     /**
@@ -80,8 +147,8 @@ public class WordDictionary {
             try {
                 stream = Files.newDirectoryStream(configFile, String.format(Locale.getDefault(), "*%s", USER_DICT_SUFFIX));
                 for (Path path: stream){
-                    Log.error(String.format(Locale.getDefault(), "loading dict %s", path.toString()));
-                    singleton.loadUserDict(String.valueOf(path));
+                    Log.debug(String.format(Locale.getDefault(), "loading dict %s", path.toString()));
+                    loadUserDict(path, StandardCharsets.UTF_8);
                 }
                 loadedPath.add(abspath);
             } catch (IOException e) {
@@ -96,7 +163,7 @@ public class WordDictionary {
                 if (!loadedPath.contains(path)) {
                     try {
                         Log.debug("initialize user dictionary: " + path);
-                        singleton.loadUserDict(path);
+                        loadUserDict(path);
                         loadedPath.add(path);
                     } catch (Exception e) {
                         Log.error(String.format(Locale.getDefault(), "%s: load user dict failure!", path));
@@ -111,7 +178,16 @@ public class WordDictionary {
      */
     public void resetDict(){
     	_dict = new DictSegment((char) 0);
+    	prefilter.clear();
     	freqs.clear();
+    	Arrays.fill(idWords, 0, wordIdCount, null);
+    	Arrays.fill(idTable, -1);
+    	Arrays.fill(wordFlags, 0, wordIdCount, 0);
+    	resetCharFlags();
+    	wordIdCount = 0;
+    	maxWordLength = 0;
+    	learned = LearnedWords.EMPTY;
+    	version++;
     }
 
     /**
@@ -124,6 +200,8 @@ public class WordDictionary {
      */
     public void loadDict() {
         _dict = new DictSegment((char) 0);
+        prefilter.clear();
+        maxWordLength = 0;
         InputStream is = this.getClass().getResourceAsStream(MAIN_DICT);
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
@@ -147,7 +225,10 @@ public class WordDictionary {
             for (Entry<String, Double> entry : freqs.entrySet()) {
                 entry.setValue((Math.log(entry.getValue() / total)));
                 minFreq = Math.min(entry.getValue(), minFreq);
+                _dict.updateWeight(entry.getKey().toCharArray(), entry.getValue());
             }
+            loadFlags(this.getClass().getResourceAsStream(STOP_WORDS), STOP_WORDS, FLAG_STOP_WORD);
+            version++;
             Log.debug(String.format(Locale.getDefault(), "main dict load finished, time elapsed %d ms",
                     System.currentTimeMillis() - s));
         }
@@ -170,6 +251,15 @@ public class WordDictionary {
         if (null != word && !"".equals(word.trim())) {
             String key = word.trim().toLowerCase(Locale.getDefault());
             _dict.fillSegment(key.toCharArray());
+            prefilter.add(key);
+            if (key.length() > maxWordLength) {
+                maxWordLength = key.length();
+            }
+            int id = getWordId(key);
+            if (id < 0) {
+                id = assignWordId(key);
+            }
+            _dict.setWordId(key.toCharArray(), id);
             return key;
         }
         else {
@@ -177,6 +267,60 @@ public class WordDictionary {
         }
     }
 
+    private static int[] newIdTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 为新词分配下一个id（调用方保证词语不在词典中）
+     * @return 分配的id
+     */
+    private int assignWordId(String word) {
+        if (wordIdCount == idWords.length) {
+            idWords = Arrays.copyOf(idWords, wordIdCount * 2);
+            wordFlags = Arrays.copyOf(wordFlags, wordIdCount * 2);
+        }
+        int id = wordIdCount++;
+        idWords[id] = word;
+        if (wordIdCount * 2 > idTable.length) {
+            // 扩容后重新插入全部id
+            idTable = newIdTable(idTable.length * 2);
+            for (int i = 0; i < wordIdCount; i++) {
+                insertWordId(i);
+            }
+        }
+        else {
+            insertWordId(id);
+        }
+        return id;
+    }
+
+    private void insertWordId(int id) {
+        int mask = idTable.length - 1;
+        int slot = hash(idWords[id]) & mask;
+        while (idTable[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        idTable[slot] = id;
+    }
+
+    /**
+     * 记录用户词的词频，同时更新字典树上的补全权重
+     */
+    private void putFreq(String word, double freq) {
+        freqs.put(word, freq);
+        if (word != null) {
+            _dict.updateWeight(word.toCharArray(), freq);
+        }
+    }
+
     /**
      * 加载用户自定义词典
      * @param userDict 用户词典路径
@@ -207,9 +351,11 @@ public class WordDictionary {
                     freq = Double.valueOf(tokens[1]);
                 }
                 word = addWord(word); 
-                freqs.put(word, Math.log(freq / total));
+                putFreq(word, Math.log(freq / total));
+                addFlags(word, FLAG_USER);
                 count++;
             }
+            version++;
             Log.debug(String.format(Locale.getDefault(), "user dict %s load finished, tot words:%d, time elapsed:%dms", userDict.toString(), count, System.currentTimeMillis() - s));
             br.close();
         }
@@ -218,6 +364,73 @@ public class WordDictionary {
         }
     }
 
+    /**
+     * 添加一批新词发现提升的词（不修改字典树和词频表，生成新的附加层后整体发布，可与分词并发调用）
+     * 每批只递增一次词典版本号，依赖版本号的缓存（ASCII判定表、IDF的id表、增量分词结果）每批只失效一次
+     * @param words 词语 -> 词频（与用户词典相同，按主词典总词频归一化）；已在主词典中的词忽略
+     * @return 本批实际添加的词数
+     */
+    int addLearnedWords(Map<String, Double> words) {
+        synchronized (WordDictionary.class) {
+            Map<String, Double> additions = new HashMap<String, Double>();
+            for (Entry<String, Double> entry : words.entrySet()) {
+                String word = entry.getKey();
+                if (word == null || word.trim().isEmpty()) {
+                    continue;
+                }
+                String key = word.trim().toLowerCase(Locale.getDefault());
+                if (!freqs.containsKey(key)) {
+                    additions.put(key, Math.log(entry.getValue() / total));
+                }
+            }
+            if (!additions.isEmpty()) {
+                learned = learned.with(additions);
+                version++;
+            }
+            return additions.size();
+        }
+    }
+
+    /**
+     * 撤销新词发现提升的词（整体发布新的附加层）
+     * @param words 词语
+     */
+    void removeLearnedWords(Collection<String> words) {
+        synchronized (WordDictionary.class) {
+            Set<String> keys = new HashSet<String>();
+            for (String word : words) {
+                keys.add(word.trim().toLowerCase(Locale.getDefault()));
+            }
+            LearnedWords current = learned;
+            LearnedWords updated = current.without(keys);
+            if (updated != current) {
+                learned = updated;
+                version++;
+            }
+        }
+    }
+
+    /**
+     * @return 是否有新词发现提升的词
+     */
+    boolean hasLearnedWords() {
+        return learned.size() > 0;
+    }
+
+    /**
+     * @return text[start, end)是否为新词发现提升的词（不在主词典中）
+     */
+    boolean isLearned(String text, int start, int end) {
+        return learned.indexOf(text, start, end) >= 0;
+    }
+
+    /**
+     * @return 主词典的总词频（用户词词频的归一化分母）
+     */
+    public double getTotalFreq() {
+        return total;
+    }
+
     public void loadUserDict(String userDictPath) {
         loadUserDict(userDictPath, StandardCharsets.UTF_8);
     }
@@ -245,9 +458,11 @@ public class WordDictionary {
                     freq = Double.valueOf(tokens[1]);
                 }
                 word = addWord(word);
-                freqs.put(word, Math.log(freq / total));
+                putFreq(word, Math.log(freq / total));
+                addFlags(word, FLAG_USER);
                 count++;
             }
+            version++;
             Log.debug(String.format(Locale.getDefault(), "user dict %s load finished, tot words:%d, time elapsed:%dms", userDictPath, count, System.currentTimeMillis() - s));
             br.close();
         }
@@ -265,8 +480,284 @@ public class WordDictionary {
         return this._dict;
     }
 
+    /**
+     * @return 词典中的词语数（含新词发现提升的词）
+     */
+    public int size() {
+        return freqs.size() + learned.size();
+    }
+
+    @Override
+    public int matchEnds(char[] chars, int begin, int end, int[] ends) {
+        int probeEnd = prefilter.probeEnd(chars, begin, end);
+        int found = 0;
+        if (probeEnd - begin > 1) {
+            found = _dict.matchEnds(chars, begin, probeEnd, ends);
+        }
+        // 最多只有单字词，不进入字典树
+        else if (probeEnd > begin && prefilter.isSingle(chars[begin])) {
+            ends[0] = begin;
+            found = 1;
+        }
+        LearnedWords learned = this.learned;
+        return learned.size() == 0 ? found : learned.merge(chars, begin, end, ends, found, null, null);
+    }
+
+    /**
+     * 同matchEnds，同时输出各词的词语id和对数词频（取自字典树节点，与getLogFreq的结果相同），
+     * 分词的动态规划据此选词，不再为每个候选词截取子串、查询词频表
+     * @param ids 输出：词语id，与ends同下标
+     * @param logFreqs 输出：对数词频，与ends同下标
+     * @return 成词个数
+     */
+    int matchIds(char[] chars, int begin, int end, int[] ends, int[] ids, double[] logFreqs) {
+        int probeEnd = prefilter.probeEnd(chars, begin, end);
+        int found = 0;
+        if (probeEnd - begin > 1 || probeEnd > begin && prefilter.isSingle(chars[begin])) {
+            found = _dict.matchEnds(chars, begin, probeEnd, ends, ids, logFreqs);
+        }
+        LearnedWords learned = this.learned;
+        return learned.size() == 0 ? found : learned.merge(chars, begin, end, ends, found, ids, logFreqs);
+    }
+
+    @Override
+    public boolean isPrefix(char[] chars, int begin, int end) {
+        LearnedWords learned = this.learned;
+        if (learned.size() > 0 && learned.isPrefix(chars, begin, end)) {
+            return true;
+        }
+        if (prefilter.probeEnd(chars, begin, end) < end) {
+            return false;
+        }
+        if (end - begin == 1) {
+            return true;
+        }
+        Hit hit = _dict.match(chars, begin, end - begin);
+        return hit.isMatch() || hit.isPrefix();
+    }
+
+    /**
+     * 从begin开始的字典树探测上限（位图预过滤，见DictPrefilter.probeEnd）
+     * @return 探测的结束位置（不包含），不超过end；等于begin时没有词从begin开始
+     */
+    int probeEnd(char[] chars, int begin, int end) {
+        return prefilter.probeEnd(chars, begin, end);
+    }
+
+    /**
+     * @return 最长词的长度（字典树及新词发现提升的词）
+     */
+    @Override
+    public int getMaxWordLength() {
+        return Math.max(maxWordLength, learned.getMaxLength());
+    }
+
+    /**
+     * @return 词典版本号，每次加载或重置词典后递增
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 前缀补全（用于搜索框联想等场景）
+     * @param prefix 前缀（与词典一致转为小写）
+     * @param k 返回的词数上限
+     * @return 以prefix开头的词典词（含prefix本身）及其对数概率，按词频降序，同词频按字典序
+     */
+    public List<Pair<String>> complete(String prefix, int k) {
+        return _dict.complete(prefix.toLowerCase(Locale.getDefault()), k);
+    }
+
+    /**
+     * 词语id查询
+     * @param word 词语（小写）
+     * @return 词语id，不在词典中时返回-1
+     */
+    public int getWordId(String word) {
+        int[] table = idTable;
+        int mask = table.length - 1;
+        int slot = hash(word) & mask;
+        int id;
+        while ((id = table[slot]) >= 0) {
+            if (word.equals(idWords[id])) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 按字符区间查询词语id（与getWordId(text.substring(start, end))相同，不截取子串）
+     * @param text 文本（小写）
+     * @param start 起始位置
+     * @param end 结束位置（不包含）
+     * @return 词语id，不在词典中时返回-1
+     */
+    public int getWordId(String text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        int length = end - start;
+        int[] table = idTable;
+        int mask = table.length - 1;
+        int slot = (h ^ (h >>> 16)) & mask;
+        int id;
+        while ((id = table[slot]) >= 0) {
+            String word = idWords[id];
+            if (word.length() == length && word.regionMatches(0, text, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id 词语id
+     * @return id对应的词语
+     */
+    public String getWord(int id) {
+        if (id < 0 || id >= wordIdCount) {
+            throw new IndexOutOfBoundsException("word id: " + id);
+        }
+        return idWords[id];
+    }
+
+    /**
+     * @return 已分配的词语id数（id取值范围为 0 .. getWordIdCount()-1，可直接作为数组长度）
+     */
+    public int getWordIdCount() {
+        return wordIdCount;
+    }
+
+    private void resetCharFlags() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            charFlags[c] = punctuationFlags((char) c);
+        }
+    }
+
+    /**
+     * @return 字符的默认标志位（非字母数字的字符为FLAG_PUNCTUATION），不依赖词典
+     */
+    static int punctuationFlags(char ch) {
+        return Character.isLetterOrDigit(ch) ? 0 : FLAG_PUNCTUATION;
+    }
+
+    /**
+     * 为词语添加标志位
+     * @param word 词语（与词典一致转为小写）
+     * @param flags 标志位（FLAG_*，可组合）
+     * @return 是否添加成功：单字总是成功，多字词须为词典词
+     */
+    public boolean addFlags(String word, int flags) {
+        if (word == null || word.isEmpty()) {
+            return false;
+        }
+        String key = word.toLowerCase(Locale.getDefault());
+        if (key.length() == 1) {
+            charFlags[key.charAt(0)] |= flags;
+            return true;
+        }
+        int id = getWordId(key);
+        if (id < 0) {
+            return false;
+        }
+        wordFlags[id] |= flags;
+        return true;
+    }
+
+    /**
+     * 从词表文件（每行一个词）为词语添加标志位，不在词典中的多字词忽略
+     * @param path 词表文件（UTF-8）
+     * @param flags 标志位（FLAG_*，可组合）
+     */
+    public void loadFlags(Path path, int flags) {
+        try {
+            loadFlags(Files.newInputStream(path), path.toString(), flags);
+        }
+        catch (IOException e) {
+            Log.error(String.format(Locale.getDefault(), "%s: load flags failure!", path.toString()));
+        }
+    }
+
+    private void loadFlags(InputStream is, String name, int flags) {
+        if (is == null) {
+            Log.error(String.format(Locale.getDefault(), "%s: resource not found!", name));
+            return;
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            int count = 0, ignored = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String word = line.trim();
+                if (word.isEmpty()) {
+                    continue;
+                }
+                if (addFlags(word, flags)) {
+                    count++;
+                }
+                else {
+                    ignored++;
+                }
+            }
+            Log.debug(String.format(Locale.getDefault(), "flags %s load finished, words:%d, ignored:%d", name, count,
+                    ignored));
+        }
+        catch (IOException e) {
+            Log.error(String.format(Locale.getDefault(), "%s: load flags failure!", name));
+        }
+    }
+
+    /**
+     * 词语标志位查询
+     * @param word 词语（小写）
+     * @return 标志位（FLAG_*），无标志时为0
+     */
+    public int getFlags(String word) {
+        return getFlags(word, 0, word.length(), SentenceWords.UNRESOLVED);
+    }
+
+    /**
+     * 按字符区间查询词语标志位（与getFlags(text.substring(start, end))相同，不截取子串）
+     * @param id 已知的词语id（分词的动态规划给出），SentenceWords.UNRESOLVED时按字符区间查询
+     */
+    int getFlags(String text, int start, int end, int id) {
+        int length = end - start;
+        if (length == 1) {
+            return charFlags[text.charAt(start)];
+        }
+        if (id == SentenceWords.UNRESOLVED) {
+            id = getWordId(text, start, end);
+        }
+        if (id >= 0) {
+            return wordFlags[id];
+        }
+        if (isLearned(text, start, end)) {
+            return FLAG_USER;
+        }
+        // 未登录的多字词：全部由标点、空白组成时为标点
+        for (int i = start; i < end; i++) {
+            if ((charFlags[text.charAt(i)] & FLAG_PUNCTUATION) == 0) {
+                return 0;
+            }
+        }
+        return length == 0 ? 0 : FLAG_PUNCTUATION;
+    }
+
+    /**
+     * @param ch 字符
+     * @return 单字的标志位（FLAG_*），无标志时为0
+     */
+    public int getFlags(char ch) {
+        return charFlags[ch];
+    }
+
+    @Override
     public boolean containsWord(String word) {
-        return freqs.containsKey(word);
+        return freqs.containsKey(word) || learned.size() > 0 && word != null && learned.indexOf(word) >= 0;
     }
 
     /**
@@ -276,10 +767,27 @@ public class WordDictionary {
      * 策略：未登录词返回最小词频值
      */
     public Double getFreq(String key) {
-        if (containsWord(key)) {
+        if (freqs.containsKey(key)) {
             return freqs.get(key);
+        }
+        LearnedWords learned = this.learned;
+        int index = learned.size() == 0 || key == null ? -1 : learned.indexOf(key);
+        if (index >= 0) {
+            return learned.getLogFreq(index);
         } else {
             return minFreq;
         }
     }
+
+    @Override
+    public double getLogFreq(String word) {
+        return getFreq(word);
+    }
+
+    /**
+     * @return 词典中最小的对数词频（未登录词的词频）
+     */
+    double getMinFreq() {
+        return minFreq;
+    }
 }
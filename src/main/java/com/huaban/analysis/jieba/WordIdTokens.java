@@ -0,0 +1,140 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以词语id表示的分词结果（可复用的缓冲区，非线程安全）
+ * 功能：
+ * 1. 每个词保存为 词语id + 起始偏移 + 结束偏移 三个int，不创建SegToken
+ * 2. 词典词使用WordDictionary的词语id（非负，可直接作为数组下标，如词频计数、IDF查询）
+ * 3. 未登录词（HMM识别的新词、标点、英文数字等）使用负数id，由本对象内的映射表即时分配：
+ *    第一个未登录词为-1，其次为-2……同一对象上多次分词时同一未登录词的id保持不变，直到clearOov()
+ *
+ * 使用示例：
+ *    WordIdTokens tokens = new WordIdTokens();
+ *    segmenter.processIds(text, SegMode.SEARCH, tokens);
+ *    for (int i = 0; i < tokens.size(); i++)
+ *        if (tokens.id(i) >= 0) counts[tokens.id(i)]++;
+ */
+public final class WordIdTokens {
+    private final WordDictionary dictionary = WordDictionary.getInstance();
+
+    private int size;
+    private int[] ids = new int[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+
+    // 未登录词 -> 负数id，及其反向表（下标为 -id-1）
+    private final Map<String, Integer> oovIds = new HashMap<String, Integer>();
+    private final List<String> oovWords = new ArrayList<String>();
+
+    /**
+     * 追加一个词（词典词的id由分词的动态规划直接给出）
+     * @param word 词语，id非负时可以为null
+     * @param id 词语id：非负为词典词，-1为不在词典中，SentenceWords.UNRESOLVED为未查询（按word查询）
+     * @param start 起始偏移
+     * @param end 结束偏移
+     */
+    void add(String word, int id, int start, int end) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        if (id == SentenceWords.UNRESOLVED) {
+            id = dictionary.getWordId(word);
+        }
+        if (id < 0) {
+            Integer oov = oovIds.get(word);
+            if (oov == null) {
+                oovWords.add(word);
+                oov = -oovWords.size();
+                oovIds.put(word, oov);
+            }
+            id = oov;
+        }
+        ids[size] = id;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * 清空分词结果（保留未登录词的id分配）
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * 清空未登录词的id分配（长期复用的对象可定期调用，避免映射表无限增长）
+     */
+    public void clearOov() {
+        oovIds.clear();
+        oovWords.clear();
+    }
+
+    /**
+     * @return 词数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i 词的序号
+     * @return 词语id，未登录词为负数
+     */
+    public int id(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @param i 词的序号
+     * @return 起始偏移
+     */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @param i 词的序号
+     * @return 结束偏移
+     */
+    public int end(int i) {
+        return ends[i];
+    }
+
+    /**
+     * @param i 词的序号
+     * @return 词语
+     */
+    public String word(int i) {
+        return wordOf(ids[i]);
+    }
+
+    /**
+     * @param id 词语id（词典词或本对象分配的未登录词id）
+     * @return id对应的词语
+     */
+    public String wordOf(int id) {
+        return id >= 0 ? dictionary.getWord(id) : oovWords.get(-id - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append('[').append(word(i)).append(", ").append(ids[i]).append(", ").append(starts[i]).append(", ")
+                .append(ends[i]).append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
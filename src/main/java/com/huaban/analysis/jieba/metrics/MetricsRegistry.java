@@ -0,0 +1,43 @@
+package com.huaban.analysis.jieba.metrics;
+
+/**
+ * 分词指标收集接口（可插拔）
+ * 功能：
+ * 1. 接收分词器各阶段的耗时
+ * 2. 接收句子、请求、HMM回退等计数
+ *
+ * 使用方式：
+ * - 通过JiebaSegmenter.setMetricsRegistry注册实现，传入null即关闭
+ * - 关闭时分词器只多一次字段读取和判空，不调用System.nanoTime
+ * - 实现类会被多个分词线程并发调用，需自行保证线程安全且尽量无锁
+ */
+public interface MetricsRegistry {
+
+    /**
+     * 记录阶段耗时
+     * @param stage 处理阶段
+     * @param nanos 耗时（纳秒）
+     */
+    void recordStage(Stage stage, long nanos);
+
+    /**
+     * 记录一次sentenceProcess调用
+     * @param chars 句子字符数
+     * @param tokens 输出词数
+     */
+    void recordSentence(int chars, int tokens);
+
+    /**
+     * 记录一次HMM回退（DP后连续单字交由FinalSeg切分）
+     * @param chars 交由HMM处理的字符数
+     */
+    void recordHmmFallback(int chars);
+
+    /**
+     * 记录一次process调用
+     * @param chars 段落字符数
+     * @param tokens 输出词数
+     * @param nanos 总耗时（纳秒）
+     */
+    void recordRequest(int chars, int tokens, long nanos);
+}
@@ -0,0 +1,279 @@
+package com.huaban.analysis.jieba.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.Log;
+import com.huaban.analysis.jieba.WordDictionary;
+
+/**
+ * 默认分词指标实现（基于LongAdder，无锁）
+ * 功能：
+ * 1. 各处理阶段累计耗时
+ * 2. 请求/句子/词/HMM回退计数
+ * 3. 按段落长度分桶的延迟直方图（延迟按2的幂微秒分桶）
+ * 4. 以JMX MBean形式导出，同时暴露词典规模和版本
+ *
+ * 使用方式：
+ * - SegmenterMetrics.enable() 创建实例、注册到分词器并发布MBean
+ * - 或启动参数 -Djieba.metrics.enable=true，首次使用分词器时自动开启
+ * - SegmenterMetrics.disable() 关闭采集并注销MBean
+ */
+public class SegmenterMetrics implements MetricsRegistry, SegmenterMetricsMBean {
+    // MBean名称
+    public static final String OBJECT_NAME = "com.huaban.analysis.jieba:type=SegmenterMetrics";
+
+    // 段落长度分桶上界（字符数，不含），最后一个桶没有上界
+    private static final int[] LENGTH_BOUNDS = new int[] { 16, 64, 256, 1024, 4096 };
+    // 延迟分桶数：第b个桶为 [2^(b-1), 2^b) 微秒，第0个桶为不足1微秒
+    private static final int LATENCY_BUCKETS = 24;
+
+    private final LongAdder[] stageNanos = newAdders(Stage.values().length);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestChars = new LongAdder();
+    private final LongAdder requestTokens = new LongAdder();
+    private final LongAdder sentences = new LongAdder();
+    private final LongAdder sentenceChars = new LongAdder();
+    private final LongAdder sentenceTokens = new LongAdder();
+    private final LongAdder hmmFallbacks = new LongAdder();
+    private final LongAdder hmmChars = new LongAdder();
+    private final LongAdder[][] histogram = new LongAdder[LENGTH_BOUNDS.length + 1][];
+
+    public SegmenterMetrics() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = newAdders(LATENCY_BUCKETS);
+        }
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 创建指标实例，注册到分词器并发布MBean
+     * @return 指标实例
+     */
+    public static synchronized SegmenterMetrics enable() {
+        SegmenterMetrics metrics = new SegmenterMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        }
+        catch (JMException e) {
+            Log.error(String.format(Locale.getDefault(), "%s: register mbean failure!", OBJECT_NAME));
+        }
+        JiebaSegmenter.setMetricsRegistry(metrics);
+        return metrics;
+    }
+
+    /**
+     * 关闭指标采集并注销MBean
+     */
+    public static synchronized void disable() {
+        JiebaSegmenter.setMetricsRegistry(null);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e) {
+            Log.error(String.format(Locale.getDefault(), "%s: unregister mbean failure!", OBJECT_NAME));
+        }
+    }
+
+    @Override
+    public void recordStage(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void recordSentence(int chars, int tokens) {
+        sentences.increment();
+        sentenceChars.add(chars);
+        sentenceTokens.add(tokens);
+    }
+
+    @Override
+    public void recordHmmFallback(int chars) {
+        hmmFallbacks.increment();
+        hmmChars.add(chars);
+    }
+
+    @Override
+    public void recordRequest(int chars, int tokens, long nanos) {
+        requests.increment();
+        requestChars.add(chars);
+        requestTokens.add(tokens);
+        histogram[lengthBucket(chars)][latencyBucket(nanos)].increment();
+    }
+
+    private static int lengthBucket(int chars) {
+        int i = 0;
+        while (i < LENGTH_BOUNDS.length && chars >= LENGTH_BOUNDS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int latencyBucket(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * 获取阶段累计耗时
+     * @param stage 处理阶段
+     * @return 纳秒
+     */
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRequestCharCount() {
+        return requestChars.sum();
+    }
+
+    @Override
+    public long getRequestTokenCount() {
+        return requestTokens.sum();
+    }
+
+    @Override
+    public long getSentenceCount() {
+        return sentences.sum();
+    }
+
+    @Override
+    public long getSentenceCharCount() {
+        return sentenceChars.sum();
+    }
+
+    @Override
+    public long getSentenceTokenCount() {
+        return sentenceTokens.sum();
+    }
+
+    @Override
+    public long getHmmFallbackCount() {
+        return hmmFallbacks.sum();
+    }
+
+    @Override
+    public long getHmmCharCount() {
+        return hmmChars.sum();
+    }
+
+    @Override
+    public long getCharClassSplitNanos() {
+        return getStageNanos(Stage.CHAR_CLASS_SPLIT);
+    }
+
+    @Override
+    public long getDagBuildNanos() {
+        return getStageNanos(Stage.DAG_BUILD);
+    }
+
+    @Override
+    public long getDpNanos() {
+        return getStageNanos(Stage.DP);
+    }
+
+    @Override
+    public long getHmmNanos() {
+        return getStageNanos(Stage.HMM);
+    }
+
+    @Override
+    public long getIndexExpansionNanos() {
+        return getStageNanos(Stage.INDEX_EXPANSION);
+    }
+
+    /**
+     * @return 词典词数，词典尚未加载时为-1（不在JMX线程上触发词典加载）
+     */
+    @Override
+    public int getDictionarySize() {
+        return WordDictionary.isLoaded() ? WordDictionary.getInstance().size() : -1;
+    }
+
+    /**
+     * @return 词典版本号，词典尚未加载时为-1
+     */
+    @Override
+    public long getDictionaryVersion() {
+        return WordDictionary.isLoaded() ? WordDictionary.getInstance().getVersion() : -1L;
+    }
+
+    @Override
+    public String[] getLengthBuckets() {
+        String[] names = new String[LENGTH_BOUNDS.length + 1];
+        int lower = 0;
+        for (int i = 0; i < LENGTH_BOUNDS.length; i++) {
+            names[i] = String.format(Locale.ROOT, "[%d,%d)", lower, LENGTH_BOUNDS[i]);
+            lower = LENGTH_BOUNDS[i];
+        }
+        names[LENGTH_BOUNDS.length] = String.format(Locale.ROOT, "[%d,+)", lower);
+        return names;
+    }
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        long[] bounds = new long[LATENCY_BUCKETS - 1];
+        for (int b = 0; b < bounds.length; b++) {
+            bounds[b] = 1L << b;
+        }
+        return bounds;
+    }
+
+    @Override
+    public long[] getLatencyHistogram(int lengthBucket) {
+        LongAdder[] row = histogram[lengthBucket];
+        long[] counts = new long[row.length];
+        for (int i = 0; i < row.length; i++) {
+            counts[i] = row[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : stageNanos) {
+            adder.reset();
+        }
+        for (LongAdder[] row : histogram) {
+            for (LongAdder adder : row) {
+                adder.reset();
+            }
+        }
+        requests.reset();
+        requestChars.reset();
+        requestTokens.reset();
+        sentences.reset();
+        sentenceChars.reset();
+        sentenceTokens.reset();
+        hmmFallbacks.reset();
+        hmmChars.reset();
+    }
+}
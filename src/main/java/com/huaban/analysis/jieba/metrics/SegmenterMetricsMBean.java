@@ -0,0 +1,60 @@
+package com.huaban.analysis.jieba.metrics;
+
+/**
+ * 分词指标JMX管理接口
+ * ObjectName：com.huaban.analysis.jieba:type=SegmenterMetrics
+ */
+public interface SegmenterMetricsMBean {
+
+    long getRequestCount();
+
+    long getRequestCharCount();
+
+    long getRequestTokenCount();
+
+    long getSentenceCount();
+
+    long getSentenceCharCount();
+
+    long getSentenceTokenCount();
+
+    long getHmmFallbackCount();
+
+    long getHmmCharCount();
+
+    long getCharClassSplitNanos();
+
+    long getDagBuildNanos();
+
+    long getDpNanos();
+
+    long getHmmNanos();
+
+    long getIndexExpansionNanos();
+
+    int getDictionarySize();
+
+    long getDictionaryVersion();
+
+    /**
+     * @return 段落长度分桶的描述，下标与getLatencyHistogram的参数对应
+     */
+    String[] getLengthBuckets();
+
+    /**
+     * @return 延迟分桶的上界（微秒），最后一个桶没有上界
+     */
+    long[] getLatencyBucketBounds();
+
+    /**
+     * 获取指定长度分桶的延迟直方图
+     * @param lengthBucket 长度分桶下标
+     * @return 各延迟分桶的请求数
+     */
+    long[] getLatencyHistogram(int lengthBucket);
+
+    /**
+     * 清零所有计数
+     */
+    void reset();
+}
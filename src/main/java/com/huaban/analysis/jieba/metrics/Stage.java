@@ -0,0 +1,19 @@
+package com.huaban.analysis.jieba.metrics;
+
+/**
+ * 分词处理阶段
+ * 说明：
+ * - CHAR_CLASS_SPLIT：process中逐字符规范化并按字符类型切分句子
+ * - DAG_BUILD：基于字典树构建DAG（只在短句、默认词典的createDAG + calc路径上记录）
+ * - DP：动态规划计算最大概率路径；走calcLong的句子（含ASCII字符、有新词发现提升的词、输出词语id、
+ *   自定义词典或长度超过1024）在动态规划中逐位置探测字典树，探测时间计入DP，不单独记录DAG_BUILD
+ * - HMM：未登录词交由HMM模型（维特比算法）切分
+ * - INDEX_EXPANSION：INDEX模式下展开2-gram/3-gram子词
+ */
+public enum Stage {
+    CHAR_CLASS_SPLIT,
+    DAG_BUILD,
+    DP,
+    HMM,
+    INDEX_EXPANSION
+}
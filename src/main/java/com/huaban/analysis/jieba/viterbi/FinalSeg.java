@@ -9,14 +9,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.Collections;
 
 import com.huaban.analysis.jieba.CharacterUtil;
 import com.huaban.analysis.jieba.Log;
-import com.huaban.analysis.jieba.Pair;
-import com.huaban.analysis.jieba.Node;
 
 /**
  * 结巴分词HMM模型处理类
@@ -28,8 +23,8 @@ import com.huaban.analysis.jieba.Node;
  * 3. 依赖预训练的概率模型（prob_emit.txt）
  */
 public class FinalSeg {
-    // 单例实例
-    private static FinalSeg singleInstance;
+    // 单例实例（模型加载完成后才发布）
+    private static volatile FinalSeg singleInstance;
     // 发射概率文件路径
     private static final String PROB_EMIT = "/prob_emit.txt";
     // 所有可能的状态
@@ -44,16 +39,36 @@ public class FinalSeg {
     private static Map<Character, char[]> prevStatus;
     // 最小概率值（用于log计算）
     private static Double MIN_FLOAT = -3.14e100;
+    // 状态下标（与states顺序一致）
+    private static final int E = 2;
+    private static final int S = 3;
+    // 按状态下标展开的前驱状态和转移概率（由prevStatus、trans生成，维特比主循环中不再查Map）
+    private static int[][] prevIndex;
+    private static double[][] transProb;
 
     private FinalSeg() {
     }
 
-    public synchronized static FinalSeg getInstance() {
-        if (null == singleInstance) {
-            singleInstance = new FinalSeg();
-            singleInstance.loadModel();
+    public static FinalSeg getInstance() {
+        FinalSeg instance = singleInstance;
+        if (null == instance) {
+            synchronized (FinalSeg.class) {
+                instance = singleInstance;
+                if (null == instance) {
+                    instance = new FinalSeg();
+                    instance.loadModel();
+                    singleInstance = instance;
+                }
+            }
         }
-        return singleInstance;
+        return instance;
+    }
+
+    /**
+     * @return HMM模型是否已加载完成，不触发加载
+     */
+    public static boolean isLoaded() {
+        return singleInstance != null;
     }
 
     /**
@@ -89,7 +104,21 @@ public class FinalSeg {
             put('M', new HashMap<Character, Double>() {{ put('E', -0.3334); put('M', -1.2604); }});
             put('S', new HashMap<Character, Double>() {{ put('B', -0.7212); put('S', -0.6659); }});
         }};
-        
+
+        // 按状态下标展开前驱状态和转移概率（缺失的转移取MIN_FLOAT）
+        prevIndex = new int[states.length][];
+        transProb = new double[states.length][states.length];
+        for (int y = 0; y < states.length; ++y) {
+            char[] prev = prevStatus.get(states[y]);
+            prevIndex[y] = new int[prev.length];
+            for (int k = 0; k < prev.length; ++k)
+                prevIndex[y][k] = String.valueOf(states).indexOf(prev[k]);
+            for (int y0 = 0; y0 < states.length; ++y0) {
+                Double p = trans.get(states[y0]).get(states[y]);
+                transProb[y0][y] = p == null ? MIN_FLOAT : p;
+            }
+        }
+
         // 加载发射概率文件
         InputStream is = this.getClass().getResourceAsStream(PROB_EMIT);
         try {
@@ -134,29 +163,18 @@ public class FinalSeg {
      * 3. 非中文部分按规则切分
      */
     public void cut(String sentence, List<String> tokens) {
-        StringBuilder chinese = new StringBuilder();
-        StringBuilder other = new StringBuilder();
-        for (int i = 0; i < sentence.length(); ++i) {
-            char ch = sentence.charAt(i);
-            if (CharacterUtil.isChineseLetter(ch)) {
-                if (other.length() > 0) {
-                    processOtherUnknownWords(other.toString(), tokens);
-                    other = new StringBuilder();
-                }
-                chinese.append(ch);
-            }
-            else {
-                if (chinese.length() > 0) {
-                    viterbi(chinese.toString(), tokens);
-                    chinese = new StringBuilder();
-                }
-                other.append(ch);
-            }
-        }
-        if (chinese.length() > 0)
-            viterbi(chinese.toString(), tokens);
-        else {
-            processOtherUnknownWords(other.toString(), tokens);
+        // 按“是否中文字符”切成交替的片段，边界查找见CharacterUtil.chineseRunEnd
+        int length = sentence.length();
+        char[] chars = sentence.toCharArray();
+        int i = 0;
+        while (i < length) {
+            boolean chinese = CharacterUtil.isChineseLetter(chars[i]);
+            int end = CharacterUtil.chineseRunEnd(chars, i, length, chinese);
+            if (chinese)
+                viterbi(sentence.substring(i, end), tokens);
+            else
+                CharacterUtil.splitSkip(sentence.substring(i, end), tokens);
+            i = end;
         }
     }
 
@@ -165,71 +183,62 @@ public class FinalSeg {
      * @param sentence 纯中文字符串
      * @param tokens 分词结果容器
      * 算法步骤：
-     * 1. 初始化概率矩阵v和路径记录
-     * 2. 前向传播计算最大概率路径
+     * 1. 初始化第一个字符各状态的概率
+     * 2. 前向传播计算最大概率路径（只保留上一列概率，回溯指针按字节保存）
      * 3. 反向回溯获取最优状态序列
      * 4. 根据状态序列切分词语
+     * 内存：每个字符4字节回溯指针，长文本不再产生逐字符的Map和Node对象
      */
     public void viterbi(String sentence, List<String> tokens) {
-        Vector<Map<Character, Double>> v = new Vector<>(); // 概率矩阵
-        Map<Character, Node> path = new HashMap<>();       // 路径记录
-        
+        int n = sentence.length();
+        int stateCount = states.length;
+        double[] v = new double[stateCount];          // 上一列概率
+        double[] vv = new double[stateCount];         // 当前列概率
+        byte[] back = new byte[n * stateCount];       // 回溯指针：back[i * 4 + y] 为位置i状态y的前驱状态
+
         // 初始化第一个字符的概率
-        v.add(new HashMap<>());
-        for (char state : states) {
-            Double emP = emit.get(state).getOrDefault(sentence.charAt(0), MIN_FLOAT);
-            v.get(0).put(state, start.get(state) + emP);
-            path.put(state, new Node(state, null));
+        for (int y = 0; y < stateCount; ++y) {
+            Double emP = emit.get(states[y]).getOrDefault(sentence.charAt(0), MIN_FLOAT);
+            v[y] = start.get(states[y]) + emP;
         }
-        
+
         // 前向传播计算概率
-        for (int i = 1; i < sentence.length(); ++i) {
-            Map<Character, Double> vv = new HashMap<Character, Double>();
-            v.add(vv);
-            Map<Character, Node> newPath = new HashMap<Character, Node>();
-            for (char y : states) {
-                Double emp = emit.get(y).get(sentence.charAt(i));
+        for (int i = 1; i < n; ++i) {
+            Character ch = sentence.charAt(i);
+            for (int y = 0; y < stateCount; ++y) {
+                Double emp = emit.get(states[y]).get(ch);
                 if (emp == null)
                     emp = MIN_FLOAT;
-                Pair<Character> candidate = null;
-                for (char y0 : prevStatus.get(y)) {
-                    Double tranp = trans.get(y0).get(y);
-                    if (null == tranp)
-                        tranp = MIN_FLOAT;
-                    tranp += (emp + v.get(i - 1).get(y0));
-                    if (null == candidate)
-                        candidate = new Pair<Character>(y0, tranp);
-                    else if (candidate.freq <= tranp) {
-                        candidate.freq = tranp;
-                        candidate.key = y0;
+                int candidate = -1;
+                double freq = 0.0;
+                for (int y0 : prevIndex[y]) {
+                    double tranp = transProb[y0][y];
+                    tranp += (emp + v[y0]);
+                    if (candidate < 0 || freq <= tranp) {
+                        freq = tranp;
+                        candidate = y0;
                     }
                 }
-                vv.put(y, candidate.freq);
-                newPath.put(y, new Node(y, path.get(candidate.key)));
+                vv[y] = freq;
+                back[i * stateCount + y] = (byte) candidate;
             }
-            path = newPath;
+            double[] tmp = v;
+            v = vv;
+            vv = tmp;
         }
-        
-        // 回溯获取最优路径
-        Vector<Character> posList = new Vector<>(sentence.length());
-        double probE = v.get(sentence.length() - 1).get('E');
-        double probS = v.get(sentence.length() - 1).get('S');
-        Node win;
-        if (probE < probS)
-            win = path.get('S');
-        else
-            win = path.get('E');
 
-        while (win != null) {
-            posList.add(win.value);
-            win = win.parent;
+        // 回溯获取最优路径
+        byte[] posList = new byte[n];
+        int win = v[E] < v[S] ? S : E;
+        for (int i = n - 1; i >= 0; --i) {
+            posList[i] = (byte) win;
+            win = back[i * stateCount + win];
         }
-        Collections.reverse(posList);
-        
+
         // 根据状态序列切分词语
         int begin = 0, next = 0;
-        for (int i = 0; i < sentence.length(); ++i) {
-            char pos = posList.get(i);
+        for (int i = 0; i < n; ++i) {
+            char pos = states[posList[i]];
             if (pos == 'B') begin = i;          // 记录词首位置
             else if (pos == 'E') {              // 遇到词尾，切分词语
                 tokens.add(sentence.substring(begin, i + 1));
@@ -241,22 +250,8 @@ public class FinalSeg {
             }
         }
         // 处理剩余字符
-        if (next < sentence.length()) {
+        if (next < n) {
             tokens.add(sentence.substring(next));
         }
     }
-
-    private void processOtherUnknownWords(String other, List<String> tokens) {
-        Matcher mat = CharacterUtil.reSkip.matcher(other);
-        int offset = 0;
-        while (mat.find()) {
-            if (mat.start() > offset) {
-                tokens.add(other.substring(offset, mat.start()));
-            }
-            tokens.add(mat.group());
-            offset = mat.end();
-        }
-        if (offset < other.length())
-            tokens.add(other.substring(offset));
-    }
 }
@@ -0,0 +1,738 @@
+package com.qianxinyao.analysis.jieba.keyword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.Log;
+
+/**
+ * 语料IDF字典构建器
+ * 功能：
+ * 1. 流式读取大规模文档集合（目录下每个文件为一篇文档，或每行一篇文档）
+ * 2. 多线程并行分词并统计文档频率DF
+ * 3. 输出TFIDFAnalyzer可直接加载的idf_dict文本，以及可内存映射的二进制格式
+ *
+ * 实现要点：
+ * - 读取线程与分词线程之间使用有界队列，内存占用与语料规模无关
+ * - 每个分词线程先在本地原生数组哈希表中按批次累计DF，再按分区加锁合并
+ * - 全局DF按词哈希分区存储，单个分区超过容量上限时排序后溢写到磁盘
+ * - 结束时对每个分区的溢写文件做多路归并，计算 IDF = ln(文档总数 / DF)
+ */
+public class IDFBuilder
+{
+	// 文档批次结束标记
+	private static final List<String> POISON = new ArrayList<>();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean lineDelimited = false;
+	private int minDocFreq = 1;
+	private int maxTermsInMemory = 4000000;
+	private int partitions = 64;
+	private int batchSize = 256;
+	private Path tempDir;
+	private JiebaSegmenter segmenter = new JiebaSegmenter();
+
+	/**
+	 * 分词线程数（默认CPU核数）
+	 */
+	public IDFBuilder threads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * 是否按行切分文档（默认false，即每个文件为一篇文档）
+	 */
+	public IDFBuilder lineDelimited(boolean lineDelimited) {
+		this.lineDelimited = lineDelimited;
+		return this;
+	}
+
+	/**
+	 * 最小文档频率，低于该值的词不写入IDF字典（默认1）
+	 */
+	public IDFBuilder minDocFreq(int minDocFreq) {
+		this.minDocFreq = Math.max(1, minDocFreq);
+		return this;
+	}
+
+	/**
+	 * 内存中保留的最大词条数，超过后按分区溢写到磁盘（默认400万）
+	 */
+	public IDFBuilder maxTermsInMemory(int maxTermsInMemory) {
+		this.maxTermsInMemory = Math.max(1024, maxTermsInMemory);
+		return this;
+	}
+
+	/**
+	 * DF计数分区数（向上取整为2的幂，默认64）
+	 */
+	public IDFBuilder partitions(int partitions) {
+		int p = 1;
+		while (p < partitions) {
+			p <<= 1;
+		}
+		this.partitions = p;
+		return this;
+	}
+
+	/**
+	 * 溢写文件目录（默认系统临时目录）
+	 */
+	public IDFBuilder tempDir(Path tempDir) {
+		this.tempDir = tempDir;
+		return this;
+	}
+
+	/**
+	 * 指定分词器（默认新建JiebaSegmenter）
+	 */
+	public IDFBuilder segmenter(JiebaSegmenter segmenter) {
+		this.segmenter = segmenter;
+		return this;
+	}
+
+	/**
+	 * 从目录或文件构建IDF字典
+	 * @param corpus 语料目录或文件（目录会递归遍历）
+	 * @param output IDF文本字典输出路径
+	 * @param compiledOutput 二进制字典输出路径（为null时不输出）
+	 * @return 处理的文档数
+	 */
+	public long build(Path corpus, Path output, Path compiledOutput) throws IOException {
+		try (CorpusReader reader = new CorpusReader(corpus, lineDelimited)) {
+			return build(reader, output, compiledOutput);
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * 从文档迭代器构建IDF字典
+	 * @param documents 文档迭代器（仅在调用线程中消费）
+	 * @param output IDF文本字典输出路径
+	 * @param compiledOutput 二进制字典输出路径（为null时不输出）
+	 * @return 处理的文档数
+	 */
+	public long build(Iterator<String> documents, Path output, Path compiledOutput) throws IOException {
+		long s = System.currentTimeMillis();
+		Path spillDir = tempDir == null ? Files.createTempDirectory("jieba-idf")
+				: Files.createTempDirectory(tempDir, "jieba-idf");
+		// 文档迭代器、分词线程或归并任一环节出错，都要删除溢写目录
+		try {
+			Partition[] shards = new Partition[partitions];
+			int shardLimit = Math.max(256, maxTermsInMemory / partitions);
+			for (int i = 0; i < partitions; i++) {
+				shards[i] = new Partition(spillDir, i, shardLimit);
+			}
+
+			BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(threads * 4);
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			List<Future<Long>> futures = new ArrayList<>(threads);
+			for (int t = 0; t < threads; t++) {
+				futures.add(pool.submit(() -> runWorker(queue, shards, failure)));
+			}
+
+			long docCount = 0;
+			try {
+				List<String> batch = new ArrayList<>(batchSize);
+				while (documents.hasNext() && failure.get() == null) {
+					batch.add(documents.next());
+					if (batch.size() == batchSize) {
+						queue.put(batch);
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+				if (!batch.isEmpty()) {
+					queue.put(batch);
+				}
+				for (int t = 0; t < threads; t++) {
+					queue.put(POISON);
+				}
+				for (Future<Long> future : futures) {
+					docCount += future.get();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("idf build interrupted", e);
+			}
+			catch (ExecutionException e) {
+				failure.compareAndSet(null, e.getCause());
+			}
+			finally {
+				pool.shutdownNow();
+			}
+			if (failure.get() != null) {
+				throw new IOException("idf build failure", failure.get());
+			}
+
+			int terms = merge(shards, docCount, output, compiledOutput, spillDir);
+			Log.debug(String.format(Locale.getDefault(), "idf dict build finished, docs:%d, terms:%d, time elapsed:%dms",
+					docCount, terms, System.currentTimeMillis() - s));
+			return docCount;
+		}
+		finally {
+			deleteQuietly(spillDir);
+		}
+	}
+
+	/**
+	 * 分词线程主循环：按批次统计文档频率并合并到全局分区
+	 */
+	private long runWorker(BlockingQueue<List<String>> queue, Partition[] shards, AtomicReference<Throwable> failure)
+			throws InterruptedException {
+		LocalCounts local = new LocalCounts(partitions);
+		long docs = 0;
+		while (true) {
+			List<String> batch = queue.take();
+			if (batch == POISON) {
+				return docs;
+			}
+			// 出错后继续消费队列，避免读取线程阻塞
+			if (failure.get() != null) {
+				continue;
+			}
+			try {
+				for (String doc : batch) {
+					local.nextDocument();
+					if (doc != null && !doc.isEmpty()) {
+						for (String term : segmenter.sentenceProcess(doc)) {
+							if (TFIDFAnalyzer.isIndexable(term)) {
+								local.add(term);
+							}
+						}
+					}
+					docs++;
+				}
+				local.flushTo(shards);
+			}
+			catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+
+	/**
+	 * 归并各分区（内存部分与溢写文件），输出IDF字典
+	 * 二进制字典同样边归并边写出（经溢写目录中转），不在内存中收集词条
+	 * @return 写出的词条数
+	 */
+	private int merge(Partition[] shards, long docCount, Path output, Path compiledOutput, Path spillDir)
+			throws IOException {
+		int n = 0;
+		try (BufferedWriter writer = new BufferedWriter(
+				Files.newBufferedWriter(output, StandardCharsets.UTF_8), 1 << 16);
+				IdfTable.CompiledWriter compiled = compiledOutput == null ? null
+						: new IdfTable.CompiledWriter(compiledOutput, spillDir)) {
+			for (Partition shard : shards) {
+				try (RunMerger merger = shard.merger()) {
+					while (merger.next()) {
+						if (merger.count < minDocFreq) {
+							continue;
+						}
+						double idf = Math.log((double) docCount / merger.count);
+						writer.write(merger.word);
+						writer.write(' ');
+						writer.write(String.valueOf(idf));
+						writer.newLine();
+						if (compiled != null) {
+							compiled.add(merger.word, idf);
+						}
+						n++;
+					}
+				}
+			}
+			if (compiled != null) {
+				compiled.finish();
+			}
+		}
+		return n;
+	}
+
+	private static int hash(String word) {
+		int h = word.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static void deleteQuietly(Path dir) {
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(dir);
+		}
+		catch (IOException e) {
+			Log.error(String.format(Locale.getDefault(), "%s: delete temp files failure!", dir));
+		}
+	}
+
+	/**
+	 * 分词线程本地计数表（开放寻址，原生数组）
+	 * 每个槽位记录最后一次出现的文档序号，同一文档内重复出现的词只计一次
+	 */
+	private static final class LocalCounts
+	{
+		private final int partitionMask;
+		private String[] keys = new String[1 << 14];
+		private int[] counts = new int[1 << 14];
+		private int[] lastDoc = new int[1 << 14];
+		private int size;
+		private int doc;
+
+		LocalCounts(int partitions) {
+			this.partitionMask = partitions - 1;
+		}
+
+		void nextDocument() {
+			doc++;
+		}
+
+		void add(String word) {
+			int mask = keys.length - 1;
+			int slot = hash(word) & mask;
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (key.equals(word)) {
+					if (lastDoc[slot] != doc) {
+						lastDoc[slot] = doc;
+						counts[slot]++;
+					}
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = word;
+			counts[slot] = 1;
+			lastDoc[slot] = doc;
+			if (++size * 2 > keys.length) {
+				rehash();
+			}
+		}
+
+		private void rehash() {
+			String[] oldKeys = keys;
+			int[] oldCounts = counts;
+			int[] oldLast = lastDoc;
+			keys = new String[oldKeys.length << 1];
+			counts = new int[keys.length];
+			lastDoc = new int[keys.length];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int slot = hash(oldKeys[i]) & mask;
+					while (keys[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+					lastDoc[slot] = oldLast[i];
+				}
+			}
+		}
+
+		/**
+		 * 按分区分组后合并到全局计数（每个分区只加锁一次），然后清空本地表
+		 */
+		void flushTo(Partition[] shards) throws IOException {
+			if (size == 0) {
+				return;
+			}
+			int[] start = new int[shards.length + 1];
+			for (String key : keys) {
+				if (key != null) {
+					start[(hash(key) >>> 16 & partitionMask) + 1]++;
+				}
+			}
+			for (int p = 0; p < shards.length; p++) {
+				start[p + 1] += start[p];
+			}
+			int[] order = new int[size];
+			int[] fill = Arrays.copyOf(start, shards.length);
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					order[fill[hash(keys[i]) >>> 16 & partitionMask]++] = i;
+				}
+			}
+			for (int p = 0; p < shards.length; p++) {
+				if (start[p] < start[p + 1]) {
+					shards[p].addAll(keys, counts, order, start[p], start[p + 1]);
+				}
+			}
+			Arrays.fill(keys, null);
+			size = 0;
+		}
+	}
+
+	/**
+	 * 全局DF计数分区
+	 * 功能：
+	 * 1. 开放寻址原生数组哈希表保存 词 -> DF
+	 * 2. 词条数超过上限时，按词排序后溢写为一个有序run文件并清空
+	 */
+	private static final class Partition
+	{
+		private final Path dir;
+		private final int id;
+		private final int limit;
+		private final List<Path> runs = new ArrayList<>();
+		private String[] keys;
+		private int[] counts;
+		private int size;
+
+		Partition(Path dir, int id, int limit) {
+			this.dir = dir;
+			this.id = id;
+			this.limit = limit;
+			this.keys = new String[64];
+			this.counts = new int[64];
+		}
+
+		synchronized void addAll(String[] words, int[] wordCounts, int[] order, int from, int to) throws IOException {
+			for (int i = from; i < to; i++) {
+				int idx = order[i];
+				add(words[idx], wordCounts[idx]);
+			}
+			if (size > limit) {
+				spill();
+			}
+		}
+
+		private void add(String word, int count) {
+			int mask = keys.length - 1;
+			int slot = hash(word) & mask;
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (key.equals(word)) {
+					counts[slot] += count;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = word;
+			counts[slot] = count;
+			if (++size * 2 > keys.length) {
+				rehash();
+			}
+		}
+
+		private void rehash() {
+			String[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new String[oldKeys.length << 1];
+			counts = new int[keys.length];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int slot = hash(oldKeys[i]) & mask;
+					while (keys[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+		/**
+		 * 取出按词排序的内存条目
+		 * @param sortedCounts 与返回数组同下标的DF
+		 */
+		private String[] sortedEntries(int[][] sortedCounts) {
+			String[] words = new String[size];
+			int n = 0;
+			for (String key : keys) {
+				if (key != null) {
+					words[n++] = key;
+				}
+			}
+			Arrays.sort(words);
+			int[] result = new int[size];
+			int mask = keys.length - 1;
+			for (int i = 0; i < n; i++) {
+				int slot = hash(words[i]) & mask;
+				while (!keys[slot].equals(words[i])) {
+					slot = (slot + 1) & mask;
+				}
+				result[i] = counts[slot];
+			}
+			sortedCounts[0] = result;
+			return words;
+		}
+
+		private void spill() throws IOException {
+			int[][] holder = new int[1][];
+			String[] words = sortedEntries(holder);
+			int[] sorted = holder[0];
+			Path run = dir.resolve(String.format(Locale.ROOT, "part-%03d-%05d.run", id, runs.size()));
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+				for (int i = 0; i < words.length; i++) {
+					// 按长度前缀的UTF-8写出（writeUTF限64KB，长的非中文片段也可能成词）
+					byte[] bytes = words[i].getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+					out.writeInt(sorted[i]);
+				}
+			}
+			runs.add(run);
+			keys = new String[64];
+			counts = new int[64];
+			size = 0;
+		}
+
+		RunMerger merger() throws IOException {
+			int[][] holder = new int[1][];
+			String[] words = sortedEntries(holder);
+			keys = null;
+			counts = null;
+			return new RunMerger(runs, words, holder[0]);
+		}
+	}
+
+	/**
+	 * 多路归并：内存有序条目 + 若干有序run文件，相同词的DF累加
+	 */
+	private static final class RunMerger implements Closeable
+	{
+		private final PriorityQueue<Cursor> heap = new PriorityQueue<>();
+		private final List<Cursor> cursors = new ArrayList<>();
+		String word;
+		long count;
+
+		RunMerger(List<Path> runs, String[] words, int[] counts) throws IOException {
+			try {
+				for (Path run : runs) {
+					cursors.add(new Cursor(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16))));
+				}
+			}
+			catch (IOException e) {
+				close();
+				throw e;
+			}
+			cursors.add(new Cursor(words, counts));
+			for (Cursor cursor : cursors) {
+				if (cursor.advance()) {
+					heap.add(cursor);
+				}
+			}
+		}
+
+		boolean next() throws IOException {
+			Cursor top = heap.poll();
+			if (top == null) {
+				return false;
+			}
+			word = top.word;
+			count = top.count;
+			if (top.advance()) {
+				heap.add(top);
+			}
+			while (!heap.isEmpty() && heap.peek().word.equals(word)) {
+				Cursor same = heap.poll();
+				count += same.count;
+				if (same.advance()) {
+					heap.add(same);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (Cursor cursor : cursors) {
+				if (cursor.in != null) {
+					cursor.in.close();
+				}
+			}
+		}
+	}
+
+	private static final class Cursor implements Comparable<Cursor>
+	{
+		final DataInputStream in;
+		final String[] words;
+		final int[] counts;
+		int index = -1;
+		String word;
+		int count;
+
+		Cursor(DataInputStream in) {
+			this.in = in;
+			this.words = null;
+			this.counts = null;
+		}
+
+		Cursor(String[] words, int[] counts) {
+			this.in = null;
+			this.words = words;
+			this.counts = counts;
+		}
+
+		boolean advance() throws IOException {
+			if (in == null) {
+				if (++index >= words.length) {
+					return false;
+				}
+				word = words[index];
+				count = counts[index];
+				return true;
+			}
+			int length;
+			try {
+				length = in.readInt();
+			}
+			catch (EOFException e) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			word = new String(bytes, StandardCharsets.UTF_8);
+			count = in.readInt();
+			return true;
+		}
+
+		@Override
+		public int compareTo(Cursor o) {
+			return word.compareTo(o.word);
+		}
+	}
+
+	/**
+	 * 语料读取器：递归遍历目录，按文件或按行产出文档
+	 */
+	private static final class CorpusReader implements Iterator<String>, Closeable
+	{
+		private final Iterator<Path> files;
+		private final Stream<Path> walk;
+		private final boolean lineDelimited;
+		private BufferedReader reader;
+		private String next;
+
+		CorpusReader(Path corpus, boolean lineDelimited) throws IOException {
+			this.walk = Files.walk(corpus);
+			this.files = walk.filter(Files::isRegularFile).sorted().iterator();
+			this.lineDelimited = lineDelimited;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			try {
+				next = read();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return next != null;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String doc = next;
+			next = null;
+			return doc;
+		}
+
+		private String read() throws IOException {
+			while (true) {
+				if (lineDelimited && reader != null) {
+					String line = reader.readLine();
+					if (line != null) {
+						return line;
+					}
+					reader.close();
+					reader = null;
+				}
+				if (!files.hasNext()) {
+					return null;
+				}
+				Path file = files.next();
+				if (lineDelimited) {
+					reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+				}
+				else {
+					return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (reader != null) {
+				reader.close();
+			}
+			walk.close();
+		}
+	}
+
+	/**
+	 * 命令行入口
+	 * 用法：IDFBuilder [-threads N] [-lines] [-minDf N] [-maxTerms N] &lt;语料路径&gt; &lt;idf_dict.txt&gt; [idf_dict.bin]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		IDFBuilder builder = new IDFBuilder();
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-threads":
+					builder.threads(Integer.parseInt(args[++i]));
+					break;
+				case "-lines":
+					builder.lineDelimited(true);
+					break;
+				case "-minDf":
+					builder.minDocFreq(Integer.parseInt(args[++i]));
+					break;
+				case "-maxTerms":
+					builder.maxTermsInMemory(Integer.parseInt(args[++i]));
+					break;
+				default:
+					paths.add(args[i]);
+			}
+		}
+		if (paths.size() < 2) {
+			System.err.println("usage: IDFBuilder [-threads N] [-lines] [-minDf N] [-maxTerms N] <corpus> <idf_dict.txt> [idf_dict.bin]");
+			return;
+		}
+		long docs = builder.build(Paths.get(paths.get(0)), Paths.get(paths.get(1)),
+				paths.size() > 2 ? Paths.get(paths.get(2)) : null);
+		System.out.println(String.format(Locale.getDefault(), "%d documents processed", docs));
+	}
+}
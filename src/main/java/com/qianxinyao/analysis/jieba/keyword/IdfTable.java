@@ -0,0 +1,359 @@
+package com.qianxinyao.analysis.jieba.keyword;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.huaban.analysis.jieba.WordDictionary;
+
+/**
+ * 只读IDF词表（开放寻址哈希）
+ * 功能：
+ * 1. 以原生数组保存 词 -> IDF值，避免HashMap<String,Double>的装箱开销
+ * 2. 停用词以标志位形式与IDF值存放在同一槽位，一次查找即可得到两者
+ * 3. 构建完成后不可变，可在多线程间安全共享
+ * 4. 支持编译后的二进制格式，通过内存映射快速加载
+ * 5. 可按WordDictionary的词语id直接索引（wordIdSlots），词典词无需再按字符串查找
+ *
+ * 存储结构：
+ * - keys：词语数组（线性探测，容量为2的幂）
+ * - idfs：与keys同下标的IDF值
+ * - flags：与keys同下标的标志位（FLAG_STOP_WORD等）
+ */
+final class IdfTable {
+    // 停用词标志位
+    static final byte FLAG_STOP_WORD = 0x01;
+    // 该词存在于IDF字典中（仅为停用词的条目没有此标志）
+    static final byte FLAG_HAS_IDF = 0x02;
+
+    // 二进制字典文件标识（"JIDF"）及版本
+    private static final int MAGIC = 0x4A494446;
+    private static final int VERSION = 1;
+
+    private final String[] keys;
+    private final double[] idfs;
+    private final byte[] flags;
+    private final int mask;
+    private final int size;
+    // IDF中位数（用于处理未登录词）
+    private final double median;
+    // 按词语id索引的槽位表（由词表内容派生，词典版本变化后重建）
+    private volatile WordIdSlots wordIdSlots;
+
+    /**
+     * 由IDF字典和停用词集合构建词表
+     * @param idfMap IDF字典（词 -> IDF值）
+     * @param stopWords 停用词集合
+     */
+    IdfTable(Map<String, Double> idfMap, Set<String> stopWords) {
+        this(idfMap.keySet().toArray(new String[0]), toArray(idfMap.values()), idfMap.size(), Double.NaN, stopWords);
+    }
+
+    /**
+     * 由词语数组和IDF数组构建词表
+     * @param words 词语数组
+     * @param values 与words同下标的IDF值
+     * @param n 有效条目数
+     * @param median IDF中位数，传入NaN时自动计算
+     * @param stopWords 停用词集合
+     */
+    IdfTable(String[] words, double[] values, int n, double median, Set<String> stopWords) {
+        int expected = n + stopWords.size();
+        int capacity = 16;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.idfs = new double[capacity];
+        this.flags = new byte[capacity];
+        this.mask = capacity - 1;
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int slot = insert(words[i]);
+            if (keys[slot] == null) {
+                keys[slot] = words[i];
+                count++;
+            }
+            idfs[slot] = values[i];
+            flags[slot] |= FLAG_HAS_IDF;
+        }
+        for (String word : stopWords) {
+            int slot = insert(word);
+            if (keys[slot] == null) {
+                keys[slot] = word;
+                count++;
+            }
+            flags[slot] |= FLAG_STOP_WORD;
+        }
+        this.size = count;
+        this.median = Double.isNaN(median) ? median(values, n) : median;
+
+        // 仅为停用词的条目使用中位数，保证idf()对任意槽位都有意义
+        for (int i = 0; i < capacity; i++) {
+            if (keys[i] != null && (flags[i] & FLAG_HAS_IDF) == 0) {
+                idfs[i] = this.median;
+            }
+        }
+    }
+
+    private static double[] toArray(Collection<Double> values) {
+        double[] result = new double[values.size()];
+        int i = 0;
+        for (Double value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    /**
+     * 计算IDF值的中位数（不修改原数组）
+     */
+    static double median(double[] values, int n) {
+        if (n == 0) {
+            return 0.0;
+        }
+        double[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        return sorted[n / 2];
+    }
+
+    private int insert(String word) {
+        int slot = hash(word) & mask;
+        while (keys[slot] != null && !keys[slot].equals(word)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 查找词语所在槽位
+     * @param word 词语
+     * @return 槽位下标，不存在时返回-1
+     */
+    int slot(String word) {
+        int slot = hash(word) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.equals(word)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 判断槽位对应的词是否为停用词
+     */
+    boolean isStopWord(int slot) {
+        return slot >= 0 && (flags[slot] & FLAG_STOP_WORD) != 0;
+    }
+
+    /**
+     * 获取槽位对应的IDF值，槽位无效时返回中位数
+     */
+    double idf(int slot) {
+        return slot >= 0 ? idfs[slot] : median;
+    }
+
+    /**
+     * 获取词语的IDF值（未登录词使用中位数）
+     */
+    double idf(String word) {
+        return idf(slot(word));
+    }
+
+    /**
+     * 编译后的二进制IDF字典写出器
+     * 文件格式（大端序）：
+     * - 头部：MAGIC(int) + VERSION(int) + 条目数n(int) + 中位数(double)
+     * - 词语偏移：int[n+1]（以char计）
+     * - IDF值：double[n]
+     * - 词语字符：char[]
+     *
+     * 逐条写入：偏移、IDF值、字符三段先写到临时文件，finish时写出头部再依次拼接；
+     * 中位数由 IDF值 -> 条目数 的直方图求得（不同IDF值的个数远少于词条数），内存占用与词条数无关
+     */
+    static final class CompiledWriter implements Closeable {
+        private final Path path;
+        private final Path[] parts = new Path[3];
+        private final DataOutputStream[] outs = new DataOutputStream[3];
+        private final TreeMap<Double, int[]> histogram = new TreeMap<>();
+        private int n;
+        private int offset;
+
+        /**
+         * @param path 输出文件
+         * @param scratchDir 临时文件目录
+         */
+        CompiledWriter(Path path, Path scratchDir) throws IOException {
+            this.path = path;
+            try {
+                for (int i = 0; i < parts.length; i++) {
+                    parts[i] = Files.createTempFile(scratchDir, "idf-compiled", ".part");
+                    outs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(parts[i]), 1 << 16));
+                }
+            }
+            catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void add(String word, double value) throws IOException {
+            offset += word.length();
+            outs[0].writeInt(offset);
+            outs[1].writeDouble(value);
+            outs[2].writeChars(word);
+            histogram.computeIfAbsent(value, k -> new int[1])[0]++;
+            n++;
+        }
+
+        /**
+         * 写出完整的字典文件
+         */
+        void finish() throws IOException {
+            for (DataOutputStream out : outs) {
+                out.close();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                out.writeDouble(median());
+                out.writeInt(0);
+                for (Path part : parts) {
+                    Files.copy(part, out);
+                }
+            }
+        }
+
+        // 与median(values, n)一致：升序排列后下标为n/2的值
+        private double median() {
+            int remaining = n / 2;
+            for (Map.Entry<Double, int[]> entry : histogram.entrySet()) {
+                remaining -= entry.getValue()[0];
+                if (remaining < 0) {
+                    return entry.getKey();
+                }
+            }
+            return 0.0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (int i = 0; i < parts.length; i++) {
+                if (outs[i] != null) {
+                    outs[i].close();
+                }
+                if (parts[i] != null) {
+                    Files.deleteIfExists(parts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断文件是否为编译后的二进制IDF字典
+     */
+    static boolean isCompiled(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        }
+        catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 以内存映射方式读取编译后的二进制IDF字典
+     * 数值与字符均为批量拷贝，无需逐行解析文本
+     * @param path 二进制字典文件
+     * @param stopWords 停用词集合
+     * @return IDF词表
+     */
+    static IdfTable readCompiled(Path path, Set<String> stopWords) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(path + ": not a compiled idf dict");
+            }
+            int n = buffer.getInt();
+            double median = buffer.getDouble();
+            int[] offsets = new int[n + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+            double[] values = new double[n];
+            buffer.asDoubleBuffer().get(values);
+            buffer.position(buffer.position() + n * 8);
+            char[] chars = new char[offsets[n]];
+            buffer.asCharBuffer().get(chars);
+
+            String[] words = new String[n];
+            for (int i = 0; i < n; i++) {
+                words[i] = new String(chars, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+            return new IdfTable(words, values, n, median, stopWords);
+        }
+    }
+
+    /**
+     * 按词典词语id索引的槽位表，首次使用及词典版本变化后重建（约每十万词数毫秒）
+     * @param dictionary 词典
+     * @return slots[词语id]为该词在本表中的槽位，不在本表中为-1
+     */
+    int[] wordIdSlots(WordDictionary dictionary) {
+        WordIdSlots cached = wordIdSlots;
+        long version = dictionary.getVersion();
+        int count = dictionary.getWordIdCount();
+        if (cached == null || cached.version != version || cached.slots.length != count) {
+            int[] slots = new int[count];
+            for (int id = 0; id < count; id++) {
+                slots[id] = slot(dictionary.getWord(id));
+            }
+            cached = new WordIdSlots(version, slots);
+            wordIdSlots = cached;
+        }
+        return cached.slots;
+    }
+
+    /**
+     * 词典版本及对应的槽位表
+     */
+    private static final class WordIdSlots {
+        final long version;
+        final int[] slots;
+
+        WordIdSlots(long version, int[] slots) {
+            this.version = version;
+            this.slots = slots;
+        }
+    }
+
+    double median() {
+        return median;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -35,7 +35,7 @@ public class Keyword implements Comparable<Keyword> {
      * 设置TF-IDF值（自动保留4位小数）
      */
     public void setTfidfvalue(double tfidfvalue) {
-        this.tfidfvalue = (double) Math.round(tfidfvalue * 10000) / 10000;
+        this.tfidfvalue = round(tfidfvalue);
     }
 
     /**
@@ -59,7 +59,14 @@ public class Keyword implements Comparable<Keyword> {
      */
     public Keyword(String name, double tfidfvalue) {
         this.name = name;
-        this.tfidfvalue = (double) Math.round(tfidfvalue * 10000) / 10000;
+        this.tfidfvalue = round(tfidfvalue);
+    }
+
+    /**
+     * 权重取整规则（保留4位小数），供堆筛选时在创建对象前比较
+     */
+    static double round(double value) {
+        return (double) Math.round(value * 10000) / 10000;
     }
 
     /**
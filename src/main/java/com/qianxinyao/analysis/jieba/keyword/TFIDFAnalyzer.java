@@ -1,15 +1,32 @@
 package com.qianxinyao.analysis.jieba.keyword;
 
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
+import com.huaban.analysis.jieba.CharacterUtil;
 import com.huaban.analysis.jieba.JiebaSegmenter;
+import com.huaban.analysis.jieba.Log;
+import com.huaban.analysis.jieba.WordDictionary;
+import com.huaban.analysis.jieba.WordIdTokens;
 
 /**
  * @author Tom Qian
@@ -31,102 +48,272 @@ import com.huaban.analysis.jieba.JiebaSegmenter;
  *    - 计算词频TF（Term Frequency）
  *    - 结合IDF值计算TF-IDF权重
  * 4. 结果处理：
+ *    - 使用有界堆筛选topN个关键词
  *    - 按TF-IDF值降序排序
- *    - 截取topN个关键词
+ * 
+ * 线程安全：
+ *    实例构建后不可变，可在多线程间共享；推荐通过builder()一次性构建
+ *    每个线程持有一份可复用的词语索引，词频统计为按id的数组自增
+ *    词典词直接使用WordDictionary的词语id，IDF值按词语id查槽位表，不再按字符串查找
+ *    analyzeBatch/analyzeStream在线程池中并行处理多篇文档
  */
 public class TFIDFAnalyzer
 {
-	// IDF值字典（词 -> IDF值）
-	static HashMap<String,Double> idfMap;
-	// 停用词集合
-	static HashSet<String> stopWordsSet;
-	// IDF中位数值（用于处理未登录词）
-	static double idfMedian;
+	// 默认停用词表
+	private static final String STOP_WORDS = "/stop_words.txt";
+	// 默认IDF字典
+	private static final String IDF_DICT = "/idf_dict.txt";
+	// 默认批量分析并行度
+	private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+	// 词语索引中停用词的标记
+	private static final int STOP_WORD = -2;
+	
+	// IDF词表（含停用词标志，构建后只读）
+	private final IdfTable idfTable;
+	// 分词器（无状态，可在线程间共享）
+	private final JiebaSegmenter segmenter;
+	// 批量分析使用的线程池及并行度
+	private final Executor executor;
+	private final int parallelism;
+	// 线程私有的词语索引，处理多篇文档时复用
+	private final ThreadLocal<TermIndex> workspaces=ThreadLocal.withInitial(TermIndex::new);
+	// 线程私有的分词结果缓冲区（词语id形式），处理多篇文档时复用
+	private final ThreadLocal<WordIdTokens> idTokens=ThreadLocal.withInitial(WordIdTokens::new);
+	
+	/**
+	 * 使用内置停用词表和IDF字典构建分析器
+	 * 内置资源只加载一次，所有默认实例共享同一份词表
+	 */
+	public TFIDFAnalyzer() {
+		this(DefaultTable.INSTANCE, new JiebaSegmenter(), ForkJoinPool.commonPool(), DEFAULT_PARALLELISM);
+	}
+	
+	private TFIDFAnalyzer(IdfTable idfTable, JiebaSegmenter segmenter, Executor executor, int parallelism) {
+		this.idfTable = idfTable;
+		this.segmenter = segmenter;
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
 	
 	/**
-	 * 核心分析方法
+	 * 创建分析器构建器
+	 * @return 构建器（未指定的资源使用内置默认值）
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * 核心分析方法（线程安全）
 	 * @param content 待分析文本
 	 * @param topN 返回关键词数量
 	 * @return 关键词列表（按TF-IDF降序）
 	 * 
 	 * 实现步骤：
-	 * 1. 初始化资源（首次运行时加载）
-	 * 2. 计算TF值
-	 * 3. 计算TF-IDF值（未登录词使用IDF中位数）
-	 * 4. 排序并截取topN结果
+	 * 1. 计算TF值（在线程私有的词语索引中按id计数）
+	 * 2. 计算TF-IDF值（未登录词使用IDF中位数）
+	 * 3. 使用容量为topN的小顶堆筛选结果，最后只对topN个元素排序
 	 */
 	public List<Keyword> analyze(String content,int topN){
-		List<Keyword> keywordList=new ArrayList<>();
-		
-		if(stopWordsSet==null) {
-			stopWordsSet=new HashSet<>();
-			loadStopWords(stopWordsSet, this.getClass().getResourceAsStream("/stop_words.txt"));
-		}
-		if(idfMap==null) {
-			idfMap=new HashMap<>();
-			loadIDFMap(idfMap, this.getClass().getResourceAsStream("/idf_dict.txt"));
+		if(topN<=0) {
+			return new ArrayList<>();
 		}
 		
-		Map<String, Double> tfMap=getTF(content);
-		for(String word:tfMap.keySet()) {
-			// 若该词不在idf文档中，则使用平均的idf值(可能定期需要对新出现的网络词语进行纳入)
-			if(idfMap.containsKey(word)) {
-				keywordList.add(new Keyword(word,idfMap.get(word)*tfMap.get(word)));
-			}else
-				keywordList.add(new Keyword(word,idfMedian*tfMap.get(word)));
+		TermIndex terms=workspaces.get();
+		terms.reset();
+		int wordSum=countTerms(content, terms);
+		
+		// 小顶堆：堆顶为当前topN中权重最小的关键词
+		PriorityQueue<Keyword> heap=new PriorityQueue<>(Math.min(topN, Math.max(terms.size, 1)), Collections.reverseOrder());
+		for(int id=0;id<terms.size;id++) {
+			if(terms.counts[id]==0)
+				continue;
+			// 计算double型的tf值；若该词不在idf文档中，则使用平均的idf值(可能定期需要对新出现的网络词语进行纳入)
+			double tf=terms.counts[id]*0.1/wordSum;
+			double tfidf=idfTable.idf(terms.tags[id])*tf;
+			if(heap.size()<topN) {
+				heap.add(new Keyword(terms.words[id],tfidf));
+			}else if(Keyword.round(tfidf)>heap.peek().getTfidfvalue()) {
+				heap.poll();
+				heap.add(new Keyword(terms.words[id],tfidf));
+			}
 		}
 		
+		List<Keyword> keywordList=new ArrayList<>(heap);
 		Collections.sort(keywordList);
-		
-		if(keywordList.size()>topN) {
-			int num=keywordList.size()-topN;
-			for(int i=0;i<num;i++) {
-				keywordList.remove(topN);
+		return keywordList;
+	}
+	
+	/**
+	 * 批量分析（在工作线程池中并行执行）
+	 * @param documents 文档集合
+	 * @param topN 每篇文档返回的关键词数量
+	 * @return 与输入顺序一致的关键词列表
+	 */
+	public List<List<Keyword>> analyzeBatch(Iterable<String> documents,int topN){
+		List<List<Keyword>> results=new ArrayList<>();
+		analyzeBatch(documents, topN, (index, keywords)->{
+			synchronized (results) {
+				while(results.size()<=index)
+					results.add(null);
+				results.set((int) index, keywords);
 			}
+		});
+		return results;
+	}
+	
+	/**
+	 * 批量分析，每篇文档完成后立即回调（完成顺序不保证与输入顺序一致）
+	 * 同时在途的文档数不超过并行度的若干倍，大规模语料也不会全部驻留内存
+	 * @param documents 文档集合（只在调用线程中迭代）
+	 * @param topN 每篇文档返回的关键词数量
+	 * @param handler 结果回调（在工作线程中调用，需自行保证线程安全）
+	 */
+	public void analyzeBatch(Iterable<String> documents,int topN,ResultHandler handler){
+		int permits=parallelism*4;
+		Semaphore inFlight=new Semaphore(permits);
+		AtomicReference<Throwable> failure=new AtomicReference<>();
+		long index=0;
+		try {
+			for(String document:documents) {
+				if(failure.get()!=null)
+					break;
+				inFlight.acquire();
+				final long current=index++;
+				try {
+					executor.execute(()->{
+						try {
+							handler.handle(current, analyze(document, topN));
+						}
+						catch (Throwable e) {
+							failure.compareAndSet(null, e);
+						}
+						finally {
+							inFlight.release();
+						}
+					});
+				}
+				catch (RuntimeException e) {
+					inFlight.release();
+					throw e;
+				}
+			}
+			// 等待所有在途文档完成
+			inFlight.acquire(permits);
+			inFlight.release(permits);
 		}
-		return keywordList;
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("keyword batch interrupted", e);
+		}
+		Throwable e=failure.get();
+		if(e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if(e instanceof Error)
+			throw (Error) e;
+		if(e!=null)
+			throw new IllegalStateException(e);
+	}
+	
+	/**
+	 * 流式分析：按需并行处理文档流（使用ForkJoin公共池），保持输入顺序
+	 * @param documents 文档流
+	 * @param topN 每篇文档返回的关键词数量
+	 * @return 关键词列表流
+	 */
+	public Stream<List<Keyword>> analyzeStream(Stream<String> documents,int topN){
+		return documents.parallel().map(document->analyze(document, topN));
+	}
+	
+	/**
+	 * 按词语id查询IDF值（与JiebaSegmenter.processIds输出的id一致）
+	 * @param wordId WordDictionary的词语id，未登录词（负数id）及不在IDF字典中的词返回IDF中位数
+	 * @return IDF值
+	 */
+	public double getIdf(int wordId) {
+		int[] slots=idfTable.wordIdSlots(WordDictionary.getInstance());
+		return idfTable.idf(wordId>=0 && wordId<slots.length ? slots[wordId] : -1);
+	}
+	
+	/**
+	 * 按词语id判断是否为停用词
+	 * @param wordId WordDictionary的词语id
+	 * @return 是否为停用词（未登录词返回false）
+	 */
+	public boolean isStopWord(int wordId) {
+		int[] slots=idfTable.wordIdSlots(WordDictionary.getInstance());
+		return wordId>=0 && wordId<slots.length && idfTable.isStopWord(slots[wordId]);
 	}
 	
 	/**
-	 * 计算词频TF（Term Frequency）
-	 * 公式：TF = 该词在文档中出现次数 / 文档总词数
+	 * 批量分析结果回调
+	 */
+	@FunctionalInterface
+	public interface ResultHandler
+	{
+		/**
+		 * @param index 文档在输入中的序号（从0开始）
+		 * @param keywords 该文档的关键词列表
+		 */
+		void handle(long index, List<Keyword> keywords);
+	}
+	
+	/**
+	 * 统计词频（Term Frequency）
 	 * @param content 文本内容
-	 * @return 词频字典（词 -> TF值）
+	 * @param terms 词语索引，counts为各词出现次数，tags为IDF词表槽位
+	 * @return 文档总词数（不含停用词和单字词）
 	 * 
 	 * 处理流程：
 	 * 1. 结巴分词
-	 * 2. 过滤停用词和单字词
-	 * 3. 统计词频
-	 * 4. 计算归一化TF值（乘以0.1进行缩放）
+	 * 2. 过滤停用词和单字词（每个词只在首次出现时查询IDF词表）
+	 * 3. 按词语id累加计数
 	 */
-	private Map<String, Double> getTF(String content) {
-		Map<String,Double> tfMap=new HashMap<>();
+	private int countTerms(String content, TermIndex terms) {
 		if(content==null || content.equals(""))
-			return tfMap; 
-		
-		JiebaSegmenter segmenter = new JiebaSegmenter();
-		List<String> segments=segmenter.sentenceProcess(content);
-		Map<String,Integer> freqMap=new HashMap<>();
+			return 0;
 		
+		WordDictionary dictionary=WordDictionary.getInstance();
+		int[] wordIdSlots=idfTable.wordIdSlots(dictionary);
+		terms.ensureWordIdCapacity(wordIdSlots.length);
+		// 词典词的id由分词的动态规划直接给出，不再按字符串查询词典
+		WordIdTokens segments=idTokens.get();
+		segments.clearOov();
+		segmenter.sentenceProcessIds(content, segments);
 		int wordSum=0;
-		for(String segment:segments) {
-			//停用词不予考虑，单字词不予考虑
-			if(!stopWordsSet.contains(segment) && segment.length()>1) {
+		for(int i=0;i<segments.size();i++) {
+			//单字词不予考虑
+			if(segments.end(i)-segments.start(i)<2)
+				continue;
+			// 词典词按词语id登记，未登录词按字符串登记
+			int wordId=segments.id(i);
+			boolean known=wordId>=0 && wordId<wordIdSlots.length;
+			int id=known ? terms.internWordId(wordId, dictionary.getWord(wordId)) : terms.intern(segments.word(i));
+			if(terms.tags[id]==TermIndex.UNRESOLVED) {
+				int slot=known ? wordIdSlots[wordId] : idfTable.slot(terms.words[id]);
+				// 含标点、空白的片段与IDFBuilder一样不计入（否则会取到平均IDF）
+				terms.tags[id]=!isIndexable(terms.words[id]) || idfTable.isStopWord(slot) ? STOP_WORD : slot;
+			}
+			//停用词不予考虑
+			if(terms.tags[id]!=STOP_WORD) {
 				wordSum++;
-				if(freqMap.containsKey(segment)) {
-					freqMap.put(segment,freqMap.get(segment)+1);
-				}else {
-					freqMap.put(segment, 1);
-				}
+				terms.counts[id]++;
 			}
 		}
-		
-		// 计算double型的tf值
-		for(String word:freqMap.keySet()) {
-			tfMap.put(word,freqMap.get(word)*0.1/wordSum);
+		return wordSum;
+	}
+	
+	/**
+	 * 参与统计的词（IDFBuilder统计文档频率时使用同一规则）：单字词不计入；另外排除含标点、空白的切分片段
+	 */
+	static boolean isIndexable(String term) {
+		if(term.length()<2)
+			return false;
+		for(int i=0;i<term.length();i++) {
+			if(!CharacterUtil.ccFind(CharacterUtil.regularize(term.charAt(i))))
+				return false;
 		}
-		
-		return tfMap; 
+		return true;
 	}
 	
 	/**
@@ -135,27 +322,13 @@ public class TFIDFAnalyzer
 	 * @param in 停用词表输入流
 	 * 注：使用默认结巴停用词表，包含常见无意义词汇
 	 */
-	private void loadStopWords(Set<String> set, InputStream in){
-		BufferedReader bufr;
-		try
+	private static void loadStopWords(Set<String> set, InputStream in) throws IOException {
+		try (BufferedReader bufr = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
 		{
-			bufr = new BufferedReader(new InputStreamReader(in));
 			String line=null;
 			while((line=bufr.readLine())!=null) {
 				set.add(line.trim());
 			}
-			try
-			{
-				bufr.close();
-			}
-			catch (IOException e)
-			{
-				e.printStackTrace();
-			}
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
 		}
 	}
 	
@@ -165,36 +338,176 @@ public class TFIDFAnalyzer
 	 * @param in IDF文件输入流
 	 * 说明：
 	 * - 字典格式：词语 + 空格 + IDF值
-	 * - 计算IDF中位数用于处理未登录词
 	 */
-	private void loadIDFMap(Map<String,Double> map, InputStream in ){
-		BufferedReader bufr;
-		try
+	private static void loadIDFMap(Map<String,Double> map, InputStream in) throws IOException {
+		try (BufferedReader bufr = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))
 		{
-			bufr = new BufferedReader(new InputStreamReader(in));
 			String line=null;
 			while((line=bufr.readLine())!=null) {
 				String[] kv=line.trim().split(" ");
+				if(kv.length<2)
+					continue;
 				map.put(kv[0],Double.parseDouble(kv[1]));
 			}
-			try
-			{
-				bufr.close();
-			}
-			catch (IOException e)
-			{
-				e.printStackTrace();
-			}
-			
-			// 计算idf值的中位数
-			List<Double> idfList=new ArrayList<>(map.values());
-			Collections.sort(idfList);
-			idfMedian=idfList.get(idfList.size()/2);
 		}
-		catch (Exception e)
+	}
+	
+	/**
+	 * 读取停用词表，读取失败时记录日志并返回已读取的部分
+	 * @param path 停用词表文件，为null时使用内置停用词表
+	 * @return 停用词集合
+	 */
+	static Set<String> readStopWords(Path path) {
+		Set<String> stopSet=new HashSet<>();
+		String name=path==null ? STOP_WORDS : path.toString();
+		try (InputStream in=open(path, STOP_WORDS))
 		{
-			e.printStackTrace();
+			if(in!=null)
+				loadStopWords(stopSet, in);
 		}
+		catch (IOException | RuntimeException e)
+		{
+			Log.error(String.format(Locale.getDefault(), "%s: load stop words failure!", name));
+		}
+		return stopSet;
+	}
+	
+	private static InputStream open(Path path, String resource) throws IOException {
+		if(path!=null)
+			return Files.newInputStream(path);
+		InputStream in=TFIDFAnalyzer.class.getResourceAsStream(resource);
+		if(in==null)
+			Log.error(String.format(Locale.getDefault(), "%s: resource not found!", resource));
+		return in;
+	}
+	
+	/**
+	 * 内置词表持有者（类加载机制保证只初始化一次且线程安全）
+	 */
+	private static final class DefaultTable {
+		static final IdfTable INSTANCE=builder().buildTable();
+	}
+	
+	/**
+	 * TF-IDF分析器构建器
+	 * 功能：
+	 * 1. 指定停用词表、IDF字典和分词器
+	 * 2. 一次性加载资源并生成只读词表
+	 * 
+	 * 构建得到的分析器不可变，可在多线程间共享
+	 */
+	public static final class Builder
+	{
+		private Path stopWordsPath;
+		private Path idfDictPath;
+		private Map<String, Double> idfMap;
+		private Set<String> stopWords;
+		private JiebaSegmenter segmenter;
+		private Executor executor;
+		private int parallelism=DEFAULT_PARALLELISM;
+		
+		private Builder() {
+		}
+		
+		/**
+		 * 指定停用词表文件（UTF-8，每行一个词）
+		 */
+		public Builder stopWords(Path path) {
+			this.stopWordsPath=path;
+			this.stopWords=null;
+			return this;
+		}
+		
+		/**
+		 * 直接指定停用词集合
+		 */
+		public Builder stopWords(Set<String> words) {
+			this.stopWords=new HashSet<>(words);
+			this.stopWordsPath=null;
+			return this;
+		}
+		
+		/**
+		 * 指定IDF字典文件
+		 * 支持两种格式（自动识别）：
+		 * - 文本格式：UTF-8，每行：词语 + 空格 + IDF值
+		 * - 二进制格式：由IDFBuilder编译生成，以内存映射方式加载
+		 */
+		public Builder idfDict(Path path) {
+			this.idfDictPath=path;
+			this.idfMap=null;
+			return this;
+		}
+		
+		/**
+		 * 直接指定IDF字典
+		 */
+		public Builder idfDict(Map<String, Double> idf) {
+			this.idfMap=new HashMap<>(idf);
+			this.idfDictPath=null;
+			return this;
+		}
+		
+		/**
+		 * 指定分词器（默认新建JiebaSegmenter）
+		 */
+		public Builder segmenter(JiebaSegmenter segmenter) {
+			this.segmenter=segmenter;
+			return this;
+		}
+		
+		/**
+		 * 指定批量分析使用的线程池（默认ForkJoin公共池）及其并行度
+		 * @param executor 线程池
+		 * @param parallelism 并行度，用于限制批量分析时同时在途的文档数
+		 */
+		public Builder executor(Executor executor, int parallelism) {
+			this.executor=executor;
+			this.parallelism=Math.max(1, parallelism);
+			return this;
+		}
+		
+		/**
+		 * 构建分析器
+		 * @return 不可变的TF-IDF分析器
+		 */
+		public TFIDFAnalyzer build() {
+			IdfTable table=(stopWordsPath==null && idfDictPath==null && idfMap==null && stopWords==null)
+					? DefaultTable.INSTANCE : buildTable();
+			return new TFIDFAnalyzer(table, segmenter==null ? new JiebaSegmenter() : segmenter,
+					executor==null ? ForkJoinPool.commonPool() : executor, parallelism);
+		}
+		
+		private IdfTable buildTable() {
+			Set<String> stopSet=stopWords==null ? readStopWords(stopWordsPath) : stopWords;
+			if(idfDictPath!=null) {
+				try
+				{
+					if(IdfTable.isCompiled(idfDictPath))
+						return IdfTable.readCompiled(idfDictPath, stopSet);
+				}
+				catch (IOException e)
+				{
+					Log.error(String.format(Locale.getDefault(), "%s: load idf dict failure!", idfDictPath));
+				}
+			}
+			Map<String, Double> idf=idfMap;
+			if(idf==null) {
+				idf=new HashMap<>();
+				String name=idfDictPath==null ? IDF_DICT : idfDictPath.toString();
+				try (InputStream in=open(idfDictPath, IDF_DICT))
+				{
+					if(in!=null)
+						loadIDFMap(idf, in);
+				}
+				catch (IOException | RuntimeException e)
+				{
+					Log.error(String.format(Locale.getDefault(), "%s: load idf dict failure!", name));
+				}
+			}
+			return new IdfTable(idf, stopSet);
+		}
+		
 	}
 	
 	public static void main(String[] args)
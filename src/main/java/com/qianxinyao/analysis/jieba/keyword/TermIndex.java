@@ -0,0 +1,144 @@
+package com.qianxinyao.analysis.jieba.keyword;
+
+import java.util.Arrays;
+
+/**
+ * 单文档词语索引（线程私有，可复用）
+ * 功能：
+ * 1. 将文档中的词语映射为从0开始的连续整数id（开放寻址哈希）
+ * 2. 以id为下标保存词频计数和调用方自定义标记，计数只需数组自增
+ * 3. reset()只清理本文档用到的槽位，数组只增不减，处理多篇文档时不再分配
+ * 4. 词典词可按WordDictionary的词语id登记（internWordId），不再计算字符串哈希
+ */
+final class TermIndex {
+    // 新词的初始标记，表示调用方尚未为其计算属性
+    static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    // 词语 -> id（开放寻址，容量为2的幂）
+    private String[] keys = new String[256];
+    private int[] keyIds = new int[256];
+    // id -> 所在槽位（用于reset时定点清理，按词语id登记的词为-1）
+    private int[] slots = new int[128];
+    // 词典词语id -> 本文档id+1（0表示未出现），按需扩容
+    private int[] wordTerms = new int[0];
+    // id -> 词典词语id（按字符串登记的词为-1）
+    private int[] wordIds = new int[128];
+
+    // id -> 词语
+    String[] words = new String[128];
+    // id -> 词频
+    int[] counts = new int[128];
+    // id -> 调用方自定义标记（如IDF词表槽位）
+    int[] tags = new int[128];
+    // 当前文档的词语数
+    int size;
+
+    /**
+     * 清空索引，准备处理下一篇文档
+     */
+    void reset() {
+        for (int id = 0; id < size; id++) {
+            if (slots[id] >= 0) {
+                keys[slots[id]] = null;
+            }
+            if (wordIds[id] >= 0) {
+                wordTerms[wordIds[id]] = 0;
+            }
+            words[id] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * 获取词语id，新词分配下一个id（计数为0，标记为UNRESOLVED）
+     * @param word 词语
+     * @return 词语id
+     */
+    int intern(String word) {
+        int mask = keys.length - 1;
+        int slot = hash(word) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.equals(word)) {
+                return keyIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = append(word, slot, -1);
+        keys[slot] = word;
+        keyIds[slot] = id;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * 保证可按 0 .. count-1 的词典词语id登记（词典加载用户词后词数会增加）
+     * @param count 词典词语id数
+     */
+    void ensureWordIdCapacity(int count) {
+        if (count > wordTerms.length) {
+            wordTerms = Arrays.copyOf(wordTerms, count);
+        }
+    }
+
+    /**
+     * 按词典词语id获取词语id（与intern分配的id共用同一序列）
+     * 同一个词只能始终用同一种方式登记：词典词用本方法，未登录词用intern
+     * @param wordId 词典词语id（小于ensureWordIdCapacity的容量）
+     * @param word 词语
+     * @return 词语id
+     */
+    int internWordId(int wordId, String word) {
+        int term = wordTerms[wordId];
+        if (term != 0) {
+            return term - 1;
+        }
+        int id = append(word, -1, wordId);
+        wordTerms[wordId] = id + 1;
+        return id;
+    }
+
+    private int append(String word, int slot, int wordId) {
+        int id = size++;
+        if (id == words.length) {
+            int capacity = id * 2;
+            words = Arrays.copyOf(words, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            wordIds = Arrays.copyOf(wordIds, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+        }
+        words[id] = word;
+        slots[id] = slot;
+        wordIds[id] = wordId;
+        counts[id] = 0;
+        tags[id] = UNRESOLVED;
+        return id;
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldIds = keyIds;
+        keys = new String[oldKeys.length << 1];
+        keyIds = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                keyIds[slot] = oldIds[i];
+                slots[oldIds[i]] = slot;
+            }
+        }
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,356 @@
+package com.qianxinyao.analysis.jieba.keyword;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.huaban.analysis.jieba.JiebaSegmenter;
+
+/**
+ * TextRank关键词提取器
+ * 算法原理参考：Mihalcea R, Tarau P. TextRank: Bringing Order into Texts
+ * 部分实现思路参考jieba分词：https://github.com/fxsjy/jieba
+ *
+ * 实现思路：
+ * 1. 预处理：
+ *    - 结巴分词，过滤单字词和停用词（不依赖IDF字典，适用于新领域）
+ * 2. 构图：
+ *    - 在窗口内统计词语共现次数，作为无向边的权重
+ *    - 词语映射为整数id，边以long编码后排序去重，最终生成CSR邻接数组
+ * 3. 迭代：
+ *    - WS(v) = (1 - d) + d * Σ w(u,v) / out(u) * WS(u)
+ *    - 相邻两轮最大变化量小于阈值或达到迭代上限时停止
+ * 4. 结果处理：
+ *    - 按最大值归一化，使用有界堆筛选topN个关键词
+ *
+ * 线程安全：
+ *    实例不可变；每个线程持有一份可复用的工作区，处理多篇文档时不会反复分配数组
+ */
+public class TextRankAnalyzer
+{
+	// 默认参数（与jieba保持一致）
+	private static final int DEFAULT_WINDOW = 5;
+	private static final double DEFAULT_DAMPING = 0.85;
+	private static final int DEFAULT_MAX_ITERATIONS = 100;
+	private static final double DEFAULT_TOLERANCE = 1e-4;
+
+	private final IdfTable stopWords;
+	private final JiebaSegmenter segmenter;
+	private final int window;
+	private final double damping;
+	private final int maxIterations;
+	private final double tolerance;
+	// 线程私有工作区
+	private final ThreadLocal<Workspace> workspaces=ThreadLocal.withInitial(Workspace::new);
+
+	/**
+	 * 使用内置停用词表和默认参数构建分析器
+	 */
+	public TextRankAnalyzer() {
+		this(builder());
+	}
+
+	private TextRankAnalyzer(Builder builder) {
+		this.stopWords=builder.stopWords==null ? DefaultStopWords.INSTANCE
+				: new IdfTable(new HashMap<String, Double>(), builder.stopWords);
+		this.segmenter=builder.segmenter==null ? new JiebaSegmenter() : builder.segmenter;
+		this.window=builder.window;
+		this.damping=builder.damping;
+		this.maxIterations=builder.maxIterations;
+		this.tolerance=builder.tolerance;
+	}
+
+	/**
+	 * 创建分析器构建器
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * 核心分析方法（线程安全）
+	 * @param content 待分析文本
+	 * @param topN 返回关键词数量
+	 * @return 关键词列表（按归一化TextRank权重降序）
+	 */
+	public List<Keyword> analyze(String content,int topN){
+		if(topN<=0 || content==null || content.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		Workspace ws=workspaces.get();
+		ws.reset();
+		for(String segment:segmenter.sentenceProcess(content)) {
+			//停用词不予考虑，单字词不予考虑；过滤掉的词仍占据窗口位置
+			if(segment.length()>1 && !stopWords.isStopWord(stopWords.slot(segment)))
+				ws.addToken(ws.intern(segment));
+			else
+				ws.addToken(-1);
+		}
+		if(ws.terms.size==0) {
+			return new ArrayList<>();
+		}
+		ws.buildGraph(window);
+		double[] rank=ws.rank(damping, maxIterations, tolerance);
+
+		double max=0;
+		for(int v=0;v<ws.terms.size;v++) {
+			max=Math.max(max, rank[v]);
+		}
+		// 小顶堆：堆顶为当前topN中权重最小的关键词
+		PriorityQueue<Keyword> heap=new PriorityQueue<>(Math.min(topN, ws.terms.size), Collections.reverseOrder());
+		for(int v=0;v<ws.terms.size;v++) {
+			double weight=rank[v]/max;
+			if(heap.size()<topN) {
+				heap.add(new Keyword(ws.terms.words[v],weight));
+			}else if(Keyword.round(weight)>heap.peek().getTfidfvalue()) {
+				heap.poll();
+				heap.add(new Keyword(ws.terms.words[v],weight));
+			}
+		}
+		List<Keyword> keywordList=new ArrayList<>(heap);
+		Collections.sort(keywordList);
+		return keywordList;
+	}
+
+	/**
+	 * 内置停用词表持有者（只加载一次）
+	 */
+	private static final class DefaultStopWords {
+		static final IdfTable INSTANCE=new IdfTable(new HashMap<String, Double>(), TFIDFAnalyzer.readStopWords(null));
+	}
+
+	/**
+	 * 单线程工作区：词语id映射、token序列、共现边、CSR图和迭代数组
+	 * 所有数组只增不减，在同一线程处理的多篇文档之间复用
+	 */
+	static final class Workspace
+	{
+		// 词语 -> id
+		final TermIndex terms=new TermIndex();
+
+		// token id序列（-1表示被过滤的词）
+		private int[] tokens=new int[256];
+		private int tokenCount;
+
+		// 共现边：高32位为较小id，低32位为较大id
+		private long[] edges=new long[256];
+		private int edgeCount;
+
+		// CSR邻接表
+		private int[] offsets=new int[129];
+		private int[] targets=new int[256];
+		private double[] weights=new double[256];
+		private double[] outSum=new double[128];
+		private int[] cursor=new int[128];
+
+		// 迭代数组
+		private double[] rank=new double[128];
+		private double[] next=new double[128];
+
+		void reset() {
+			terms.reset();
+			tokenCount=0;
+			edgeCount=0;
+		}
+
+		int intern(String word) {
+			return terms.intern(word);
+		}
+
+		void addToken(int id) {
+			if(tokenCount==tokens.length)
+				tokens=Arrays.copyOf(tokens, tokenCount*2);
+			tokens[tokenCount++]=id;
+		}
+
+		/**
+		 * 构建共现图
+		 * @param window 窗口大小（词i与其后window-1个词共现）
+		 */
+		void buildGraph(int window) {
+			for(int i=0;i<tokenCount;i++) {
+				int a=tokens[i];
+				if(a<0)
+					continue;
+				int end=Math.min(tokenCount, i+window);
+				for(int j=i+1;j<end;j++) {
+					int b=tokens[j];
+					if(b<0 || b==a)
+						continue;
+					if(edgeCount==edges.length)
+						edges=Arrays.copyOf(edges, edgeCount*2);
+					edges[edgeCount++]=a<b ? ((long) a<<32)|b : ((long) b<<32)|a;
+				}
+			}
+			Arrays.sort(edges, 0, edgeCount);
+
+			int n=terms.size;
+			if(offsets.length<n+1)
+				offsets=new int[Math.max(n+1, offsets.length*2)];
+			Arrays.fill(offsets, 0, n+1, 0);
+			// 统计每个顶点的度（去重后的无向边计两次）
+			for(int e=0;e<edgeCount;e++) {
+				if(e>0 && edges[e]==edges[e-1])
+					continue;
+				offsets[(int) (edges[e]>>>32)+1]++;
+				offsets[(int) edges[e]+1]++;
+			}
+			for(int v=0;v<n;v++)
+				offsets[v+1]+=offsets[v];
+			int m=offsets[n];
+			if(targets.length<m) {
+				targets=new int[Math.max(m, targets.length*2)];
+				weights=new double[targets.length];
+			}
+			if(outSum.length<n) {
+				outSum=new double[Math.max(n, outSum.length*2)];
+				rank=new double[outSum.length];
+				next=new double[outSum.length];
+			}
+			Arrays.fill(outSum, 0, n, 0.0);
+
+			// 填充邻接数组，pos为每个顶点的写入游标
+			if(cursor.length<n)
+				cursor=new int[Math.max(n, cursor.length*2)];
+			int[] pos=cursor;
+			System.arraycopy(offsets, 0, pos, 0, n);
+			for(int e=0;e<edgeCount;) {
+				long edge=edges[e];
+				int w=0;
+				while(e<edgeCount && edges[e]==edge) {
+					w++;
+					e++;
+				}
+				int a=(int) (edge>>>32);
+				int b=(int) edge;
+				targets[pos[a]]=b;
+				weights[pos[a]++]=w;
+				targets[pos[b]]=a;
+				weights[pos[b]++]=w;
+				outSum[a]+=w;
+				outSum[b]+=w;
+			}
+		}
+
+		/**
+		 * 迭代计算TextRank权重
+		 * @return 权重数组（下标为词语id，仅前terms.size个有效）
+		 */
+		double[] rank(double damping, int maxIterations, double tolerance) {
+			int n=terms.size;
+			Arrays.fill(rank, 0, n, 1.0/n);
+			for(int iter=0;iter<maxIterations;iter++) {
+				double delta=0;
+				for(int v=0;v<n;v++) {
+					double sum=0;
+					for(int e=offsets[v];e<offsets[v+1];e++) {
+						int u=targets[e];
+						sum+=weights[e]/outSum[u]*rank[u];
+					}
+					double r=(1-damping)+damping*sum;
+					delta=Math.max(delta, Math.abs(r-rank[v]));
+					next[v]=r;
+				}
+				double[] tmp=rank;
+				rank=next;
+				next=tmp;
+				if(delta<tolerance)
+					break;
+			}
+			return rank;
+		}
+	}
+
+	/**
+	 * TextRank分析器构建器
+	 */
+	public static final class Builder
+	{
+		private Set<String> stopWords;
+		private JiebaSegmenter segmenter;
+		private int window=DEFAULT_WINDOW;
+		private double damping=DEFAULT_DAMPING;
+		private int maxIterations=DEFAULT_MAX_ITERATIONS;
+		private double tolerance=DEFAULT_TOLERANCE;
+
+		private Builder() {
+		}
+
+		/**
+		 * 指定停用词表文件（UTF-8，每行一个词）
+		 */
+		public Builder stopWords(Path path) {
+			this.stopWords=TFIDFAnalyzer.readStopWords(path);
+			return this;
+		}
+
+		/**
+		 * 直接指定停用词集合
+		 */
+		public Builder stopWords(Set<String> words) {
+			this.stopWords=new HashSet<>(words);
+			return this;
+		}
+
+		/**
+		 * 指定分词器（默认新建JiebaSegmenter）
+		 */
+		public Builder segmenter(JiebaSegmenter segmenter) {
+			this.segmenter=segmenter;
+			return this;
+		}
+
+		/**
+		 * 共现窗口大小（默认5，至少为2）
+		 */
+		public Builder window(int window) {
+			this.window=Math.max(2, window);
+			return this;
+		}
+
+		/**
+		 * 阻尼系数（默认0.85）
+		 */
+		public Builder damping(double damping) {
+			this.damping=damping;
+			return this;
+		}
+
+		/**
+		 * 最大迭代次数（默认100）
+		 */
+		public Builder maxIterations(int maxIterations) {
+			this.maxIterations=Math.max(1, maxIterations);
+			return this;
+		}
+
+		/**
+		 * 收敛阈值：相邻两轮权重最大变化量小于该值时停止（默认1e-4）
+		 */
+		public Builder tolerance(double tolerance) {
+			this.tolerance=tolerance;
+			return this;
+		}
+
+		public TextRankAnalyzer build() {
+			return new TextRankAnalyzer(this);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		String content="孩子上了幼儿园 安全防拐教育要做好";
+		int topN=5;
+		TextRankAnalyzer textRankAnalyzer=new TextRankAnalyzer();
+		List<Keyword> list=textRankAnalyzer.analyze(content,topN);
+		for(Keyword word:list)
+			System.out.print(word.getName()+":"+word.getTfidfvalue()+",");
+	}
+}
@@ -0,0 +1,78 @@
+package com.huaban.analysis.jieba;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于JDK Vector API的字符片段扫描器（Java 17+，多版本jar的META-INF/versions/17）
+ * 功能：与CharScanner的结果完全一致，每次按向量宽度（通常16～32个字符）规范化并分类
+ *
+ * 实现思路：
+ * 1. char装入short向量后异或0x8000（符号位翻转），有符号比较即等价于char的无符号比较；
+ *    不使用无符号比较运算符，它们在各JDK版本的孵化API中名称不同
+ * 2. regularize拆成三个掩码：全角空格、全角字符（减0xFEE0）、半角大写（加32），互不重叠
+ * 3. 可切分掩码取反后的第一个置位即为片段结束位置；尾部不足一个向量的部分走标量实现
+ * 使用字符折叠表时查表无法向量化，直接走标量实现
+ */
+final class VectorCharScanner extends CharScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    // 符号位，异或后有符号比较等价于无符号比较
+    private static final short SIGN = (short) 0x8000;
+
+    @Override
+    String name() {
+        return "vector " + SPECIES;
+    }
+
+    @Override
+    int regularizeRun(char[] src, int from, int to, char[] dst, char[] foldTable) {
+        if (foldTable != null)
+            return super.regularizeRun(src, from, to, dst, foldTable);
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, src, i);
+            ShortVector biased = v.lanewise(VectorOperators.XOR, SIGN);
+            VectorMask<Short> space = v.eq((short) 0x3000);
+            VectorMask<Short> wide = between(biased, 0xFF01, 0xFF5E);
+            VectorMask<Short> upper = between(biased, 'A', 'Z');
+            ShortVector r = v.blend((short) ' ', space).sub((short) 0xFEE0, wide).add((short) 32, upper);
+            r.intoCharArray(dst, i);
+            biased = r.lanewise(VectorOperators.XOR, SIGN);
+            VectorMask<Short> cc = between(biased, 0x4E00, 0x9FA5)
+                .or(between(biased.or((short) 0x20), 'a', 'z'))
+                .or(between(biased, '0', '9'))
+                .or(r.eq((short) '+')).or(r.eq((short) '#')).or(r.eq((short) '&'))
+                .or(r.eq((short) '.')).or(r.eq((short) '_')).or(r.eq((short) '-'));
+            if (!cc.allTrue())
+                return i + cc.not().firstTrue();
+        }
+        return super.regularizeRun(src, i, to, dst, null);
+    }
+
+    @Override
+    int chineseRunEnd(char[] chars, int from, int to, boolean chinese) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            ShortVector biased = ShortVector.fromCharArray(SPECIES, chars, i).lanewise(VectorOperators.XOR, SIGN);
+            VectorMask<Short> stop = between(biased, 0x4E00, 0x9FA5);
+            if (chinese)
+                stop = stop.not();
+            if (stop.anyTrue())
+                return i + stop.firstTrue();
+        }
+        return super.chineseRunEnd(chars, i, to, chinese);
+    }
+
+    /**
+     * @param biased 异或过SIGN的字符向量
+     * @return low &lt;= 字符 &lt;= high 的掩码
+     */
+    private static VectorMask<Short> between(ShortVector biased, int low, int high) {
+        return biased.compare(VectorOperators.GE, (short) (low ^ SIGN))
+            .and(biased.compare(VectorOperators.LE, (short) (high ^ SIGN)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+
+/**
+ * Aho-Corasick自动机测试：与逐位置暴力匹配的结果逐一比对
+ */
+public class AhoCorasickTest extends TestCase {
+
+    private static List<String> naive(List<String> words, String text) {
+        List<String> hits = new ArrayList<String>();
+        for (int end = 1; end <= text.length(); ++end)
+            for (int id = 0; id < words.size(); ++id) {
+                String word = words.get(id);
+                if (word.length() <= end && text.startsWith(word, end - word.length()) && words.indexOf(word) == id)
+                    hits.add((end - word.length()) + "," + end + "," + id);
+            }
+        return hits;
+    }
+
+
+    private static List<String> scan(AhoCorasick automaton, String text) {
+        final List<String> hits = new ArrayList<String>();
+        automaton.scan(text, (start, end, wordId) -> hits.add(start + "," + end + "," + wordId));
+        return hits;
+    }
+
+
+    @Test
+    public void testScanMatchesNaive() {
+        List<String> words = Arrays.asList("he", "she", "his", "hers", "h", "ers", "she");
+        AhoCorasick automaton = AhoCorasick.compile(words, false);
+        String text = "ushershishehers";
+        List<String> expected = naive(words, text);
+        List<String> actual = scan(automaton, text);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+
+    @Test
+    public void testRandomScan() {
+        Random random = new Random(31);
+        String alphabet = "北京大学生前来应聘abc";
+        for (int round = 0; round < 50; ++round) {
+            List<String> words = new ArrayList<String>();
+            for (int i = 0; i < 40; ++i) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = random.nextInt(4) + 1; j > 0; --j)
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                words.add(sb.toString());
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 300; ++i)
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            List<String> expected = naive(words, text.toString());
+            List<String> actual = scan(AhoCorasick.compile(words, false), text.toString());
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+
+    @Test
+    public void testRegularize() {
+        AhoCorasick automaton = AhoCorasick.compile(Arrays.asList("iphone", "utf-8"), true);
+        assertEquals(Arrays.asList("0,6,0", "7,12,1"), scan(automaton, "IPhone ｕｔｆ－８"));
+    }
+
+
+    @Test
+    public void testDictionaryBlankKeys() {
+        // 用户词典中的空行会在词频表中留下null或空串键
+        WordDictionary dictionary = WordDictionary.getInstance();
+        String word = dictionary.freqs.keySet().iterator().next();
+        dictionary.freqs.put(null, 1.0);
+        dictionary.freqs.put("", 1.0);
+        try {
+            AhoCorasick automaton = AhoCorasick.compile(dictionary);
+            assertFalse(scan(automaton, word).isEmpty());
+        }
+        finally {
+            dictionary.freqs.remove(null);
+            dictionary.freqs.remove("");
+        }
+    }
+
+
+    @Test
+    public void testDictionaryWordIds() {
+        // 词id与WordDictionary的词语id一致
+        final WordDictionary dictionary = WordDictionary.getInstance();
+        AhoCorasick automaton = AhoCorasick.compile(dictionary);
+        final String text = "工信处女干事每月经过下属科室都要亲口交代24口交换机等技术性器件的安装工作";
+        final int[] matches = new int[1];
+        automaton.scan(text, (start, end, wordId) -> {
+            assertEquals(dictionary.getWordId(text.substring(start, end)), wordId);
+            matches[0]++;
+        });
+        assertTrue(matches[0] > 0);
+    }
+
+
+    @Test
+    public void testDictionaryScanSpeed() {
+        AhoCorasick automaton = AhoCorasick.compile(WordDictionary.getInstance());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; ++i)
+            sb.append("工信处女干事每月经过下属科室都要亲口交代24口交换机等技术性器件的安装工作。");
+        String text = sb.toString();
+        final long[] matches = new long[1];
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20; ++i)
+            automaton.scan(text, (s, e, id) -> matches[0]++);
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println(String.format(Locale.getDefault(), "aho-corasick states:%d, time elapsed:%d, rate:%.2fchars/s, matches:%d",
+            automaton.stateCount(), elapsed, text.length() * 20 * 1000.0 / elapsed, matches[0]));
+    }
+}
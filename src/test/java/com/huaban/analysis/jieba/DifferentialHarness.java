@@ -0,0 +1,314 @@
+package com.huaban.analysis.jieba;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+import com.huaban.analysis.jieba.viterbi.FinalSeg;
+
+
+/**
+ * 分词引擎差分测试工具
+ * 功能：
+ * 1. 参照引擎与候选引擎逐行处理同一语料，逐词比较输出，报告第一个不一致的词及其上下文
+ * 2. 同一次运行中分别记录两个引擎的耗时和吞吐
+ * 3. 内置语料生成器：中英文混合、超长无标点片段、全角字符、代理对、控制字符等边界字符
+ *
+ * 命令行：DifferentialHarness [语料文件...]，对生产实现与ReferenceSegmenter做全部模式的比较
+ * 新的DAG、字典树或维特比实现接入时，实现Engine并与ReferenceSegmenter比较即可
+ */
+final class DifferentialHarness {
+
+    /**
+     * 被比较的分词引擎，输出为可直接比较的词序列（需要偏移时把偏移编码进字符串）
+     */
+    interface Engine {
+        String name();
+
+        List<String> segment(String text);
+    }
+
+    /**
+     * 比较结果
+     */
+    static final class Result {
+        final String reference;
+        final String candidate;
+        long lines;
+        long chars;
+        long referenceNanos;
+        long candidateNanos;
+        // 第一个不一致的描述，一致时为null
+        String divergence;
+
+        Result(String reference, String candidate) {
+            this.reference = reference;
+            this.candidate = candidate;
+        }
+
+        boolean identical() {
+            return divergence == null;
+        }
+
+        @Override
+        public String toString() {
+            double refSeconds = Math.max(1L, referenceNanos) / 1e9;
+            double candSeconds = Math.max(1L, candidateNanos) / 1e9;
+            return String.format(Locale.ROOT, "%s vs %s: lines:%d, chars:%d, %s: %.0f chars/s, %s: %.0f chars/s (x%.2f), %s",
+                reference, candidate, lines, chars, reference, chars / refSeconds, candidate, chars / candSeconds,
+                refSeconds / candSeconds, divergence == null ? "identical" : "DIVERGED " + divergence);
+        }
+    }
+
+    private static final Pattern OFFSETS = Pattern.compile(", (\\d+), \\d+\\]$");
+
+    private DifferentialHarness() {
+    }
+
+    /**
+     * 逐行比较两个引擎，遇到第一处不一致即停止
+     */
+    static Result compare(Engine reference, Engine candidate, List<String> corpus) {
+        Result result = new Result(reference.name(), candidate.name());
+        for (String line : corpus) {
+            long t0 = System.nanoTime();
+            List<String> expected = reference.segment(line);
+            long t1 = System.nanoTime();
+            List<String> actual = candidate.segment(line);
+            long t2 = System.nanoTime();
+            result.referenceNanos += t1 - t0;
+            result.candidateNanos += t2 - t1;
+            result.lines++;
+            result.chars += line.length();
+            int n = Math.min(expected.size(), actual.size());
+            int k = 0;
+            while (k < n && expected.get(k).equals(actual.get(k)))
+                k++;
+            if (k < n || expected.size() != actual.size()) {
+                result.divergence = describe(result.lines, line, expected, actual, k);
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static String describe(long lineNumber, String line, List<String> expected, List<String> actual, int k) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "at line %d, token %d: expected %s, actual %s", lineNumber, k,
+            k < expected.size() ? quote(expected.get(k)) : "<end>", k < actual.size() ? quote(actual.get(k)) : "<end>"));
+        sb.append(", after ").append(expected.subList(Math.max(0, k - 3), k));
+        // 词序列能拼回原文时按词长累计位置，带偏移的词（[词, 起始, 结束]）取起始偏移
+        int position = -1;
+        if (String.join("", expected).equals(line)) {
+            position = 0;
+            for (int i = 0; i < k; i++)
+                position += expected.get(i).length();
+        }
+        else if (k < expected.size()) {
+            Matcher matcher = OFFSETS.matcher(expected.get(k));
+            if (matcher.find())
+                position = Integer.parseInt(matcher.group(1));
+        }
+        if (position >= 0 && position <= line.length()) {
+            int from = Math.max(0, position - 20);
+            int to = Math.min(line.length(), position + 20);
+            sb.append(", input near ").append(quote(line.substring(from, position) + "|" + line.substring(position, to)));
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || (c >= 0xD800 && c < 0xE000) || c == 0xFFFF)
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * process的输出引擎（词语与偏移一起比较）
+     */
+    static Engine process(final String name, final JiebaSegmenter segmenter, final SegMode mode) {
+        return new Engine() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                return tokenStrings(segmenter.process(text, mode));
+            }
+        };
+    }
+
+    static Engine referenceProcess(final ReferenceSegmenter reference, final SegMode mode) {
+        return new Engine() {
+            @Override
+            public String name() {
+                return "reference." + mode.name().toLowerCase(Locale.ROOT);
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                return tokenStrings(reference.process(text, mode));
+            }
+        };
+    }
+
+    private static List<String> tokenStrings(List<SegToken> tokens) {
+        List<String> result = new ArrayList<String>(tokens.size());
+        for (SegToken token : tokens)
+            result.add(token.toString());
+        return result;
+    }
+
+    static Engine sentenceProcess(final String name, final JiebaSegmenter segmenter) {
+        return new Engine() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                return segmenter.sentenceProcess(text);
+            }
+        };
+    }
+
+    static Engine referenceSentenceProcess(final ReferenceSegmenter reference) {
+        return new Engine() {
+            @Override
+            public String name() {
+                return "reference.sentenceProcess";
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                return reference.sentenceProcess(text);
+            }
+        };
+    }
+
+    static Engine finalSeg() {
+        final FinalSeg finalSeg = FinalSeg.getInstance();
+        return new Engine() {
+            @Override
+            public String name() {
+                return "FinalSeg.cut";
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                List<String> tokens = new ArrayList<String>();
+                finalSeg.cut(text, tokens);
+                return tokens;
+            }
+        };
+    }
+
+    static Engine referenceFinalSeg(final ReferenceSegmenter reference) {
+        return new Engine() {
+            @Override
+            public String name() {
+                return "reference.cut";
+            }
+
+            @Override
+            public List<String> segment(String text) {
+                List<String> tokens = new ArrayList<String>();
+                reference.cut(text, tokens);
+                return tokens;
+            }
+        };
+    }
+
+    /**
+     * 生成差分语料
+     * - 普通行：汉字、英文单词、数字、中英文标点、空白混排
+     * - 每8行一个超长无标点汉字片段（覆盖长片段的紧凑动态规划）
+     * - 每8行一个边界字符行（全角字母数字、代理对、控制字符、私用区、U+FFFF、组合字符、日韩文字）
+     */
+    static List<String> generate(Random random, int count) {
+        String hanzi = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说"
+            + "产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去"
+            + "北京大学生活动中心研究所长江大桥结婚尚未和服装饰品工信处女干事";
+        String[] ascii = {"Python", "C++", "jieba", "HTTP", "iPhone", "ID", "2024", "3.14", "100%", "v1.0", "A", "x86_64"};
+        String punctuation = "，。！？；：、“”（）《》,.!?;:'\"()[]- \t";
+        String edges = "\uff21\uff22\uff23\uff41\uff42\uff43\uff10\uff11\uff12\u3000\uff01\uff20\u0000\u0001\u007f"
+            + "\uffff\ud83d\ude00\ud800\u0065\u0301\u3072\u3089\u30ab\u30bf\ud55c\uad6d\u00a0\u200b\uff5e\ue000";
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (i % 8 == 7) {
+                int length = 1500 + random.nextInt(3000);
+                while (sb.length() < length)
+                    sb.append(hanzi.charAt(random.nextInt(hanzi.length())));
+            }
+            else if (i % 8 == 3) {
+                int length = 10 + random.nextInt(60);
+                while (sb.length() < length) {
+                    String source = random.nextBoolean() ? edges : hanzi;
+                    sb.append(source.charAt(random.nextInt(source.length())));
+                }
+            }
+            else {
+                int length = random.nextInt(200);
+                while (sb.length() < length) {
+                    int kind = random.nextInt(10);
+                    if (kind < 6)
+                        sb.append(hanzi.charAt(random.nextInt(hanzi.length())));
+                    else if (kind < 8)
+                        sb.append(ascii[random.nextInt(ascii.length)]);
+                    else
+                        sb.append(punctuation.charAt(random.nextInt(punctuation.length())));
+                }
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * 生产实现与参照实现的全部比较项
+     */
+    static List<Result> compareAll(JiebaSegmenter segmenter, List<String> corpus) {
+        ReferenceSegmenter reference = new ReferenceSegmenter();
+        List<Result> results = new ArrayList<Result>();
+        results.add(compare(referenceProcess(reference, SegMode.SEARCH), process("process.search", segmenter, SegMode.SEARCH),
+            corpus));
+        results.add(compare(referenceProcess(reference, SegMode.INDEX), process("process.index", segmenter, SegMode.INDEX),
+            corpus));
+        results.add(compare(referenceSentenceProcess(reference), sentenceProcess("sentenceProcess", segmenter), corpus));
+        results.add(compare(referenceFinalSeg(reference), finalSeg(), corpus));
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> corpus = new ArrayList<String>();
+        for (String file : args)
+            corpus.addAll(Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8));
+        if (corpus.isEmpty())
+            corpus.addAll(generate(new Random(7L), 20000));
+        boolean identical = true;
+        for (Result result : compareAll(new JiebaSegmenter(), corpus)) {
+            System.out.println(result);
+            identical &= result.identical();
+        }
+        if (!identical)
+            System.exit(1);
+    }
+}
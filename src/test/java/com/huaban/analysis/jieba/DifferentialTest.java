@@ -0,0 +1,202 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+
+
+/**
+ * 差分测试：优化后的分词实现与冻结的参照实现（ReferenceSegmenter）输出必须逐词一致
+ */
+public class DifferentialTest extends TestCase {
+
+    private static List<String> corpus() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            DifferentialTest.class.getResourceAsStream("/test.txt"), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        finally {
+            reader.close();
+        }
+        lines.addAll(DifferentialHarness.generate(new Random(20240607L), 2000));
+        return lines;
+    }
+
+    @Test
+    public void testProductionMatchesReference() throws IOException {
+        for (DifferentialHarness.Result result : DifferentialHarness.compareAll(new JiebaSegmenter(), corpus())) {
+            System.out.println(result);
+            assertTrue(result.toString(), result.identical());
+        }
+    }
+
+    @Test
+    public void testMappedDictionaryMatchesReference() throws IOException {
+        Path file = Files.createTempFile("jieba-dict", ".bin");
+        try {
+            MappedDictionary.write(WordDictionary.getInstance(), file);
+            JiebaSegmenter mapped = JiebaSegmenter.builder().dictionary(MappedDictionary.open(file)).build();
+            ReferenceSegmenter reference = new ReferenceSegmenter();
+            for (SegMode mode : SegMode.values()) {
+                DifferentialHarness.Result result = DifferentialHarness.compare(
+                    DifferentialHarness.referenceProcess(reference, mode),
+                    DifferentialHarness.process("mapped." + mode, mapped, mode), corpus());
+                System.out.println(result);
+                assertTrue(result.toString(), result.identical());
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDawgDictionaryMatchesReference() throws IOException {
+        JiebaSegmenter dawg = JiebaSegmenter.builder().dictionary(DawgDictionary.build(WordDictionary.getInstance())).build();
+        ReferenceSegmenter reference = new ReferenceSegmenter();
+        for (SegMode mode : SegMode.values()) {
+            DifferentialHarness.Result result = DifferentialHarness.compare(
+                DifferentialHarness.referenceProcess(reference, mode),
+                DifferentialHarness.process("dawg." + mode, dawg, mode), corpus());
+            System.out.println(result);
+            assertTrue(result.toString(), result.identical());
+        }
+    }
+
+    @Test
+    public void testAsciiDictionaryWordsMatchFullPath() throws IOException {
+        // 含ASCII的词典词（纯ASCII、中英混合、跨越中英边界），覆盖ASCII快速路径不适用的各种情形
+        // ReferenceSegmenter只使用默认词典，这里与关闭了多字ASCII片段快速路径的同一词典比较
+        OverlayDictionary dictionary = new OverlayDictionary(WordDictionary.getInstance(),
+            Arrays.asList("c++", "python", "jieba", "x86", "t恤", "卡拉ok", "b超", "a股", "iphone", "3.14", "v1", "的c",
+                "http", "id", "2024年", "国a"));
+        JiebaSegmenter segmenter = JiebaSegmenter.builder().dictionary(dictionary).build();
+        JiebaSegmenter fullPath = JiebaSegmenter.builder().dictionary(new FullPathDictionary(dictionary)).build();
+        List<String> corpus = corpus();
+        corpus.addAll(Arrays.asList("python和c++", "买t恤和卡拉ok", "b超a股x86的c国a", "iphone手机3.14v1.0", "中c++国",
+            "c", "c+", "ab", "的c++的", "HTTP协议id号2024年"));
+        for (SegMode mode : SegMode.values()) {
+            DifferentialHarness.Result result = DifferentialHarness.compare(
+                DifferentialHarness.process("full." + mode, fullPath, mode),
+                DifferentialHarness.process("overlay." + mode, segmenter, mode), corpus);
+            System.out.println(result);
+            assertTrue(result.toString(), result.identical());
+        }
+        DifferentialHarness.Result result = DifferentialHarness.compare(
+            DifferentialHarness.sentenceProcess("full.sentenceProcess", fullPath),
+            DifferentialHarness.sentenceProcess("overlay.sentenceProcess", segmenter), corpus);
+        System.out.println(result);
+        assertTrue(result.toString(), result.identical());
+    }
+
+    /**
+     * 把任意字符对都报告为前缀的词典：AsciiRuns不会把长度不小于2的ASCII片段判定为可直接切分，这些片段走完整路径
+     */
+    private static final class FullPathDictionary implements DictionaryLookup {
+        private final DictionaryLookup base;
+
+        FullPathDictionary(DictionaryLookup base) {
+            this.base = base;
+        }
+
+        @Override
+        public int matchEnds(char[] chars, int begin, int end, int[] ends) {
+            return base.matchEnds(chars, begin, end, ends);
+        }
+
+        @Override
+        public boolean isPrefix(char[] chars, int begin, int end) {
+            return true;
+        }
+
+        @Override
+        public double getLogFreq(String word) {
+            return base.getLogFreq(word);
+        }
+
+        @Override
+        public boolean containsWord(String word) {
+            return base.containsWord(word);
+        }
+
+        @Override
+        public int getMaxWordLength() {
+            return base.getMaxWordLength();
+        }
+    }
+
+    /**
+     * 在WordDictionary之上追加若干词语的词典（不修改全局词典单例）
+     */
+    private static final class OverlayDictionary implements DictionaryLookup {
+        private final WordDictionary base;
+        private final Map<String, Double> words = new HashMap<String, Double>();
+        private final Set<String> prefixes = new HashSet<String>();
+        private int maxWordLength;
+
+        OverlayDictionary(WordDictionary base, List<String> extra) {
+            this.base = base;
+            this.maxWordLength = base.getMaxWordLength();
+            for (String word : extra) {
+                words.put(word, -8.0);
+                for (int i = 1; i <= word.length(); i++)
+                    prefixes.add(word.substring(0, i));
+                maxWordLength = Math.max(maxWordLength, word.length());
+            }
+        }
+
+        @Override
+        public int matchEnds(char[] chars, int begin, int end, int[] ends) {
+            int count = 0;
+            for (int j = begin; j < end; j++) {
+                if (!isPrefix(chars, begin, j + 1))
+                    break;
+                if (containsWord(new String(chars, begin, j + 1 - begin)))
+                    ends[count++] = j;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isPrefix(char[] chars, int begin, int end) {
+            return base.isPrefix(chars, begin, end) || prefixes.contains(new String(chars, begin, end - begin));
+        }
+
+        @Override
+        public double getLogFreq(String word) {
+            Double freq = words.get(word);
+            return freq != null ? freq : base.getLogFreq(word);
+        }
+
+        @Override
+        public boolean containsWord(String word) {
+            return words.containsKey(word) || base.containsWord(word);
+        }
+
+        @Override
+        public int getMaxWordLength() {
+            return maxWordLength;
+        }
+    }
+}
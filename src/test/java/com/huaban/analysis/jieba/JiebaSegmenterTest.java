@@ -5,15 +5,25 @@ package com.huaban.analysis.jieba;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
 import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+import com.huaban.analysis.jieba.metrics.SegmenterMetrics;
 
 
 /**
@@ -196,4 +206,684 @@ public class JiebaSegmenterTest extends TestCase {
         System.out.println(String.format(Locale.getDefault(), "time elapsed:%d, rate:%fkb/s, sentences:%.2f/s", elapsed,
             (length * 1.0) / 1024.0f / (elapsed * 1.0 / 1000.0f), wordCount * 1000.0f / (elapsed * 1.0)));
     }
+
+
+    @Test
+    public void testMetrics() {
+        SegmenterMetrics metrics = SegmenterMetrics.enable();
+        try {
+            for (String sentence : sentences) {
+                segmenter.process(sentence, SegMode.INDEX);
+            }
+            assertEquals(sentences.length, metrics.getRequestCount());
+            assertTrue(metrics.getSentenceCount() > 0);
+            assertTrue(metrics.getRequestTokenCount() > 0);
+            assertTrue(metrics.getDagBuildNanos() > 0);
+            assertTrue(metrics.getDictionarySize() > 0);
+            long histogramTotal = 0L;
+            for (int i = 0; i < metrics.getLengthBuckets().length; ++i)
+                for (long count : metrics.getLatencyHistogram(i))
+                    histogramTotal += count;
+            assertEquals(metrics.getRequestCount(), histogramTotal);
+        }
+        finally {
+            SegmenterMetrics.disable();
+        }
+        assertNull(JiebaSegmenter.getMetricsRegistry());
+    }
+
+
+    @Test
+    public void testFoldTraditional() {
+        JiebaSegmenter folding = JiebaSegmenter.builder().foldTraditional(true).build();
+        String[][] pairs =
+                new String[][] { { "好聲音", "好声音" }, { "我打電話給醫院", "我打电话给医院" }, { "ＩＰｈｏｎｅ 專賣店", "ＩＰｈｏｎｅ 专卖店" } };
+        for (String[] pair : pairs) {
+            assertEquals(segmenter.process(pair[1], SegMode.INDEX).toString(),
+                folding.process(pair[0], SegMode.INDEX).toString());
+        }
+        // 未开启折叠时保持原文
+        assertEquals("[[電話, 0, 2]]", segmenter.process("電話", SegMode.SEARCH).toString());
+        assertEquals("[[电话, 0, 2]]", folding.process("電話", SegMode.SEARCH).toString());
+    }
+
+
+    private static void enumerate(String sentence, int position, double score, StringBuilder path, List<String> out) {
+        WordDictionary dict = WordDictionary.getInstance();
+        boolean found = false;
+        for (int end = position + 1; end <= sentence.length(); ++end) {
+            String word = sentence.substring(position, end);
+            if (dict.containsWord(word) || (end == position + 1 && !found && !hasWord(sentence, position))) {
+                found = true;
+                int mark = path.length();
+                path.append(word).append('/');
+                if (end == sentence.length())
+                    out.add(String.format(Locale.ROOT, "%.6f %s", score + dict.getFreq(word), path));
+                else
+                    enumerate(sentence, end, score + dict.getFreq(word), path, out);
+                path.setLength(mark);
+            }
+        }
+    }
+
+
+    private static boolean hasWord(String sentence, int position) {
+        for (int end = position + 1; end <= sentence.length(); ++end)
+            if (WordDictionary.getInstance().containsWord(sentence.substring(position, end)))
+                return true;
+        return false;
+    }
+
+
+    @Test
+    public void testKBest() {
+        String[] queries = new String[] { "北京大学生前来应聘", "结果婚的和尚未结过婚的", "工信处女干事每月经过下属科室", "南京市长江大桥" };
+        for (String query : queries) {
+            List<String> all = new ArrayList<String>();
+            enumerate(query, 0, 0.0, new StringBuilder(), all);
+            Collections.sort(all, (a, b) -> Double.compare(Double.parseDouble(b.split(" ")[0]), Double.parseDouble(a.split(" ")[0])));
+            SegmentationLattice lattice = segmenter.kBest(query, 8);
+            assertEquals(Math.min(8, all.size()), lattice.size());
+            Set<String> seen = new HashSet<String>();
+            int rank = 0;
+            for (List<String> words : lattice) {
+                assertEquals(query, String.join("", words));
+                assertTrue(seen.add(words.toString()));
+                assertEquals(Double.parseDouble(all.get(rank).split(" ")[0]), lattice.getLogProb(rank), 1e-5);
+                if (rank > 0)
+                    assertTrue(lattice.getLogProb(rank - 1) >= lattice.getLogProb(rank));
+                ++rank;
+            }
+            System.out.print(String.format(Locale.getDefault(), "\n%s\n%s", query, lattice.getWords(0)));
+        }
+        assertEquals(0, segmenter.kBest("", 3).size());
+    }
+
+
+    @Test
+    public void testUnboundedRun() {
+        // 模拟无标点的超长网页/OCR文本
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 200000)
+            sb.append("工信处女干事每月经过下属科室都要亲口交代口交换机等技术性器件的安装工作结果婚的和尚未结过婚的");
+        String run = sb.toString();
+        long start = System.currentTimeMillis();
+        List<String> words = segmenter.sentenceProcess(run);
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        assertEquals(run, String.join("", words));
+        System.out.println(String.format(Locale.getDefault(), "unbounded run chars:%d, words:%d, time elapsed:%d",
+            run.length(), words.size(), elapsed));
+    }
+
+
+    @Test
+    public void testBulkSegmenter() throws Exception {
+        Path dir = Files.createTempDirectory("jieba-bulk");
+        try {
+            Path input = dir.resolve("in/docs/a.txt");
+            Files.createDirectories(input.getParent());
+            StringBuilder sb = new StringBuilder();
+            List<String> lines = new ArrayList<String>();
+            for (int i = 0; i < 400; i++) {
+                String line = sentences[i % sentences.length] + " 第" + i + "行\r";
+                lines.add(line);
+                sb.append(line).append('\n');
+            }
+            Files.write(input, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.write(dir.resolve("in/empty.txt"), new byte[0]);
+
+            // 小块强制多块并行，验证输出行序与逐行分词一致
+            BulkSegmenter.Report report = new BulkSegmenter().threads(3).chunkBytes(4096).offsets(true)
+                .segment(dir.resolve("in"), dir.resolve("out"));
+            List<String> output = Files.readAllLines(dir.resolve("out/docs/a.txt"), StandardCharsets.UTF_8);
+            assertEquals(lines.size(), output.size());
+            long tokens = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                StringBuilder expected = new StringBuilder();
+                String line = lines.get(i).substring(0, lines.get(i).length() - 1);
+                for (SegToken token : segmenter.process(line, SegMode.SEARCH)) {
+                    if (token.word.trim().isEmpty())
+                        continue;
+                    if (expected.length() > 0)
+                        expected.append(' ');
+                    expected.append(line, token.startOffset, token.endOffset).append('/').append(token.startOffset)
+                        .append(',').append(token.endOffset);
+                    tokens++;
+                }
+                assertEquals(expected.toString(), output.get(i));
+            }
+            assertEquals(2, report.files);
+            assertEquals(tokens, report.tokens);
+            assertEquals(0L, Files.size(dir.resolve("out/empty.txt")));
+            System.out.println(report);
+        }
+        finally {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(path);
+            }
+        }
+    }
+
+
+    @Test
+    public void testComplete() {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        for (String prefix : new String[] {"北", "中国", "我", "a", "不存在的前缀"}) {
+            List<String> expected = new ArrayList<String>();
+            for (String word : dictionary.freqs.keySet()) {
+                if (word != null && word.startsWith(prefix))
+                    expected.add(word);
+            }
+            Collections.sort(expected, (a, b) -> {
+                int c = Double.compare(dictionary.freqs.get(b), dictionary.freqs.get(a));
+                return c != 0 ? c : a.compareTo(b);
+            });
+            expected = expected.subList(0, Math.min(10, expected.size()));
+            List<String> actual = new ArrayList<String>();
+            for (Pair<String> candidate : dictionary.complete(prefix, 10)) {
+                assertEquals(dictionary.getFreq(candidate.key), candidate.freq);
+                actual.add(candidate.key);
+            }
+            assertEquals(expected, actual);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < 10000; i++)
+            dictionary.complete("中", 10);
+        System.out.println(String.format(Locale.getDefault(), "complete: %.1f us/query",
+            (System.nanoTime() - start) / 1e3 / 10000));
+    }
+
+
+    @Test
+    public void testDawgDictionary() throws Exception {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        DawgDictionary dawg = DawgDictionary.build(dictionary);
+        // 词频表中的null、空串键（用户词典的空行）不进入DAWG
+        int words = 0;
+        for (String word : dictionary.freqs.keySet()) {
+            if (word != null && !word.isEmpty())
+                words++;
+        }
+        assertEquals(words, dawg.size());
+        assertEquals(dictionary.getMaxWordLength(), dawg.getMaxWordLength());
+        // 后缀共享：状态数少于词数
+        assertTrue(dawg.stateCount() < dawg.size());
+        int checked = 0;
+        for (String word : dictionary.freqs.keySet()) {
+            if (word == null || checked++ > 10000)
+                continue;
+            int id = dawg.getWordId(word);
+            assertTrue(word, id >= 0 && id < dawg.size());
+            assertEquals(word, dawg.getWord(id));
+            assertEquals(dictionary.getFreq(word), dawg.getLogFreq(word));
+            assertEquals(dictionary.containsWord(word + "京"), dawg.containsWord(word + "京"));
+        }
+        assertEquals(-1, dawg.getWordId("京京京京"));
+        assertEquals(dictionary.getFreq("京京京京"), dawg.getLogFreq("京京京京"));
+
+        Path file = Files.createTempFile("jieba-dict", ".dawg");
+        try {
+            dawg.write(file);
+            DawgDictionary read = DawgDictionary.read(file);
+            assertEquals(dawg.sizeInBytes(), read.sizeInBytes());
+            JiebaSegmenter compact = JiebaSegmenter.builder().dictionary(read).build();
+            for (String sentence : sentences) {
+                for (SegMode mode : SegMode.values())
+                    assertEquals(segmenter.process(sentence, mode).toString(), compact.process(sentence, mode).toString());
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    @Test
+    public void testMappedDictionary() throws Exception {
+        Path file = Files.createTempFile("jieba-dict", ".bin");
+        try {
+            MappedDictionary.write(WordDictionary.getInstance(), file);
+            MappedDictionary mapped = MappedDictionary.open(file);
+            assertEquals(WordDictionary.getInstance().getMaxWordLength(), mapped.getMaxWordLength());
+            JiebaSegmenter offHeap = JiebaSegmenter.builder().dictionary(mapped).build();
+            for (String sentence : sentences) {
+                for (SegMode mode : SegMode.values()) {
+                    assertEquals(segmenter.process(sentence, mode).toString(), offHeap.process(sentence, mode).toString());
+                }
+                SegmentationLattice expected = segmenter.kBest(sentence, 5);
+                SegmentationLattice actual = offHeap.kBest(sentence, 5);
+                assertEquals(expected.size(), actual.size());
+                for (int rank = 0; rank < expected.size(); rank++)
+                    assertEquals(expected.getLogProb(rank), actual.getLogProb(rank));
+            }
+            WordDictionary dictionary = WordDictionary.getInstance();
+            int checked = 0;
+            for (String word : dictionary.freqs.keySet()) {
+                if (word == null || checked++ > 10000)
+                    continue;
+                assertTrue(word, mapped.containsWord(word));
+                assertEquals(dictionary.getFreq(word), mapped.getLogFreq(word));
+                assertEquals(dictionary.containsWord(word + "京"), mapped.containsWord(word + "京"));
+            }
+            assertEquals(dictionary.getFreq("京京京京"), mapped.getLogFreq("京京京京"));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    @Test
+    public void testCharScanner() {
+        // 当前扫描器（Java 17+加--add-modules jdk.incubator.vector时为向量实现）与标量实现逐位置一致
+        CharScanner scanner = CharScanner.INSTANCE;
+        CharScanner scalar = new CharScanner();
+        System.out.println("char scanner: " + scanner.name());
+        char[] edges = {0x3000, 0xFF01, 0xFF5E, 0xFF5F, 0xFF00, 0xFF21, 0xFF41, 0x4E00, 0x4DFF, 0x9FA5, 0x9FA6, 'A', 'Z',
+            'a', 'z', '@', '[', '`', '{', '0', '9', '+', '#', '&', '.', '_', '-', ' ', 0x7FFF, 0x8000, 0xFFFF, 0};
+        java.util.Random random = new java.util.Random(42L);
+        for (int round = 0; round < 2000; round++) {
+            char[] chars = new char[random.nextInt(300)];
+            for (int i = 0; i < chars.length; i++) {
+                int kind = random.nextInt(4);
+                chars[i] = kind == 0 ? edges[random.nextInt(edges.length)]
+                    : kind == 1 ? (char) random.nextInt(Character.MAX_VALUE + 1)
+                    : (char) (0x4E00 + random.nextInt(0x9FA6 - 0x4E00));
+            }
+            char[] expected = new char[chars.length];
+            char[] actual = new char[chars.length];
+            int from = 0;
+            while (from < chars.length) {
+                int end = scalar.regularizeRun(chars, from, chars.length, expected, null);
+                assertEquals(end, scanner.regularizeRun(chars, from, chars.length, actual, null));
+                for (int i = from; i < Math.min(end + 1, chars.length); i++)
+                    assertEquals(expected[i], actual[i]);
+                from = end + 1;
+            }
+            for (from = 0; from < chars.length; from++) {
+                boolean chinese = CharacterUtil.isChineseLetter(chars[from]);
+                assertEquals(scalar.chineseRunEnd(chars, from, chars.length, chinese),
+                    scanner.chineseRunEnd(chars, from, chars.length, chinese));
+                assertEquals(scalar.chineseRunEnd(chars, from, chars.length, !chinese),
+                    scanner.chineseRunEnd(chars, from, chars.length, !chinese));
+            }
+        }
+    }
+
+
+    @Test
+    public void testWordIds() {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        assertEquals(dictionary.size(), dictionary.getWordIdCount());
+        for (int id = 0; id < dictionary.getWordIdCount(); id += 97)
+            assertEquals(id, dictionary.getWordId(dictionary.getWord(id)));
+        assertEquals(-1, dictionary.getWordId("京京京京"));
+        assertEquals(dictionary.getWordId("北京"), dictionary.getWordId("在北京工作", 1, 3));
+        assertEquals(-1, dictionary.getWordId("在北京工作", 0, 5));
+
+        WordIdTokens ids = new WordIdTokens();
+        for (String sentence : sentences) {
+            // 动态规划给出的词语id与按字符串查询的结果一致
+            List<String> words = segmenter.sentenceProcess(sentence);
+            segmenter.sentenceProcessIds(sentence, ids);
+            assertEquals(words.size(), ids.size());
+            for (int i = 0; i < words.size(); i++) {
+                assertEquals(words.get(i), ids.word(i));
+                int id = dictionary.getWordId(words.get(i));
+                assertEquals(id, ids.id(i) >= 0 ? ids.id(i) : -1);
+            }
+            for (SegMode mode : SegMode.values()) {
+                List<SegToken> tokens = segmenter.process(sentence, mode);
+                segmenter.processIds(sentence, mode, ids);
+                assertEquals(tokens.size(), ids.size());
+                for (int i = 0; i < tokens.size(); i++) {
+                    SegToken token = tokens.get(i);
+                    assertEquals(token.word, ids.word(i));
+                    assertEquals(token.startOffset, ids.start(i));
+                    assertEquals(token.endOffset, ids.end(i));
+                    assertEquals(dictionary.containsWord(token.word), ids.id(i) >= 0);
+                }
+            }
+        }
+        // 未登录词在同一对象上的id保持不变
+        segmenter.sentenceProcessIds("XYZ", ids);
+        int oov = ids.id(0);
+        assertTrue(oov < 0);
+        segmenter.sentenceProcessIds("XYZ", ids);
+        assertEquals(oov, ids.id(0));
+        assertEquals("XYZ", ids.wordOf(oov));
+    }
+
+
+    @Test
+    public void testSplitSkip() {
+        // 手写切分与reSkip正则逐次find的结果一致
+        String alphabet = "ab9Z0.5.-+_ #&,x1";
+        java.util.Random random = new java.util.Random(7L);
+        for (int round = 0; round < 20000; round++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++)
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            String text = sb.toString();
+            List<String> expected = new ArrayList<String>();
+            java.util.regex.Matcher matcher = CharacterUtil.reSkip.matcher(text);
+            int offset = 0;
+            while (matcher.find()) {
+                if (matcher.start() > offset)
+                    expected.add(text.substring(offset, matcher.start()));
+                expected.add(matcher.group());
+                offset = matcher.end();
+            }
+            if (offset < text.length())
+                expected.add(text.substring(offset));
+            List<String> actual = new ArrayList<String>();
+            CharacterUtil.splitSkip(text, actual);
+            assertEquals(text, expected, actual);
+        }
+    }
+
+
+    @Test
+    public void testTokenFilter() {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        assertTrue((dictionary.getFlags("的") & WordDictionary.FLAG_STOP_WORD) != 0);
+        assertTrue((dictionary.getFlags('，') & WordDictionary.FLAG_PUNCTUATION) != 0);
+        assertTrue((dictionary.getFlags(' ') & WordDictionary.FLAG_PUNCTUATION) != 0);
+        assertEquals(WordDictionary.FLAG_PUNCTUATION, dictionary.getFlags("……"));
+        assertEquals(0, dictionary.getFlags('京'));
+        assertFalse(dictionary.addFlags("京京京京", WordDictionary.FLAG_CUSTOM));
+
+        JiebaSegmenter filtered = JiebaSegmenter.builder()
+            .filter(TokenFilter.drop(WordDictionary.FLAG_STOP_WORD | WordDictionary.FLAG_PUNCTUATION))
+            .build();
+        for (String sentence : sentences) {
+            for (SegMode mode : SegMode.values()) {
+                // 过滤结果与对完整输出逐词过滤的结果相同
+                List<String> expected = new ArrayList<String>();
+                for (SegToken token : segmenter.process(sentence, mode)) {
+                    int flags = dictionary.getFlags(token.word);
+                    if ((flags & (WordDictionary.FLAG_STOP_WORD | WordDictionary.FLAG_PUNCTUATION)) == 0)
+                        expected.add(token.toString());
+                }
+                List<String> actual = new ArrayList<String>();
+                for (SegToken token : filtered.process(sentence, mode))
+                    actual.add(token.toString());
+                assertEquals(sentence, expected, actual);
+            }
+        }
+
+        // 标记：为输出的词添加自定义类别，并丢弃标点和单字
+        String sentence = "我爱北京， 天安门";
+        String tag = null;
+        for (String word : segmenter.sentenceProcess(sentence)) {
+            if (tag == null && word.length() > 1 && dictionary.containsWord(word))
+                tag = word;
+        }
+        assertNotNull(tag);
+        final int custom = WordDictionary.FLAG_CUSTOM << 3;
+        assertTrue(dictionary.addFlags(tag, custom));
+        JiebaSegmenter tagged = JiebaSegmenter.builder()
+            .filter(TokenFilter.drop(WordDictionary.FLAG_PUNCTUATION))
+            .filter((word, flags) -> word.length() > 1 ? flags : TokenFilter.DROP)
+            .build();
+        for (SegToken token : tagged.process(sentence, SegMode.SEARCH)) {
+            assertTrue(token.length() > 1);
+            assertEquals(token.word.equals(tag), (token.flags & custom) != 0);
+        }
+
+        // 过滤器看到的词语与输出的词语一致（INDEX模式的子词、不可切分字符也经过过滤链）
+        final List<String> seen = new ArrayList<String>();
+        JiebaSegmenter recorded = JiebaSegmenter.builder().filter((word, flags) -> {
+            seen.add(word.toString() + "/" + word.length() + "/" + word.subSequence(0, 1));
+            return flags;
+        }).build();
+        for (String text : sentences) {
+            seen.clear();
+            List<String> expected = new ArrayList<String>();
+            for (SegToken token : recorded.process(text, SegMode.INDEX))
+                expected.add(token.word + "/" + token.word.length() + "/" + token.word.charAt(0));
+            assertEquals(text, expected, seen);
+        }
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        // 加载任务在放行前不执行，模拟仍在加载的词典
+        final java.util.concurrent.CountDownLatch gate = new java.util.concurrent.CountDownLatch(1);
+        final java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newCachedThreadPool();
+        java.util.concurrent.Executor gated = task -> pool.execute(() -> {
+            try {
+                gate.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            task.run();
+        });
+        try {
+            java.util.concurrent.CompletableFuture<Void> future = JiebaSegmenter.preload(gated);
+            assertSame(future, JiebaSegmenter.preload());
+            assertFalse(JiebaSegmenter.isReady());
+            // 加载期间降级模式的分词器只用HMM切分，INDEX模式不输出子词
+            JiebaSegmenter degraded = JiebaSegmenter.builder().degraded(true).build();
+            for (String sentence : sentences) {
+                List<String> expected = new ArrayList<String>();
+                com.huaban.analysis.jieba.viterbi.FinalSeg.getInstance().cut(sentence, expected);
+                assertEquals(sentence, expected, degraded.sentenceProcess(sentence));
+            }
+            String sentence = "北京大学生前来应聘";
+            List<String> words = new ArrayList<String>();
+            for (SegToken token : degraded.process(sentence, SegMode.INDEX))
+                words.add(token.word);
+            assertEquals(degraded.sentenceProcess(sentence), words);
+            assertFalse(JiebaSegmenter.isReady());
+
+            gate.countDown();
+            assertTrue(JiebaSegmenter.awaitReady(1, java.util.concurrent.TimeUnit.MINUTES));
+            assertTrue(JiebaSegmenter.isReady());
+            assertTrue(WordDictionary.isLoaded());
+            // 加载完成后降级模式的分词器与普通分词器结果相同
+            for (String text : sentences) {
+                for (SegMode mode : SegMode.values())
+                    assertEquals(segmenter.process(text, mode).toString(), degraded.process(text, mode).toString());
+            }
+        }
+        finally {
+            gate.countDown();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 在新JVM中（词典未加载、未调用preload）构建降级模式的分词器，等待其自行加载完成
+     */
+    public static final class ColdDegraded {
+        public static void main(String[] args) throws Exception {
+            JiebaSegmenter degraded = JiebaSegmenter.builder().degraded(true).build();
+            String sentence = "北京大学生前来应聘";
+            // 只轮询状态，不调用任何会触发加载的方法
+            long deadline = System.currentTimeMillis() + 60000L;
+            while (!JiebaSegmenter.isReady() && System.currentTimeMillis() < deadline)
+                Thread.sleep(20L);
+            System.out.println(JiebaSegmenter.isReady() + " " + WordDictionary.isLoaded());
+            System.out.println(degraded.process(sentence, SegMode.INDEX).toString().equals(
+                new JiebaSegmenter().process(sentence, SegMode.INDEX).toString()));
+        }
+    }
+
+    @Test
+    public void testDegradedWithoutPreload() throws Exception {
+        // 没有调用preload时，降级模式的分词器在构建时开始后台加载，之后恢复完整分词
+        ProcessBuilder builder = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-Djieba.log.enable=false", "-cp", System.getProperty("java.class.path"), ColdDegraded.class.getName());
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        List<String> lines = new ArrayList<String>();
+        try (java.io.BufferedReader reader = new java.io.BufferedReader(
+            new java.io.InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        assertEquals(lines.toString(), 0, process.waitFor());
+        assertEquals(java.util.Arrays.asList("true true", "true"), lines);
+    }
+
+    @Test
+    public void testReprocess() throws Exception {
+        java.util.Random random = new java.util.Random(11L);
+        String alphabet = "我爱北京天安门大学生活动中心研究所长江大桥结婚的和尚未Python3，。！ ,.";
+        JiebaSegmenter folded = JiebaSegmenter.builder().foldTraditional(true).build();
+        for (JiebaSegmenter seg : new JiebaSegmenter[] {segmenter, folded}) {
+            for (SegMode mode : SegMode.values()) {
+                String text = sentences[23];
+                List<SegToken> tokens = seg.process(text, mode);
+                for (int round = 0; round < 300; round++) {
+                    // 随机编辑：删除若干字符并插入若干字符
+                    int offset = random.nextInt(text.length() + 1);
+                    int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+                    StringBuilder inserted = new StringBuilder();
+                    int count = random.nextInt(5);
+                    for (int k = 0; k < count; k++)
+                        inserted.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    text = text.substring(0, offset) + inserted + text.substring(offset + removed);
+                    tokens = seg.reprocess(tokens, text, offset, removed, inserted.length(), mode);
+                    assertEquals(text, seg.process(text, mode).toString(), tokens.toString());
+                    assertTrue(tokens instanceof TokenRope);
+                }
+            }
+        }
+
+        // 词典版本变化后（加载用户词典、新词提升）不在旧结果上增量分词
+        WordDictionary dictionary = WordDictionary.getInstance();
+        String text = sentences[23];
+        List<SegToken> tokens = segmenter.reprocess(segmenter.process(text, SegMode.SEARCH), text, 0, 0, 0, SegMode.SEARCH);
+        assertEquals(dictionary.getVersion(), ((TokenRope) tokens).version);
+        Path empty = Files.createTempFile("jieba-empty", ".dict");
+        try {
+            dictionary.loadUserDict(empty, StandardCharsets.UTF_8);
+        }
+        finally {
+            Files.delete(empty);
+        }
+        assertTrue(((TokenRope) tokens).version < dictionary.getVersion());
+        tokens = segmenter.reprocess(tokens, text + "。", text.length(), 0, 1, SegMode.SEARCH);
+        assertEquals(dictionary.getVersion(), ((TokenRope) tokens).version);
+        assertEquals(segmenter.process(text + "。", SegMode.SEARCH).toString(), tokens.toString());
+        try {
+            segmenter.reprocess(new ArrayList<SegToken>(), "abc", 2, 0, 5, SegMode.SEARCH);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // 插入长度超出文本
+        }
+    }
+
+    @Test
+    public void testDictPrefilter() {
+        // 位图预过滤后的探测与直接探测字典树的结果相同
+        WordDictionary dictionary = WordDictionary.getInstance();
+        DictSegment trie = dictionary.getTrie();
+        int maxLength = dictionary.getMaxWordLength();
+        int[] expected = new int[maxLength];
+        int[] actual = new int[maxLength];
+        for (String sentence : sentences) {
+            char[] chars = sentence.toLowerCase(Locale.getDefault()).toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                int end = Math.min(chars.length, i + maxLength);
+                int count = trie.matchEnds(chars, i, end, expected);
+                assertEquals(sentence, count, dictionary.matchEnds(chars, i, end, actual));
+                for (int k = 0; k < count; k++)
+                    assertEquals(expected[k], actual[k]);
+                for (int j = i + 1; j <= end; j++) {
+                    Hit hit = trie.match(chars, i, j - i);
+                    assertEquals(hit.isMatch() || hit.isPrefix(), dictionary.isPrefix(chars, i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNewWordLearner() throws Exception {
+        WordDictionary dictionary = WordDictionary.getInstance();
+        // 只计数：候选词都是HMM切出的未登录中文词
+        NewWordLearner counter = NewWordLearner.builder().autoPromote(false).build();
+        JiebaSegmenter learning = JiebaSegmenter.builder().learner(counter).build();
+        for (String sentence : sentences) {
+            for (String word : learning.sentenceProcess(sentence)) {
+                if (counter.count(word) > 0)
+                    assertFalse(word, dictionary.containsWord(word));
+            }
+        }
+        assertTrue(counter.candidateCount() > 0);
+        assertTrue(counter.promoted().isEmpty());
+        // 提升的词写入WordDictionary单例，不能与指定的词典一起使用
+        try {
+            JiebaSegmenter.builder().dictionary(dictionary).learner(counter).build();
+            fail("learner with a custom dictionary");
+        }
+        catch (IllegalArgumentException e) {
+            // 新词发现须使用默认词典
+        }
+
+        // 达到阈值后进入待提升队列，由后台任务成批提升（分词线程不修改词典），之后由词典直接切出
+        String word = "鼋鼍龟鳖";
+        String other = "龟鳖鼋鼍";
+        assertFalse(dictionary.containsWord(word));
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        NewWordLearner learner = NewWordLearner.builder().minCount(3).batchSize(2).executor(tasks::add).build();
+        try {
+            learner.observe(word);
+            learner.observe(word);
+            assertEquals(2, learner.count(word));
+            learner.observe(word);
+            assertTrue(tasks.isEmpty());
+            for (int i = 0; i < 3; i++)
+                learner.observe(other);
+            assertFalse(dictionary.containsWord(word));
+            assertEquals(1, tasks.size());
+            long version = dictionary.getVersion();
+            tasks.remove(0).run();
+            assertEquals(version + 1, dictionary.getVersion());
+            assertTrue(dictionary.containsWord(word));
+            assertTrue(dictionary.containsWord(other));
+            assertEquals(-1, dictionary.getWordId(word));
+            assertTrue((dictionary.getFlags(word) & WordDictionary.FLAG_USER) != 0);
+            assertEquals(Collections.singletonList(word), segmenter.sentenceProcess(word));
+            assertEquals(segmenter.process(word + "，" + other, SegMode.INDEX).toString(),
+                "[[鼋鼍龟鳖, 0, 4], [，, 4, 5], [龟鳖鼋鼍, 5, 9]]");
+            assertFalse(learner.promote(word));
+
+            Path file = Files.createTempFile("learned", ".dict");
+            try {
+                learner.export(file);
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                assertEquals(2, lines.size());
+                assertTrue(lines.get(0), lines.get(0).startsWith(word + " "));
+            }
+            finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        finally {
+            learner.reset();
+        }
+        assertFalse(dictionary.containsWord(word));
+        assertFalse(dictionary.containsWord(other));
+
+        // 候选词数达到上限时由后台任务按出现次数从低到高淘汰到上限的3/4
+        NewWordLearner bounded = NewWordLearner.builder().autoPromote(false).maxCandidates(4).executor(tasks::add)
+            .build();
+        for (String candidate : new String[] {"甲乙", "甲乙", "甲乙", "丙丁", "丙丁", "戊己", "庚辛"})
+            bounded.observe(candidate);
+        assertTrue(tasks.isEmpty());
+        bounded.observe("壬癸");
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(3, bounded.candidateCount());
+        assertEquals(3, bounded.count("甲乙"));
+        assertEquals(2, bounded.count("丙丁"));
+    }
 }
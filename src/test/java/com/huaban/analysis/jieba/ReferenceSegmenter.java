@@ -0,0 +1,314 @@
+package com.huaban.analysis.jieba;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+
+
+/**
+ * 参照分词器（差分测试用，冻结的原始实现）
+ * 功能：
+ * 1. 按优化前的原始算法实现process/sentenceProcess：装箱的DAG、HashMap路径表、逐项比较的动态规划
+ * 2. 按原始算法实现HMM维特比（每个位置一张概率Map，Node链回溯），模型参数与FinalSeg相同
+ *
+ * 只依赖WordDictionary的字典树和词频查询，不调用JiebaSegmenter、FinalSeg中的任何优化路径；
+ * 修改生产代码时不要同步修改本类，它是判断“结果是否完全一致”的基准
+ */
+final class ReferenceSegmenter {
+    private static final double MIN_FLOAT = -3.14e100;
+    private static final char[] STATES = new char[] {'B', 'M', 'E', 'S'};
+    private static final Map<Character, char[]> PREV_STATUS = new HashMap<Character, char[]>();
+    private static final Map<Character, Double> START = new HashMap<Character, Double>();
+    private static final Map<Character, Map<Character, Double>> TRANS = new HashMap<Character, Map<Character, Double>>();
+    private static final Map<Character, Map<Character, Double>> EMIT = readEmit();
+
+    static {
+        PREV_STATUS.put('B', new char[] {'E', 'S'});
+        PREV_STATUS.put('M', new char[] {'M', 'B'});
+        PREV_STATUS.put('S', new char[] {'S', 'E'});
+        PREV_STATUS.put('E', new char[] {'B', 'M'});
+        START.put('B', -0.26268660809250016);
+        START.put('E', MIN_FLOAT);
+        START.put('M', MIN_FLOAT);
+        START.put('S', -1.4652633398537678);
+        TRANS.put('B', transitions('E', -0.5108, 'M', -0.9163));
+        TRANS.put('E', transitions('B', -0.5897, 'S', -0.8085));
+        TRANS.put('M', transitions('E', -0.3334, 'M', -1.2604));
+        TRANS.put('S', transitions('B', -0.7212, 'S', -0.6659));
+    }
+
+    private final WordDictionary wordDict = WordDictionary.getInstance();
+
+    private static Map<Character, Double> transitions(char a, double pa, char b, double pb) {
+        Map<Character, Double> map = new HashMap<Character, Double>();
+        map.put(a, pa);
+        map.put(b, pb);
+        return map;
+    }
+
+    private static Map<Character, Map<Character, Double>> readEmit() {
+        Map<Character, Map<Character, Double>> emit = new HashMap<Character, Map<Character, Double>>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+            ReferenceSegmenter.class.getResourceAsStream("/prob_emit.txt"), StandardCharsets.UTF_8))) {
+            Map<Character, Double> values = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                if (tokens.length == 1) {
+                    values = new HashMap<Character, Double>();
+                    emit.put(tokens[0].charAt(0), values);
+                }
+                else {
+                    values.put(tokens[0].charAt(0), Double.valueOf(tokens[1]));
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return emit;
+    }
+
+    List<SegToken> process(String paragraph, SegMode mode) {
+        List<SegToken> tokens = new ArrayList<SegToken>();
+        StringBuilder sb = new StringBuilder();
+        int offset = 0;
+        for (int i = 0; i < paragraph.length(); ++i) {
+            char ch = CharacterUtil.regularize(paragraph.charAt(i));
+            if (CharacterUtil.ccFind(ch))
+                sb.append(ch);
+            else {
+                if (sb.length() > 0) {
+                    offset = addTokens(tokens, sb.toString(), offset, mode);
+                    sb = new StringBuilder();
+                    offset = i;
+                }
+                tokens.add(new SegToken(paragraph.substring(i, i + 1), offset, ++offset));
+            }
+        }
+        if (sb.length() > 0)
+            addTokens(tokens, sb.toString(), offset, mode);
+        return tokens;
+    }
+
+    private int addTokens(List<SegToken> tokens, String sentence, int offset, SegMode mode) {
+        for (String token : sentenceProcess(sentence)) {
+            if (mode == SegMode.INDEX) {
+                if (token.length() > 2) {
+                    for (int j = 0; j < token.length() - 1; ++j) {
+                        String gram2 = token.substring(j, j + 2);
+                        if (wordDict.containsWord(gram2))
+                            tokens.add(new SegToken(gram2, offset + j, offset + j + 2));
+                    }
+                }
+                if (token.length() > 3) {
+                    for (int j = 0; j < token.length() - 2; ++j) {
+                        String gram3 = token.substring(j, j + 3);
+                        if (wordDict.containsWord(gram3))
+                            tokens.add(new SegToken(gram3, offset + j, offset + j + 3));
+                    }
+                }
+            }
+            tokens.add(new SegToken(token, offset, offset += token.length()));
+        }
+        return offset;
+    }
+
+    List<String> sentenceProcess(String sentence) {
+        List<String> tokens = new ArrayList<String>();
+        int N = sentence.length();
+        Map<Integer, Pair<Integer>> route = calc(sentence, createDAG(sentence));
+        int x = 0;
+        StringBuilder sb = new StringBuilder();
+        while (x < N) {
+            int y = route.get(x).key + 1;
+            String lWord = sentence.substring(x, y);
+            if (y - x == 1)
+                sb.append(lWord);
+            else {
+                if (sb.length() > 0) {
+                    flushSingles(sb.toString(), tokens);
+                    sb = new StringBuilder();
+                }
+                tokens.add(lWord);
+            }
+            x = y;
+        }
+        if (sb.length() > 0)
+            flushSingles(sb.toString(), tokens);
+        return tokens;
+    }
+
+    private void flushSingles(String buf, List<String> tokens) {
+        if (buf.length() == 1 || wordDict.containsWord(buf))
+            tokens.add(buf);
+        else
+            cut(buf, tokens);
+    }
+
+    private Map<Integer, List<Integer>> createDAG(String sentence) {
+        Map<Integer, List<Integer>> dag = new HashMap<Integer, List<Integer>>();
+        DictSegment trie = wordDict.getTrie();
+        char[] chars = sentence.toCharArray();
+        int N = chars.length;
+        int i = 0, j = 0;
+        while (i < N) {
+            Hit hit = trie.match(chars, i, j - i + 1);
+            if (hit.isPrefix() || hit.isMatch()) {
+                if (hit.isMatch()) {
+                    if (!dag.containsKey(i))
+                        dag.put(i, new ArrayList<Integer>());
+                    dag.get(i).add(j);
+                }
+                j += 1;
+                if (j >= N) {
+                    i += 1;
+                    j = i;
+                }
+            }
+            else {
+                i += 1;
+                j = i;
+            }
+        }
+        for (i = 0; i < N; ++i) {
+            if (!dag.containsKey(i)) {
+                List<Integer> value = new ArrayList<Integer>();
+                value.add(i);
+                dag.put(i, value);
+            }
+        }
+        return dag;
+    }
+
+    private Map<Integer, Pair<Integer>> calc(String sentence, Map<Integer, List<Integer>> dag) {
+        int N = sentence.length();
+        HashMap<Integer, Pair<Integer>> route = new HashMap<Integer, Pair<Integer>>();
+        route.put(N, new Pair<Integer>(0, 0.0));
+        for (int i = N - 1; i > -1; i--) {
+            Pair<Integer> candidate = null;
+            for (Integer x : dag.get(i)) {
+                double freq = wordDict.getFreq(sentence.substring(i, x + 1)) + route.get(x + 1).freq;
+                if (null == candidate)
+                    candidate = new Pair<Integer>(x, freq);
+                else if (candidate.freq < freq) {
+                    candidate.freq = freq;
+                    candidate.key = x;
+                }
+            }
+            route.put(i, candidate);
+        }
+        return route;
+    }
+
+    /**
+     * 与FinalSeg.cut相同的中文/非中文拆分，中文部分使用原始维特比实现
+     */
+    void cut(String sentence, List<String> tokens) {
+        StringBuilder chinese = new StringBuilder();
+        StringBuilder other = new StringBuilder();
+        for (int i = 0; i < sentence.length(); ++i) {
+            char ch = sentence.charAt(i);
+            if (CharacterUtil.isChineseLetter(ch)) {
+                if (other.length() > 0) {
+                    processOther(other.toString(), tokens);
+                    other = new StringBuilder();
+                }
+                chinese.append(ch);
+            }
+            else {
+                if (chinese.length() > 0) {
+                    viterbi(chinese.toString(), tokens);
+                    chinese = new StringBuilder();
+                }
+                other.append(ch);
+            }
+        }
+        if (chinese.length() > 0)
+            viterbi(chinese.toString(), tokens);
+        else
+            processOther(other.toString(), tokens);
+    }
+
+    void viterbi(String sentence, List<String> tokens) {
+        List<Map<Character, Double>> v = new ArrayList<Map<Character, Double>>();
+        Map<Character, Node> path = new HashMap<Character, Node>();
+        v.add(new HashMap<Character, Double>());
+        for (char state : STATES) {
+            Double emP = EMIT.get(state).getOrDefault(sentence.charAt(0), MIN_FLOAT);
+            v.get(0).put(state, START.get(state) + emP);
+            path.put(state, new Node(state, null));
+        }
+        for (int i = 1; i < sentence.length(); ++i) {
+            Map<Character, Double> vv = new HashMap<Character, Double>();
+            v.add(vv);
+            Map<Character, Node> newPath = new HashMap<Character, Node>();
+            for (char y : STATES) {
+                Double emp = EMIT.get(y).get(sentence.charAt(i));
+                if (emp == null)
+                    emp = MIN_FLOAT;
+                Pair<Character> candidate = null;
+                for (char y0 : PREV_STATUS.get(y)) {
+                    Double tranp = TRANS.get(y0).get(y);
+                    if (null == tranp)
+                        tranp = MIN_FLOAT;
+                    tranp += (emp + v.get(i - 1).get(y0));
+                    if (null == candidate)
+                        candidate = new Pair<Character>(y0, tranp);
+                    else if (candidate.freq <= tranp) {
+                        candidate.freq = tranp;
+                        candidate.key = y0;
+                    }
+                }
+                vv.put(y, candidate.freq);
+                newPath.put(y, new Node(y, path.get(candidate.key)));
+            }
+            path = newPath;
+        }
+        double probE = v.get(sentence.length() - 1).get('E');
+        double probS = v.get(sentence.length() - 1).get('S');
+        Node win = probE < probS ? path.get('S') : path.get('E');
+        char[] posList = new char[sentence.length()];
+        for (int i = sentence.length() - 1; win != null; --i, win = win.parent)
+            posList[i] = win.value;
+
+        int begin = 0, next = 0;
+        for (int i = 0; i < sentence.length(); ++i) {
+            char pos = posList[i];
+            if (pos == 'B')
+                begin = i;
+            else if (pos == 'E') {
+                tokens.add(sentence.substring(begin, i + 1));
+                next = i + 1;
+            }
+            else if (pos == 'S') {
+                tokens.add(sentence.substring(i, i + 1));
+                next = i + 1;
+            }
+        }
+        if (next < sentence.length())
+            tokens.add(sentence.substring(next));
+    }
+
+    private static void processOther(String other, List<String> tokens) {
+        Matcher mat = CharacterUtil.reSkip.matcher(other);
+        int offset = 0;
+        while (mat.find()) {
+            if (mat.start() > offset)
+                tokens.add(other.substring(offset, mat.start()));
+            tokens.add(mat.group());
+            offset = mat.end();
+        }
+        if (offset < other.length())
+            tokens.add(other.substring(offset));
+    }
+}
@@ -0,0 +1,91 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+
+/**
+ * 敏感词过滤测试
+ */
+public class SensitiveWordFilterTest extends TestCase {
+    private SensitiveWordFilter filter = new SensitiveWordFilter(Arrays.asList("代刷", "找小姐", "137-1234-1234", "電話", "qq"));
+
+
+    private List<String> hits(String text) {
+        final List<String> hits = new ArrayList<String>();
+        filter.scan(text, (start, end, wordId, word) -> hits.add(start + "," + end + "," + word));
+        return hits;
+    }
+
+
+    @Test
+    public void testNoiseSkipping() {
+        assertEquals(Arrays.asList("1,4,代刷"), hits("专代*刷信誉"));
+        assertEquals(Arrays.asList("0,3,代刷"), hits("代 刷"));
+        assertEquals(Arrays.asList("2,15,137-1234-1234"), hits("号码137 1234 1234"));
+        // 连续噪声字符过多时不再拼接
+        assertTrue(hits("代 , . ! 刷").isEmpty());
+    }
+
+
+    @Test
+    public void testFolding() {
+        // 繁简折叠、全角大写折叠
+        assertEquals(Arrays.asList("0,2,電話", "3,5,qq"), hits("电话 ＱＱ"));
+        assertEquals(Arrays.asList("0,3,找小姐"), hits("找小姐"));
+        assertTrue(filter.contains("打我電話"));
+        assertFalse(filter.contains("正常文本"));
+    }
+
+
+    @Test
+    public void testMask() {
+        assertEquals("专**信誉，加***", filter.mask("专代刷信誉，加ｑ*Ｑ"));
+        String clean = "没有敏感词";
+        assertSame(clean, filter.mask(clean));
+        char[] buffer = "xx代-刷xx".toCharArray();
+        assertEquals(1, filter.mask(buffer, 2, 3, '#'));
+        assertEquals("xx###xx", new String(buffer));
+    }
+
+
+    @Test
+    public void testHotSwap() {
+        SensitiveWordFilter swapped = new SensitiveWordFilter(Arrays.asList("代刷"));
+        assertTrue(swapped.contains("代刷"));
+        swapped.setWords(Arrays.asList("刷单"));
+        assertFalse(swapped.contains("代刷"));
+        assertTrue(swapped.contains("刷-单"));
+        assertEquals(1, swapped.size());
+    }
+
+
+    @Test
+    public void testScanSpeed() {
+        List<String> words = new ArrayList<String>();
+        for (String word : WordDictionary.getInstance().freqs.keySet()) {
+            if (words.size() == 10000)
+                break;
+            if (word.length() > 1)
+                words.add(word);
+        }
+        SensitiveWordFilter large = new SensitiveWordFilter(words);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; ++i)
+            sb.append("工信处女干事每月经过下属科室都要亲口交代24口交换机等技术性器件的安装工作。");
+        String text = sb.toString();
+        long hits = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; ++i)
+            hits += large.scan(text, (s, e, id, w) -> {});
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println(String.format(Locale.getDefault(), "sensitive scan time elapsed:%d, rate:%.2fMB/s, hits:%d",
+            elapsed, text.length() * 2.0 * 10 / 1024 / 1024 / (elapsed / 1000.0), hits));
+    }
+}
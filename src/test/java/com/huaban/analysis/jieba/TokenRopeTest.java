@@ -0,0 +1,85 @@
+package com.huaban.analysis.jieba;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.huaban.analysis.jieba.JiebaSegmenter.SegMode;
+
+
+/**
+ * 增量分词结果树测试：随机编辑后与直接操作ArrayList的结果逐一比对
+ */
+public class TokenRopeTest extends TestCase {
+
+    private static List<SegToken> tokens(int from, int count, Random random) {
+        List<SegToken> tokens = new ArrayList<SegToken>();
+        int offset = from;
+        for (int i = 0; i < count; i++) {
+            int length = random.nextInt(3) + 1;
+            tokens.add(new SegToken("w" + offset, offset, offset + length));
+            offset += length;
+        }
+        return tokens;
+    }
+
+
+    private static int firstStartingAt(List<SegToken> tokens, int offset) {
+        int i = 0;
+        while (i < tokens.size() && tokens.get(i).startOffset < offset)
+            i++;
+        return i;
+    }
+
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(5);
+        List<SegToken> expected = tokens(0, 1000, random);
+        TokenRope rope = TokenRope.of(expected, null, SegMode.SEARCH, 0L, 0);
+        for (int round = 0; round < 2000; round++) {
+            int head = random.nextInt(expected.size() + 1);
+            int tail = Math.min(expected.size(), head + random.nextInt(8));
+            int start = head == 0 ? 0 : expected.get(head - 1).endOffset;
+            int oldEnd = tail == 0 ? 0 : Math.max(start, expected.get(tail - 1).endOffset);
+            List<SegToken> middle = tokens(start, random.nextInt(8), random);
+            int newEnd = middle.isEmpty() ? start : middle.get(middle.size() - 1).endOffset;
+            int delta = newEnd - oldEnd;
+
+            List<SegToken> next = new ArrayList<SegToken>(expected.subList(0, head));
+            next.addAll(middle);
+            for (SegToken token : expected.subList(tail, expected.size()))
+                next.add(new SegToken(token.word, token.startOffset + delta, token.endOffset + delta));
+            TokenRope edited = rope.edit(head, tail, middle, delta, round, 0);
+
+            assertEquals(next.size(), edited.size());
+            assertEquals(next.toString(), edited.toString());
+            for (int k = 0; k < 20 && !next.isEmpty(); k++) {
+                int i = random.nextInt(next.size());
+                assertEquals(next.get(i).toString(), edited.get(i).toString());
+                int offset = next.get(i).startOffset + random.nextInt(3) - 1;
+                assertEquals(firstStartingAt(next, offset), edited.firstStartingAt(offset));
+            }
+            // 旧结果不受影响
+            assertEquals(expected.toString(), rope.toString());
+            expected = next;
+            rope = edited;
+        }
+    }
+
+
+    @Test
+    public void testEmpty() {
+        TokenRope rope = TokenRope.of(new ArrayList<SegToken>(), null, SegMode.SEARCH, 0L, 0);
+        assertEquals(0, rope.size());
+        assertEquals(0, rope.firstStartingAt(5));
+        assertEquals("[]", rope.toString());
+        List<SegToken> middle = new ArrayList<SegToken>();
+        middle.add(new SegToken("a", 0, 1));
+        assertEquals("[[a, 0, 1]]", rope.edit(0, 0, middle, 1, 0L, 1).toString());
+    }
+}
@@ -0,0 +1,141 @@
+package com.qianxinyao.analysis.jieba.keyword;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.huaban.analysis.jieba.WordDictionary;
+
+
+/**
+ * 关键词提取测试（含吞吐量基准）
+ */
+public class KeywordAnalyzerTest extends TestCase {
+    private TextRankAnalyzer textRankAnalyzer = new TextRankAnalyzer();
+    private TFIDFAnalyzer tfidfAnalyzer = new TFIDFAnalyzer();
+    String[] documents =
+            new String[] {
+                          "孩子上了幼儿园 安全防拐教育要做好",
+                          "此外，公司拟对全资子公司吉林欧亚置业有限公司增资4.3亿元，增资后，吉林欧亚置业注册资本由7000万元增加到5亿元。吉林欧亚置业主要经营范围为房地产开发及百货零售等业务。目前在建吉林欧亚城市商业综合体项目。2013年，实现营业收入0万元，实现净利润-139.13万元。",
+                          "线程初始化时我们要注意，工信处女干事每月经过下属科室都要亲口交代24口交换机等技术性器件的安装工作",
+                          "中国科学院计算技术研究所在过去的这五年里，领导人会议和第四届东亚峰会在南京市长江大桥附近的会议中心举行",
+                          "" };
+
+
+    @Test
+    public void testTextRank() {
+        for (String document : documents) {
+            List<Keyword> keywords = textRankAnalyzer.analyze(document, 5);
+            assertTrue(keywords.size() <= 5);
+            for (int i = 1; i < keywords.size(); ++i) {
+                assertTrue(keywords.get(i - 1).getTfidfvalue() >= keywords.get(i).getTfidfvalue());
+            }
+            StringBuilder sb = new StringBuilder();
+            for (Keyword keyword : keywords) {
+                sb.append(keyword.getName()).append(':').append(keyword.getTfidfvalue()).append(',');
+            }
+            System.out.print(String.format(Locale.getDefault(), "\n%s\n%s", document, sb));
+        }
+    }
+
+
+    @Test
+    public void testTextRankSpeed() {
+        long length = 0L;
+        long docCount = 0L;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 2000; ++i)
+            for (String document : documents) {
+                textRankAnalyzer.analyze(document, 10);
+                length += document.getBytes(StandardCharsets.UTF_8).length;
+                docCount++;
+            }
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println(String.format(Locale.getDefault(), "textrank time elapsed:%d, rate:%fkb/s, docs:%.2f/s", elapsed,
+            (length * 1.0) / 1024.0f / (elapsed * 1.0 / 1000.0f), docCount * 1000.0f / (elapsed * 1.0)));
+    }
+
+
+    @Test
+    public void testIdfByWordId() throws Exception {
+        Map<String, Double> idf = new HashMap<String, Double>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            TFIDFAnalyzer.class.getResourceAsStream("/idf_dict.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] kv = line.trim().split(" ");
+                if (kv.length >= 2)
+                    idf.put(kv[0], Double.parseDouble(kv[1]));
+            }
+        }
+        WordDictionary dictionary = WordDictionary.getInstance();
+        int checked = 0;
+        for (int id = 0; id < dictionary.getWordIdCount(); id++) {
+            Double expected = idf.get(dictionary.getWord(id));
+            if (expected != null) {
+                assertEquals(expected, tfidfAnalyzer.getIdf(id));
+                checked++;
+            }
+        }
+        assertTrue(checked > 0);
+        assertTrue(tfidfAnalyzer.isStopWord(dictionary.getWordId("的")) || dictionary.getWordId("的") < 0);
+        assertFalse(tfidfAnalyzer.isStopWord(-1));
+    }
+
+
+    @Test
+    public void testPunctuationTermsSkipped() {
+        // 含标点、空白的切分片段与IDFBuilder一样不计入，不会以平均IDF成为关键词
+        String content = "PS: 欧亚置业 @ 欧亚置业            增资 : 增资";
+        for (Keyword keyword : tfidfAnalyzer.analyze(content, 10))
+            assertTrue(keyword.getName(), TFIDFAnalyzer.isIndexable(keyword.getName()));
+        assertFalse(TFIDFAnalyzer.isIndexable(": "));
+        assertTrue(TFIDFAnalyzer.isIndexable("欧亚"));
+    }
+
+
+    @Test
+    public void testAnalyzeBatch() {
+        List<String> batch = new ArrayList<String>();
+        for (int i = 0; i < 50; ++i)
+            batch.addAll(Arrays.asList(documents));
+        List<List<Keyword>> results = tfidfAnalyzer.analyzeBatch(batch, 5);
+        assertEquals(batch.size(), results.size());
+        for (int i = 0; i < batch.size(); ++i) {
+            assertEquals(tfidfAnalyzer.analyze(batch.get(i), 5), results.get(i));
+        }
+        List<List<Keyword>> streamed = tfidfAnalyzer.analyzeStream(batch.stream(), 5).collect(Collectors.toList());
+        assertEquals(results, streamed);
+    }
+
+
+    @Test
+    public void testAnalyzeBatchSpeed() {
+        List<String> batch = new ArrayList<String>();
+        long length = 0L;
+        for (int i = 0; i < 2000; ++i)
+            for (String document : documents) {
+                batch.add(document);
+                length += document.getBytes(StandardCharsets.UTF_8).length;
+            }
+        long start = System.currentTimeMillis();
+        final AtomicLong docCount = new AtomicLong();
+        tfidfAnalyzer.analyzeBatch(batch, 10, (index, keywords) -> docCount.incrementAndGet());
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        assertEquals(batch.size(), docCount.get());
+        System.out.println(String.format(Locale.getDefault(), "tfidf batch time elapsed:%d, rate:%fkb/s, docs:%.2f/s", elapsed,
+            (length * 1.0) / 1024.0f / (elapsed * 1.0 / 1000.0f), docCount.get() * 1000.0f / (elapsed * 1.0)));
+    }
+}